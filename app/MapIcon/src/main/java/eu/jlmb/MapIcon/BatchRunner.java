@@ -0,0 +1,239 @@
+package eu.jlmb.MapIcon;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Headless creation of map icons for many Dummy.png files at once
+ * @author Jean Baumgarten
+ */
+public class BatchRunner {
+
+	private static final String USAGE = "Usage: --batch <directory|glob> --out <directory> "
+			+ IconSettings.USAGE + " [--threads <count>]";
+
+	private final String input;
+	private final IconSettings settings;
+	private final Path output;
+	private final int threads;
+
+	/**
+	 * Constructor
+	 * @param input directory that is searched for Dummy.png files or a glob pattern
+	 * @param settings frame, operations and output settings applied to each image
+	 * @param output directory for the icons, the folders of the input are repeated in it
+	 * @param threads size of the worker pool
+	 */
+	public BatchRunner(String input, IconSettings settings, Path output, int threads) {
+		this.input = input;
+		this.settings = settings;
+		this.output = output;
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * reads the command line arguments
+	 * @param args like --batch maps/ --frame Standard --ops cutout,landscape --out icons/
+	 * @return a runner for the given arguments
+	 */
+	public static BatchRunner fromArguments(String[] args) {
+		String input = null;
+		String out = null;
+		boolean hasOperations = false;
+		IconSettings settings = new IconSettings();
+		int threads = Runtime.getRuntime().availableProcessors();
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value for " + arg + "\n" + USAGE);
+			}
+			String value = args[++i];
+			if ("--batch".equals(arg)) {
+				input = value;
+			} else if ("--out".equals(arg)) {
+				out = value;
+			} else if ("--threads".equals(arg)) {
+				threads = parseThreads(value);
+			} else if (settings.readOption(arg, value)) {
+				hasOperations |= "--ops".equals(arg) || "--recipe".equals(arg);
+			} else {
+				throw new IllegalArgumentException("Unknown argument " + arg + "\n" + USAGE);
+			}
+		}
+		if (input == null || !hasOperations || out == null) {
+			throw new IllegalArgumentException(USAGE);
+		}
+		return new BatchRunner(input, settings, Paths.get(out), threads);
+	}
+
+	/**
+	 * reads the size of the worker pool
+	 * @param value of the --threads argument
+	 * @return the number of threads
+	 */
+	private static int parseThreads(String value) {
+		try {
+			int threads = Integer.parseInt(value);
+			if (threads > 0) {
+				return threads;
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException("--threads needs a positive number: " + value + "\n" + USAGE);
+	}
+
+	/**
+	 * creates the icons of all found images in parallel
+	 * @return the number of images that could not be treated
+	 * @throws IOException if the input cannot be searched or the frame cannot be read
+	 */
+	public int run() throws IOException {
+		ImageIO.setUseCache(false);
+		for (String frameName : this.settings.getRecipe().getFrameNames()) {
+			FrameRegistry.getDefault().getFrame(frameName);
+		}
+		List<Path> files = this.findInputs();
+		Files.createDirectories(this.output);
+		ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		List<Path> targets = new ArrayList<Path>();
+		Path base = this.baseDirectory();
+		for (Path file : files) {
+			Path target = this.outputPath(base, file);
+			targets.add(target);
+			results.add(pool.submit(() -> {
+				this.createIcon(file, target);
+				return null;
+			}));
+		}
+		pool.shutdown();
+		int failures = 0;
+		for (int i = 0; i < results.size(); i++) {
+			try {
+				results.get(i).get();
+			} catch (ExecutionException e) {
+				failures++;
+				System.err.println("Error while creating " + targets.get(i) + ": " + e.getCause().getMessage());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				pool.shutdownNow();
+				return failures + results.size() - i;
+			}
+		}
+		System.out.println((files.size() - failures) + " of " + files.size() + " icons written to " + this.output);
+		return failures;
+	}
+
+	/**
+	 * creates a single icon
+	 * @param file input image
+	 * @param target where the icon is saved
+	 * @throws IOException if reading or writing fails
+	 */
+	private void createIcon(Path file, Path target) throws IOException {
+		BufferedImage image;
+		try (Metrics.Timer timer = Metrics.start("decode")) {
+			image = ImageIO.read(file.toFile());
+			if (image == null) {
+				throw new IOException("No readable image");
+			}
+			timer.done((long) image.getWidth() * image.getHeight(), 0);
+		}
+		Files.createDirectories(target.toAbsolutePath().getParent());
+		this.settings.writeIcon(image, target);
+	}
+
+	/**
+	 * places the icon at the same relative path below the output directory as its input below the search,
+	 * so inputs in different folders never write the same icon
+	 * @param base directory of the search
+	 * @param file input image
+	 * @return path like icons/mapA/Dummy.png
+	 */
+	private Path outputPath(Path base, Path file) {
+		String relative = base.relativize(file).toString();
+		if (!relative.toLowerCase(Locale.ROOT).endsWith(".png")) {
+			relative += ".png";
+		}
+		return this.output.resolve(relative);
+	}
+
+	/**
+	 * searches all input images
+	 * a directory is searched recursively for files called Dummy.png,
+	 * everything else is treated as glob pattern
+	 * @return the found files in a stable order
+	 * @throws IOException if the search fails
+	 */
+	private List<Path> findInputs() throws IOException {
+		Path base = this.baseDirectory();
+		PathMatcher matcher;
+		if (isPattern(this.input)) {
+			matcher = FileSystems.getDefault().getPathMatcher("glob:" + this.splitInput()[1]);
+		} else {
+			matcher = path -> "dummy.png".equals(path.getFileName().toString().toLowerCase(Locale.ROOT));
+		}
+		try (Stream<Path> stream = Files.walk(base)) {
+			return stream.filter(Files::isRegularFile)
+					.filter(path -> matcher.matches(base.relativize(path)))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * gives back the directory in which the search starts
+	 * @return the input directory or the part of the glob before the first wildcard
+	 */
+	private Path baseDirectory() {
+		if (!isPattern(this.input)) {
+			return Paths.get(this.input);
+		}
+		return Paths.get(this.splitInput()[0]);
+	}
+
+	/**
+	 * splits a glob into the directory without wildcards and the remaining pattern
+	 * @return the directory and the pattern
+	 */
+	private String[] splitInput() {
+		String[] parts = this.input.replace('\\', '/').split("/");
+		StringBuilder base = new StringBuilder();
+		StringBuilder pattern = new StringBuilder();
+		for (String part : parts) {
+			if (pattern.length() > 0 || isPattern(part)) {
+				pattern.append(pattern.length() > 0 ? "/" : "").append(part);
+			} else {
+				base.append(part).append('/');
+			}
+		}
+		return new String[] {base.length() == 0 ? "." : base.toString(), pattern.toString()};
+	}
+
+	/**
+	 * checks for glob wildcards
+	 * @param text to check
+	 * @return true if the text contains a wildcard
+	 */
+	private static boolean isPattern(String text) {
+		return text.contains("*") || text.contains("?") || text.contains("[") || text.contains("{");
+	}
+
+}
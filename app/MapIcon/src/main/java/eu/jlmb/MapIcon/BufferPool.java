@@ -0,0 +1,249 @@
+package eu.jlmb.MapIcon;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of pixel and channel arrays and of byte buffers, so that long batch or server runs reuse their rasters
+ * instead of creating new ones for every picture.
+ * Arrays are kept in size classes of powers of two, a taken array can be longer than asked for
+ * and is not cleared. An array that is never given back is simply left to the garbage collector.
+ * The byte buffers for writing files can be direct ones outside of the heap, so that a channel writes them
+ * without copying them first. The pixels stay in int arrays, because the images and all operations work on them.
+ * @author Jean Baumgarten
+ */
+public final class BufferPool {
+
+	/**
+	 * bytes the default pool keeps at most
+	 */
+	public static final long DEFAULT_SIZE = 64L * 1024 * 1024;
+
+	/**
+	 * system property that lets the default pool hand out direct byte buffers, like -Dmapicon.directBuffers=true
+	 */
+	public static final String DIRECT_PROPERTY = "mapicon.directBuffers";
+
+	private static final int MIN_CLASS = 10;
+	private static final int MAX_CLASS = 28;
+	private static final BufferPool DEFAULT = new BufferPool(DEFAULT_SIZE, Boolean.getBoolean(DIRECT_PROPERTY));
+
+	private final long maxBytes;
+	private final boolean direct;
+	private final List<ConcurrentLinkedDeque<int[]>> ints;
+	private final List<ConcurrentLinkedDeque<float[]>> floats;
+	private final List<ConcurrentLinkedDeque<ByteBuffer>> buffers;
+	private final AtomicLong bytes;
+	private final LongAdder hits;
+	private final LongAdder misses;
+
+	/**
+	 * Constructor of a pool with byte buffers on the heap
+	 * @param maxBytes size of all kept arrays together
+	 */
+	public BufferPool(long maxBytes) {
+		this(maxBytes, false);
+	}
+
+	/**
+	 * Constructor
+	 * @param maxBytes size of all kept arrays and buffers together
+	 * @param direct true if the byte buffers are direct ones outside of the heap
+	 */
+	public BufferPool(long maxBytes, boolean direct) {
+		this.maxBytes = maxBytes;
+		this.direct = direct;
+		this.ints = new ArrayList<ConcurrentLinkedDeque<int[]>>();
+		this.floats = new ArrayList<ConcurrentLinkedDeque<float[]>>();
+		this.buffers = new ArrayList<ConcurrentLinkedDeque<ByteBuffer>>();
+		for (int k = 0; k <= MAX_CLASS; k++) {
+			this.ints.add(new ConcurrentLinkedDeque<int[]>());
+			this.floats.add(new ConcurrentLinkedDeque<float[]>());
+			this.buffers.add(new ConcurrentLinkedDeque<ByteBuffer>());
+		}
+		this.bytes = new AtomicLong();
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+	}
+
+	/**
+	 * gives back the pool of the application
+	 * @return the pool
+	 */
+	public static BufferPool getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * takes a pixel array out of the pool or creates one
+	 * @param size number of elements that are needed at least
+	 * @return an array with old content
+	 */
+	public int[] takeInts(int size) {
+		int k = sizeClass(size);
+		if (k > MAX_CLASS) {
+			return new int[size];
+		}
+		int[] array = this.ints.get(k).pollFirst();
+		if (array == null) {
+			this.misses.increment();
+			return new int[1 << k];
+		}
+		this.bytes.addAndGet(-4L * array.length);
+		this.hits.increment();
+		return array;
+	}
+
+	/**
+	 * takes a channel array out of the pool or creates one
+	 * @param size number of elements that are needed at least
+	 * @return an array with old content
+	 */
+	public float[] takeFloats(int size) {
+		int k = sizeClass(size);
+		if (k > MAX_CLASS) {
+			return new float[size];
+		}
+		float[] array = this.floats.get(k).pollFirst();
+		if (array == null) {
+			this.misses.increment();
+			return new float[1 << k];
+		}
+		this.bytes.addAndGet(-4L * array.length);
+		this.hits.increment();
+		return array;
+	}
+
+	/**
+	 * takes a byte buffer out of the pool or creates one
+	 * @param size number of bytes that are needed at least
+	 * @return a cleared buffer with old content, direct if the pool was created so
+	 */
+	public ByteBuffer takeBytes(int size) {
+		int k = sizeClass(size);
+		if (k > MAX_CLASS) {
+			return this.newBuffer(size);
+		}
+		ByteBuffer buffer = this.buffers.get(k).pollFirst();
+		if (buffer == null) {
+			this.misses.increment();
+			return this.newBuffer(1 << k);
+		}
+		this.bytes.addAndGet(-buffer.capacity());
+		this.hits.increment();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * creates a byte buffer of the kind of this pool
+	 * @param capacity of the buffer
+	 * @return a new buffer
+	 */
+	private ByteBuffer newBuffer(int capacity) {
+		return this.direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+	}
+
+	/**
+	 * gives a pixel array back, it must not be used afterwards
+	 * @param array taken out of the pool
+	 */
+	public void release(int[] array) {
+		int k = releaseClass(array.length, 4);
+		if (k >= 0) {
+			this.ints.get(k).offerFirst(array);
+		}
+	}
+
+	/**
+	 * gives a channel array back, it must not be used afterwards
+	 * @param array taken out of the pool
+	 */
+	public void release(float[] array) {
+		int k = releaseClass(array.length, 4);
+		if (k >= 0) {
+			this.floats.get(k).offerFirst(array);
+		}
+	}
+
+	/**
+	 * gives a byte buffer back, it must not be used afterwards
+	 * @param buffer taken out of the pool
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer.isDirect() != this.direct) {
+			return;
+		}
+		int k = releaseClass(buffer.capacity(), 1);
+		if (k >= 0) {
+			this.buffers.get(k).offerFirst(buffer);
+		}
+	}
+
+	/**
+	 * decides if a given back array is kept and reserves its bytes
+	 * @param length of the array
+	 * @param elementSize bytes of one element
+	 * @return the size class, -1 if the array is dropped
+	 */
+	private int releaseClass(int length, int elementSize) {
+		if (Integer.bitCount(length) != 1 || length < (1 << MIN_CLASS) || length > (1 << MAX_CLASS)) {
+			return -1;
+		}
+		long size = (long) elementSize * length;
+		long known = this.bytes.get();
+		while (known + size <= this.maxBytes) {
+			if (this.bytes.compareAndSet(known, known + size)) {
+				return Integer.numberOfTrailingZeros(length);
+			}
+			known = this.bytes.get();
+		}
+		return -1;
+	}
+
+	/**
+	 * finds the size class of an array
+	 * @param size number of elements
+	 * @return the exponent of the smallest power of two that is big enough
+	 */
+	private static int sizeClass(int size) {
+		return Math.max(MIN_CLASS, 32 - Integer.numberOfLeadingZeros(Math.max(1, size) - 1));
+	}
+
+	/**
+	 * tells if the byte buffers are direct ones
+	 * @return true if the byte buffers are outside of the heap
+	 */
+	public boolean isDirect() {
+		return this.direct;
+	}
+
+	/**
+	 * Getter for the arrays found in the pool
+	 * @return number of reused arrays
+	 */
+	public long getHits() {
+		return this.hits.sum();
+	}
+
+	/**
+	 * Getter for the arrays that had to be created
+	 * @return number of created arrays
+	 */
+	public long getMisses() {
+		return this.misses.sum();
+	}
+
+	/**
+	 * Getter for the size of the kept arrays
+	 * @return bytes held by the pool, direct buffers included
+	 */
+	public long getBytes() {
+		return this.bytes.get();
+	}
+
+}
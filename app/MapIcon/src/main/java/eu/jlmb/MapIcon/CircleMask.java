@@ -0,0 +1,123 @@
+package eu.jlmb.MapIcon;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Run-length representation of a circle on a raster.
+ * Every row holds one span of pixels inside the circle, everything else is outside.
+ * @author Jean Baumgarten
+ */
+public final class CircleMask {
+
+	private static final int CACHE_LIMIT = 64;
+	private static final Map<String, CircleMask> CACHE = new ConcurrentHashMap<String, CircleMask>();
+
+	private final int width;
+	private final int height;
+	private final int[] starts;
+	private final int[] ends;
+
+	/**
+	 * Constructor, computes the spans of all rows
+	 * @param centerX x position of the center
+	 * @param centerY y position of the center
+	 * @param radius of the circle, a point is inside if its distance is smaller
+	 * @param width of the raster
+	 * @param height of the raster
+	 */
+	private CircleMask(int centerX, int centerY, int radius, int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.starts = new int[height];
+		this.ends = new int[height];
+		long square = (long) radius * radius;
+		for (int y = 0; y < height; y++) {
+			long rest = square - (long) (y - centerY) * (y - centerY);
+			if (rest <= 0) {
+				continue;
+			}
+			long half = (long) Math.sqrt(rest);
+			while (half * half >= rest) {
+				half--;
+			}
+			while ((half + 1) * (half + 1) < rest) {
+				half++;
+			}
+			long start = Math.max(0, centerX - half);
+			long end = Math.min(width, centerX + half + 1);
+			if (start < end) {
+				this.starts[y] = (int) start;
+				this.ends[y] = (int) end;
+			}
+		}
+	}
+
+	/**
+	 * gives back the mask of a circle, every mask is only computed once
+	 * @param centerX x position of the center
+	 * @param centerY y position of the center
+	 * @param radius of the circle
+	 * @param width of the raster
+	 * @param height of the raster
+	 * @return the mask
+	 */
+	public static CircleMask of(int centerX, int centerY, int radius, int width, int height) {
+		String key = centerX + "," + centerY + "," + radius + "," + width + "," + height;
+		CircleMask mask = CACHE.get(key);
+		if (mask == null) {
+			if (CACHE.size() >= CACHE_LIMIT) {
+				CACHE.clear();
+			}
+			mask = new CircleMask(centerX, centerY, radius, width, height);
+			CircleMask known = CACHE.putIfAbsent(key, mask);
+			mask = (known != null) ? known : mask;
+		}
+		return mask;
+	}
+
+	/**
+	 * first pixel of a row that is inside the circle
+	 * @param y is the row
+	 * @return x position, equal to the end if the row is completely outside
+	 */
+	public int start(int y) {
+		return this.starts[y];
+	}
+
+	/**
+	 * first pixel of a row after the circle
+	 * @param y is the row
+	 * @return x position
+	 */
+	public int end(int y) {
+		return this.ends[y];
+	}
+
+	/**
+	 * checks if a point is inside the circle
+	 * @param x is the x position of the point
+	 * @param y is the y position of the point
+	 * @return true if the point is inside
+	 */
+	public boolean contains(int x, int y) {
+		return y >= 0 && y < this.height && x >= this.starts[y] && x < this.ends[y];
+	}
+
+	/**
+	 * Getter for the width
+	 * @return int
+	 */
+	public int getWidth() {
+		return this.width;
+	}
+
+	/**
+	 * Getter for the height
+	 * @return int
+	 */
+	public int getHeight() {
+		return this.height;
+	}
+
+}
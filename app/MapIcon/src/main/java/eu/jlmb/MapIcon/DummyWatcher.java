@@ -0,0 +1,289 @@
+package eu.jlmb.MapIcon;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Watches the Dummy.png files written by the map editors
+ * and creates the icon again every time one of them really changed
+ * @author Jean Baumgarten
+ */
+public class DummyWatcher {
+
+	private static final String USAGE = "Usage: --watch [--out <file>] [--debounce <milliseconds>] "
+			+ IconSettings.USAGE;
+
+	private final List<Path> dummies;
+	private final IconSettings settings;
+	private final Path target;
+	private final long debounce;
+	private final Map<Path, Fingerprint> known;
+
+	/**
+	 * Constructor
+	 * @param dummies the Dummy.png files to watch
+	 * @param settings frame, operations and output settings for the icon
+	 * @param target file the icon is written to
+	 * @param debounce milliseconds without new events before the icon is created
+	 */
+	public DummyWatcher(List<Path> dummies, IconSettings settings, Path target, long debounce) {
+		this.dummies = new ArrayList<Path>();
+		for (Path dummy : dummies) {
+			this.dummies.add(dummy.toAbsolutePath().normalize());
+		}
+		this.settings = settings;
+		this.target = target;
+		this.debounce = debounce;
+		this.known = new HashMap<Path, Fingerprint>();
+	}
+
+	/**
+	 * reads the command line arguments, the watched files and the recipe are taken from the preferences
+	 * @param args like --watch --frame GoldenRing --ops cutout,landscape --out icon.png
+	 * @param manager of the preferences
+	 * @return a watcher for the given arguments
+	 * @throws IllegalArgumentException if the arguments are invalid or neither they nor the preferences hold a recipe
+	 */
+	public static DummyWatcher fromArguments(String[] args, PrefManager manager) {
+		IconSettings settings = new IconSettings();
+		settings.setRecipe(manager.getRecipe());
+		String out = System.getProperty("user.home") + File.separator + "Desktop/mapicon.png";
+		long debounce = 500;
+		for (int i = 1; i < args.length; i++) {
+			String arg = args[i];
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value for " + arg + "\n" + USAGE);
+			}
+			String value = args[++i];
+			if ("--out".equals(arg)) {
+				out = value;
+			} else if ("--debounce".equals(arg)) {
+				debounce = parseDebounce(value);
+			} else if (!settings.readOption(arg, value)) {
+				throw new IllegalArgumentException("Unknown argument " + arg + "\n" + USAGE);
+			}
+		}
+		if (settings.getRecipe().isEmpty()) {
+			throw new IllegalArgumentException("No recipe saved yet, use --ops or --recipe\n" + USAGE);
+		}
+		List<Path> dummies = new ArrayList<Path>();
+		for (String path : Arrays.asList(manager.getS6Path(), manager.getS5Path())) {
+			try {
+				dummies.add(Paths.get(path));
+			} catch (InvalidPathException e) {
+				System.err.println("Cannot watch " + path + ": " + e.getMessage());
+			}
+		}
+		return new DummyWatcher(dummies, settings, Paths.get(out), debounce);
+	}
+
+	/**
+	 * reads the quiet period
+	 * @param value of the --debounce argument
+	 * @return milliseconds without new events before the icon is created
+	 */
+	private static long parseDebounce(String value) {
+		try {
+			long debounce = Long.parseLong(value);
+			if (debounce >= 0) {
+				return debounce;
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException("--debounce needs a number of milliseconds: " + value + "\n" + USAGE);
+	}
+
+	/**
+	 * watches the files until the thread is interrupted
+	 * @throws IOException if none of the folders can be watched
+	 */
+	public void run() throws IOException {
+		ImageIO.setUseCache(false);
+		try (WatchService service = FileSystems.getDefault().newWatchService()) {
+			Map<WatchKey, Path> folders = new HashMap<WatchKey, Path>();
+			for (Path dummy : this.dummies) {
+				Path folder = dummy.getParent();
+				if (folder != null && Files.isDirectory(folder) && !folders.containsValue(folder)) {
+					WatchKey key = folder.register(service,
+							StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+					folders.put(key, folder);
+					System.out.println("Watching " + dummy);
+				}
+			}
+			if (folders.isEmpty()) {
+				throw new IOException("None of the folders of " + this.dummies + " exists");
+			}
+			for (Path dummy : this.dummies) {
+				this.remember(dummy);
+			}
+			this.watch(service, folders);
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * collects the events and handles them after a quiet period
+	 * @param service that delivers the events
+	 * @param folders that are watched
+	 * @throws InterruptedException if the thread is interrupted
+	 */
+	private void watch(WatchService service, Map<WatchKey, Path> folders) throws InterruptedException {
+		Set<Path> pending = new LinkedHashSet<Path>();
+		long deadline = 0;
+		while (!Thread.currentThread().isInterrupted()) {
+			WatchKey key;
+			if (pending.isEmpty()) {
+				key = service.take();
+			} else {
+				key = service.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+			}
+			if (key != null) {
+				Path folder = folders.get(key);
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (folder != null && event.context() instanceof Path) {
+						Path changed = folder.resolve((Path) event.context());
+						if (this.dummies.contains(changed)) {
+							pending.add(changed);
+							deadline = System.currentTimeMillis() + this.debounce;
+						}
+					}
+				}
+				key.reset();
+			} else if (System.currentTimeMillis() >= deadline) {
+				for (Path dummy : pending) {
+					this.update(dummy);
+				}
+				pending.clear();
+			}
+		}
+	}
+
+	/**
+	 * stores the fingerprint of a file without creating an icon
+	 * @param dummy file that exists when the watching starts
+	 */
+	private void remember(Path dummy) {
+		try {
+			if (Files.isRegularFile(dummy)) {
+				BasicFileAttributes attributes = Files.readAttributes(dummy, BasicFileAttributes.class);
+				byte[] hash = MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(dummy));
+				long modified = attributes.lastModifiedTime().toMillis();
+				this.known.put(dummy, new Fingerprint(attributes.size(), modified, hash));
+			}
+		} catch (IOException e) {
+			System.err.println("Error while reading " + dummy + ": " + e.getMessage());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * creates the icon if the content of the file is new
+	 * @param dummy file that might have changed
+	 */
+	private void update(Path dummy) {
+		try {
+			if (!Files.isRegularFile(dummy)) {
+				return;
+			}
+			BasicFileAttributes attributes = Files.readAttributes(dummy, BasicFileAttributes.class);
+			long size = attributes.size();
+			long modified = attributes.lastModifiedTime().toMillis();
+			Fingerprint last = this.known.get(dummy);
+			if (last != null && last.size == size && last.modified == modified) {
+				return;
+			}
+			byte[] content = Files.readAllBytes(dummy);
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(content);
+			if (last != null && Arrays.equals(last.hash, hash)) {
+				this.known.put(dummy, new Fingerprint(size, modified, hash));
+				return;
+			}
+			BufferedImage picture;
+			try (Metrics.Timer timer = Metrics.start("decode")) {
+				picture = ImageIO.read(new ByteArrayInputStream(content));
+				if (picture != null) {
+					timer.done((long) picture.getWidth() * picture.getHeight(), 0);
+				}
+			}
+			if (picture == null) {
+				System.err.println("No readable image in " + dummy + ", waiting for the next change");
+				return;
+			}
+			this.write(picture);
+			this.known.put(dummy, new Fingerprint(size, modified, hash));
+			System.out.println("Icon for " + dummy + " written to " + this.target);
+		} catch (IOException e) {
+			System.err.println("Error while creating the icon for " + dummy + ": " + e.getMessage());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * writes the icon through a temporary file, so that nobody reads a half written icon
+	 * @param picture the icon is created from
+	 * @throws IOException if creating or writing fails
+	 */
+	private void write(BufferedImage picture) throws IOException {
+		Path folder = this.target.toAbsolutePath().getParent();
+		Files.createDirectories(folder);
+		Path temporary = Files.createTempFile(folder, "mapicon", ".tmp");
+		try {
+			this.settings.writeIcon(picture, temporary);
+			try {
+				Files.move(temporary, this.target, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, this.target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Size, modification time and hash of a file at the time the icon was created
+	 */
+	private static final class Fingerprint {
+
+		private final long size;
+		private final long modified;
+		private final byte[] hash;
+
+		Fingerprint(long size, long modified, byte[] hash) {
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+		}
+	}
+
+}
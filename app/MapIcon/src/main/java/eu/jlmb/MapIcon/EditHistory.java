@@ -0,0 +1,203 @@
+package eu.jlmb.MapIcon;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Undo and redo history of the image that is changed in the window.
+ * Every state remembers the recipe that leads from the start image to it.
+ * Operations change the working image in place and are then committed as a new state,
+ * undo and redo only copy the tiles that differ between two states back into the working image.
+ * The history is not thread safe, it is meant to be used by the worker thread only.
+ * @author Jean Baumgarten
+ */
+public class EditHistory {
+
+	/**
+	 * memory the states of a history may use by default
+	 */
+	public static final long DEFAULT_BUDGET = 32L * 1024 * 1024;
+
+	/**
+	 * number of states a history keeps by default
+	 */
+	public static final int DEFAULT_STEPS = 50;
+
+	private final BufferedImage working;
+	private final List<TiledImage> states;
+	private final List<Recipe> recipes;
+	private final long budget;
+	private final int maxSteps;
+	private int position;
+	private long memory;
+
+	/**
+	 * Constructor with the default limits
+	 * @param start image, it is copied and not changed
+	 */
+	public EditHistory(BufferedImage start) {
+		this(start, DEFAULT_BUDGET, DEFAULT_STEPS);
+	}
+
+	/**
+	 * Constructor
+	 * @param start image, it is copied and not changed
+	 * @param budget bytes the stored states may use, the oldest states are dropped first
+	 * @param maxSteps number of states that are kept at most
+	 */
+	public EditHistory(BufferedImage start, long budget, int maxSteps) {
+		this.working = PixelRaster.copyArgb(start);
+		this.states = new ArrayList<TiledImage>();
+		this.recipes = new ArrayList<Recipe>();
+		this.budget = budget;
+		this.maxSteps = Math.max(1, maxSteps);
+		TiledImage first = TiledImage.of(this.working);
+		this.states.add(first);
+		this.recipes.add(Recipe.EMPTY);
+		this.memory = first.newTileBytes(null);
+		this.position = 0;
+	}
+
+	/**
+	 * gives back the image operations are applied to,
+	 * changes to it have to be committed or reverted
+	 * @return the working image of type TYPE_INT_ARGB
+	 */
+	public BufferedImage getWorkingImage() {
+		return this.working;
+	}
+
+	/**
+	 * gives back the state the working image had after the last commit, undo or redo
+	 * @return the current state
+	 */
+	public TiledImage current() {
+		return this.states.get(this.position);
+	}
+
+	/**
+	 * gives back the recipe of the current state
+	 * @return the operations applied to the start image
+	 */
+	public Recipe getRecipe() {
+		return this.recipes.get(this.position);
+	}
+
+	/**
+	 * stores the changes of the working image as a new step, the steps that could be redone are dropped
+	 * @return the new state, the current state if nothing changed
+	 */
+	public TiledImage commit() {
+		return this.commit(this.getRecipe());
+	}
+
+	/**
+	 * stores the changes of the working image as a new step, the steps that could be redone are dropped
+	 * @param recipe that leads from the start image to the changed working image
+	 * @return the new state, the current state if nothing changed
+	 */
+	public TiledImage commit(Recipe recipe) {
+		TiledImage current = this.current();
+		TiledImage next = current.derive(this.working);
+		if (next == current) {
+			return current;
+		}
+		while (this.states.size() > this.position + 1) {
+			TiledImage dropped = this.states.remove(this.states.size() - 1);
+			this.recipes.remove(this.recipes.size() - 1);
+			this.memory -= dropped.newTileBytes(this.states.get(this.states.size() - 1));
+		}
+		this.states.add(next);
+		this.recipes.add(recipe);
+		this.position++;
+		this.memory += next.newTileBytes(current);
+		this.trim();
+		return next;
+	}
+
+	/**
+	 * throws away the uncommitted changes of the working image
+	 * @return the current state
+	 */
+	public TiledImage revert() {
+		TiledImage current = this.current();
+		current.copyInto(this.working, null);
+		return current;
+	}
+
+	/**
+	 * goes back one step
+	 * @return the state before, null if there is none
+	 */
+	public TiledImage undo() {
+		if (!this.canUndo()) {
+			return null;
+		}
+		TiledImage current = this.current();
+		this.position--;
+		TiledImage previous = this.current();
+		previous.copyInto(this.working, current);
+		return previous;
+	}
+
+	/**
+	 * goes forward one step that was undone
+	 * @return the state after, null if there is none
+	 */
+	public TiledImage redo() {
+		if (!this.canRedo()) {
+			return null;
+		}
+		TiledImage current = this.current();
+		this.position++;
+		TiledImage next = this.current();
+		next.copyInto(this.working, current);
+		return next;
+	}
+
+	/**
+	 * tells if there is a step to go back to
+	 * @return true if undo is possible
+	 */
+	public boolean canUndo() {
+		return this.position > 0;
+	}
+
+	/**
+	 * tells if there is an undone step
+	 * @return true if redo is possible
+	 */
+	public boolean canRedo() {
+		return this.position < this.states.size() - 1;
+	}
+
+	/**
+	 * Getter for the number of stored states
+	 * @return states including the first one
+	 */
+	public int size() {
+		return this.states.size();
+	}
+
+	/**
+	 * Getter for the memory of the stored states
+	 * @return bytes of all tiles held by the history
+	 */
+	public long getMemory() {
+		return this.memory;
+	}
+
+	/**
+	 * drops the oldest states until the limits are kept, the current state is never dropped
+	 */
+	private void trim() {
+		while (this.position > 0 && (this.states.size() > this.maxSteps || this.memory > this.budget)) {
+			TiledImage oldest = this.states.remove(0);
+			this.recipes.remove(0);
+			this.memory -= oldest.newTileBytes(this.states.get(0));
+			this.position--;
+		}
+	}
+
+}
@@ -0,0 +1,250 @@
+package eu.jlmb.MapIcon;
+
+import java.awt.EventQueue;
+import java.awt.Window;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watches how long the event dispatch thread of the window is busy, only if it is asked for on the command line.
+ * Every action of the window is measured as operation "edt:" and the name of the action,
+ * a background thread sends pings to the event dispatch thread and measures their latency as "edt:latency".
+ * If a ping is not answered within the threshold, the stack of the event dispatch thread is written
+ * to the error stream, together with the action that is running. The histograms are written when the program ends.
+ * @author Jean Baumgarten
+ */
+public final class EdtWatchdog {
+
+	/**
+	 * command line option that turns the watchdog on, optionally followed by the threshold in milliseconds
+	 */
+	public static final String OPTION = "--edt-stall";
+
+	/**
+	 * milliseconds the event dispatch thread may be busy before it counts as stalled, if the option has no number
+	 */
+	public static final long DEFAULT_THRESHOLD = 200;
+
+	/**
+	 * prefix of the measured operations
+	 */
+	public static final String PREFIX = "edt:";
+
+	private static final String LATENCY = PREFIX + "latency";
+	private static final EdtWatchdog DEFAULT = new EdtWatchdog();
+
+	private final AtomicLong stalls;
+	private volatile long threshold;
+	private volatile Thread dispatcher;
+	private volatile String action;
+	private volatile long pingSent;
+	private volatile long reported;
+	private volatile boolean started;
+
+	/**
+	 * Constructor of a watchdog that is not started
+	 */
+	public EdtWatchdog() {
+		this.stalls = new AtomicLong();
+	}
+
+	/**
+	 * gives back the watchdog of the window
+	 * @return the watchdog
+	 */
+	public static EdtWatchdog getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * reads the threshold out of the command line
+	 * @param args of the command line
+	 * @return milliseconds given after the option, DEFAULT_THRESHOLD if no number follows it, 0 if the option is missing
+	 */
+	public static long threshold(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			if (OPTION.equals(args[i])) {
+				if (i + 1 == args.length || args[i + 1].startsWith("--")) {
+					return DEFAULT_THRESHOLD;
+				}
+				try {
+					long millis = Long.parseLong(args[i + 1]);
+					if (millis >= 0) {
+						return millis;
+					}
+				} catch (NumberFormatException e) {
+					// reported below
+				}
+				throw new IllegalArgumentException(OPTION + " needs a number of milliseconds");
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * starts watching the event dispatch thread, the histograms are written when the program ends
+	 * @param thresholdMillis milliseconds after which the thread counts as stalled, 0 does nothing
+	 */
+	public synchronized void start(long thresholdMillis) {
+		if (this.started || thresholdMillis <= 0) {
+			return;
+		}
+		this.started = true;
+		this.threshold = thresholdMillis * 1000000L;
+		Thread watcher = new Thread(this::watch, "EDT-Watchdog");
+		watcher.setDaemon(true);
+		watcher.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.print(this.report()), "EDT-Report"));
+	}
+
+	/**
+	 * runs an action on the event dispatch thread and measures it if the watchdog is started,
+	 * an action run inside another one gives the name back to the outer one when it ends
+	 * @param name of the action like the name of the button
+	 * @param action to run
+	 */
+	public void measure(String name, Runnable action) {
+		if (!this.started) {
+			action.run();
+			return;
+		}
+		String outer = this.action;
+		this.action = name;
+		this.dispatcher = Thread.currentThread();
+		try (Metrics.Timer timer = Metrics.start(PREFIX + name)) {
+			action.run();
+			timer.done(0, 0);
+		} finally {
+			this.action = outer;
+		}
+	}
+
+	/**
+	 * gives back the number of stalls that were found
+	 * @return number of pings that were not answered within the threshold
+	 */
+	public long getStalls() {
+		return this.stalls.get();
+	}
+
+	/**
+	 * sends pings and reports the ones that are not answered in time
+	 */
+	private void watch() {
+		long period = Math.max(10, this.threshold / 4000000L);
+		while (true) {
+			try {
+				Thread.sleep(period);
+			} catch (InterruptedException e) {
+				return;
+			}
+			long now = System.nanoTime();
+			long sent = this.pingSent;
+			if (sent == 0) {
+				// without a window the event queue has to become empty, or AWT would never let the program end
+				if (this.action != null || hasWindow()) {
+					this.ping();
+				}
+			} else if (now - sent > this.threshold && this.reported != sent) {
+				this.reported = sent;
+				this.stalls.incrementAndGet();
+				System.err.print(this.describeStall((now - sent) / 1000000L));
+			}
+		}
+	}
+
+	/**
+	 * tells if the program shows a window
+	 * @return true if a window is displayable
+	 */
+	private static boolean hasWindow() {
+		for (Window window : Window.getWindows()) {
+			if (window.isDisplayable()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * puts a ping into the event queue
+	 */
+	private void ping() {
+		long now = System.nanoTime();
+		this.pingSent = now;
+		EventQueue.invokeLater(() -> {
+			long latency = System.nanoTime() - now;
+			Metrics.getDefault().record(LATENCY, latency, 0, 0, false);
+			this.dispatcher = Thread.currentThread();
+			long waited = latency / 1000000L;
+			if (this.pingSent == this.reported) {
+				System.err.println("EDT answers again after " + waited + " ms");
+			}
+			this.pingSent = 0;
+		});
+	}
+
+	/**
+	 * describes what the event dispatch thread does while it is stalled
+	 * @param millis the thread is busy until now
+	 * @return message with the running action and the stack of the thread
+	 */
+	private String describeStall(long millis) {
+		String running = this.action;
+		StringBuilder message = new StringBuilder("EDT stalled for ").append(millis).append(" ms");
+		message.append(running == null ? "" : " in action " + running).append('\n');
+		Thread thread = this.dispatcher;
+		StackTraceElement[] stack = null;
+		if (thread != null) {
+			stack = thread.getStackTrace();
+		} else {
+			for (Map.Entry<Thread, StackTraceElement[]> entry : Thread.getAllStackTraces().entrySet()) {
+				if (entry.getKey().getName().startsWith("AWT-EventQueue")) {
+					stack = entry.getValue();
+				}
+			}
+		}
+		if (stack != null) {
+			for (StackTraceElement element : stack) {
+				message.append("\tat ").append(element).append('\n');
+			}
+		}
+		return message.toString();
+	}
+
+	/**
+	 * describes the measured actions and the latency of the event dispatch thread
+	 * @return one line per operation with its histogram
+	 */
+	public String report() {
+		Metrics metrics = Metrics.getDefault();
+		double[] bounds = metrics.getHistogramBounds();
+		StringBuilder report = new StringBuilder("Event dispatch thread, ")
+				.append(this.stalls.get()).append(" stalls:\n");
+		for (Metrics.OperationSummary summary : metrics.getOperations()) {
+			if (!summary.getName().startsWith(PREFIX)) {
+				continue;
+			}
+			report.append("  ").append(summary).append("\n   ");
+			long[] histogram = summary.getHistogram();
+			for (int i = 0; i < histogram.length; i++) {
+				if (histogram[i] > 0) {
+					String bound = i < bounds.length ? "<=" + millis(bounds[i]) : ">" + millis(bounds[bounds.length - 1]);
+					report.append(' ').append(bound).append(" ms: ").append(histogram[i]);
+				}
+			}
+			report.append('\n');
+		}
+		return report.toString();
+	}
+
+	/**
+	 * writes a bound of the histogram without needless decimals
+	 * @param bound in milliseconds
+	 * @return the bound as text
+	 */
+	private static String millis(double bound) {
+		return bound == Math.rint(bound) ? Long.toString((long) bound) : Double.toString(bound);
+	}
+
+}
@@ -3,17 +3,14 @@ package eu.jlmb.MapIcon;
 import java.awt.Container;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.awt.image.BufferedImage;
-import java.io.IOException;
-import java.io.InputStream;
 
-import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.SpringLayout;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 
 /**
  * Class for the first Start of the MapIconator
@@ -61,28 +58,33 @@ public class FirstStarter implements ActionListener {
         layout.putConstraint(SpringLayout.NORTH, setS5, 30, SpringLayout.SOUTH, info);
         setS5.addActionListener(this);
         
-        InputStream stream = WindowWorker.class.getResourceAsStream("/eu/jlmb/S5Icon.png");
-        try {
-            BufferedImage preview = ImageIO.read(stream);
-            setS5.setIcon(new ImageIcon(preview));
-            setS5.setBorder(null);
-        } catch (IOException e) {
-			e.printStackTrace();
-        }
-        stream = WindowWorker.class.getResourceAsStream("/eu/jlmb/S6Icon.png");
-        try {
-			BufferedImage preview = ImageIO.read(stream);
-            setS6.setIcon(new ImageIcon(preview));
-            setS6.setBorder(null);
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+        showPreview(setS5, FrameRegistry.S5_ICON);
+        showPreview(setS6, FrameRegistry.S6_ICON);
         
         this.frame.setSize(490, 220);
         this.frame.setResizable(false);
         this.frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         this.frame.setLocationRelativeTo(null);
         this.frame.setVisible(true);
+        StartupProfile.getDefault().mark(StartupProfile.WINDOW_SHOWN);
+	}
+
+	/**
+	 * puts a picture on a button as soon as it is decoded
+	 * @param button to show the picture
+	 * @param resource name of the picture
+	 */
+	private static void showPreview(JButton button, String resource) {
+		FrameRegistry.getDefault().request(resource).whenComplete((preview, error) -> {
+			SwingUtilities.invokeLater(() -> {
+				if (preview != null) {
+					button.setIcon(new ImageIcon(preview));
+					button.setBorder(null);
+				} else {
+					button.setText(error.getCause() != null ? error.getCause().getMessage() : error.getMessage());
+				}
+			});
+		});
 	}
 
 	/**
@@ -91,6 +93,14 @@ public class FirstStarter implements ActionListener {
 	 */
 	public void actionPerformed(ActionEvent e) {
 		String name = ((JButton) e.getSource()).getName();
+		EdtWatchdog.getDefault().measure(name, () -> this.choose(name));
+	}
+
+	/**
+	 * stores the chosen version and opens the main window
+	 * @param name of the clicked button
+	 */
+	private void choose(String name) {
 		if ("setS6".equals(name)) {
 			this.manager.setVersion("Die Siedler - Aufstieg eines Knigreichs");
 		} else if ("setS5".equals(name)) {
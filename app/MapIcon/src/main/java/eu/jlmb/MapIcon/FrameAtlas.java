@@ -0,0 +1,191 @@
+package eu.jlmb.MapIcon;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Packs the bundled pictures into one atlas image and an index of their rectangles.
+ * The build runs the main method after compiling, so that the application
+ * only has to read and decode a single resource and can cut the pictures out of it without copying.
+ * A packed atlas is also kept in the resources, so that runs without the Maven build find it too,
+ * it has to be packed again into src/main/resources/eu/jlmb when a picture changes.
+ * @author Jean Baumgarten
+ */
+public final class FrameAtlas {
+
+	/**
+	 * file name of the atlas image inside the resource folder
+	 */
+	public static final String IMAGE = "frames.png";
+
+	/**
+	 * file name of the index inside the resource folder
+	 */
+	public static final String INDEX = "frames.idx";
+
+	private static final int MAGIC = 0x4D494341;
+	private static final int VERSION = 1;
+
+	private FrameAtlas() {
+	}
+
+	/**
+	 * packs all pictures of a folder
+	 * @param args the folder with the pictures and the folder to write the atlas to
+	 * @throws IOException if a picture cannot be read or the atlas cannot be written
+	 * @throws IllegalArgumentException if the folders are not given
+	 */
+	public static void main(String[] args) throws IOException {
+		// no System.exit, the build runs this method inside its own JVM
+		if (args.length != 2) {
+			throw new IllegalArgumentException("Usage: FrameAtlas <picture folder> <resource folder>");
+		}
+		Map<String, Rectangle> index = pack(Paths.get(args[0]), Paths.get(args[1]));
+		System.out.println(index.size() + " pictures packed into " + IMAGE);
+	}
+
+	/**
+	 * packs the PNG files of a folder into an atlas image and writes it with its index
+	 * @param source folder with the pictures
+	 * @param target folder to write the atlas and the index to
+	 * @return the rectangles of the pictures by file name
+	 * @throws IOException if a picture cannot be read or the atlas cannot be written
+	 */
+	public static Map<String, Rectangle> pack(Path source, Path target) throws IOException {
+		List<String> names = new ArrayList<String>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(source, "*.png")) {
+			for (Path file : files) {
+				names.add(file.getFileName().toString());
+			}
+		}
+		Collections.sort(names);
+		Map<String, BufferedImage> pictures = new LinkedHashMap<String, BufferedImage>();
+		for (String name : names) {
+			BufferedImage picture = ImageIO.read(source.resolve(name).toFile());
+			if (picture == null) {
+				throw new IOException("No readable image: " + name);
+			}
+			pictures.put(name, picture);
+		}
+		Map<String, Rectangle> index = layout(pictures);
+		int width = 1;
+		int height = 1;
+		for (Rectangle place : index.values()) {
+			width = Math.max(width, place.x + place.width);
+			height = Math.max(height, place.y + place.height);
+		}
+		BufferedImage atlas = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		for (Map.Entry<String, Rectangle> entry : index.entrySet()) {
+			BufferedImage picture = pictures.get(entry.getKey());
+			Rectangle place = entry.getValue();
+			int[] row = picture.getRGB(0, 0, place.width, place.height, null, 0, place.width);
+			atlas.setRGB(place.x, place.y, place.width, place.height, row, 0, place.width);
+		}
+		Files.createDirectories(target);
+		// the up filter is almost as small as adaptive filtering, but much cheaper to undo when decoding
+		new PngEncoder(Deflater.BEST_COMPRESSION, PngEncoder.RowFilter.UP).write(atlas, target.resolve(IMAGE));
+		try (OutputStream stream = Files.newOutputStream(target.resolve(INDEX))) {
+			writeIndex(index, stream);
+		}
+		return index;
+	}
+
+	/**
+	 * places the pictures in shelves, highest first, the atlas gets about as wide as high
+	 * @param pictures by file name
+	 * @return the rectangles of the pictures in the same order
+	 */
+	private static Map<String, Rectangle> layout(Map<String, BufferedImage> pictures) {
+		List<String> order = new ArrayList<String>(pictures.keySet());
+		order.sort((a, b) -> pictures.get(b).getHeight() - pictures.get(a).getHeight());
+		long area = 0;
+		int widest = 0;
+		for (BufferedImage picture : pictures.values()) {
+			area += (long) picture.getWidth() * picture.getHeight();
+			widest = Math.max(widest, picture.getWidth());
+		}
+		int limit = Math.max(widest, (int) Math.ceil(Math.sqrt(area)));
+		Map<String, Rectangle> index = new LinkedHashMap<String, Rectangle>();
+		int x = 0;
+		int y = 0;
+		int shelf = 0;
+		for (String name : order) {
+			BufferedImage picture = pictures.get(name);
+			if (x + picture.getWidth() > limit) {
+				x = 0;
+				y += shelf;
+				shelf = 0;
+			}
+			index.put(name, new Rectangle(x, y, picture.getWidth(), picture.getHeight()));
+			x += picture.getWidth();
+			shelf = Math.max(shelf, picture.getHeight());
+		}
+		return index;
+	}
+
+	/**
+	 * writes the index of an atlas
+	 * @param index rectangles of the pictures by file name
+	 * @param stream to write to, stays open
+	 * @throws IOException if the index cannot be written
+	 */
+	public static void writeIndex(Map<String, Rectangle> index, OutputStream stream) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		out.writeShort(index.size());
+		for (Map.Entry<String, Rectangle> entry : index.entrySet()) {
+			Rectangle place = entry.getValue();
+			out.writeUTF(entry.getKey());
+			out.writeShort(place.x);
+			out.writeShort(place.y);
+			out.writeShort(place.width);
+			out.writeShort(place.height);
+		}
+		out.flush();
+	}
+
+	/**
+	 * reads the index of an atlas
+	 * @param stream to read from, stays open
+	 * @return the rectangles of the pictures by file name
+	 * @throws IOException if the index cannot be read or has an unknown format
+	 */
+	public static Map<String, Rectangle> readIndex(InputStream stream) throws IOException {
+		DataInputStream in = new DataInputStream(stream);
+		if (in.readInt() != MAGIC) {
+			throw new IOException("No atlas index");
+		}
+		int version = in.readUnsignedShort();
+		if (version != VERSION) {
+			throw new IOException("Unknown atlas index version: " + version);
+		}
+		int count = in.readUnsignedShort();
+		Map<String, Rectangle> index = new LinkedHashMap<String, Rectangle>();
+		for (int i = 0; i < count; i++) {
+			String name = in.readUTF();
+			index.put(name, new Rectangle(in.readUnsignedShort(), in.readUnsignedShort(),
+					in.readUnsignedShort(), in.readUnsignedShort()));
+		}
+		return index;
+	}
+
+}
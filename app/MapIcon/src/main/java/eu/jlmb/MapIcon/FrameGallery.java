@@ -0,0 +1,277 @@
+package eu.jlmb.MapIcon;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Composes a picture with every bundled frame in the background, so that the frames can be compared
+ * and a chosen result can be applied without computing it again.
+ * The results are found by a SHA-256 digest of the pixels they were made from
+ * and are only handed out after comparing these pixels, only the results of the most recently used pictures are kept.
+ * @author Jean Baumgarten
+ */
+public final class FrameGallery {
+
+	/**
+	 * width and height the thumbnails fit into
+	 */
+	public static final int THUMBNAIL_SIZE = 80;
+
+	/**
+	 * number of pictures whose results are kept by default
+	 */
+	public static final int DEFAULT_PICTURES = 4;
+
+	private final ExecutorService workers;
+	private final int maxPictures;
+	private final LinkedHashMap<String, Map<String, CompletableFuture<Preview>>> pictures;
+
+	/**
+	 * Constructor with one thread per processor
+	 */
+	public FrameGallery() {
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_PICTURES);
+	}
+
+	/**
+	 * Constructor
+	 * @param threads number of frames that are composed at the same time
+	 * @param maxPictures number of pictures whose results are kept at most
+	 */
+	public FrameGallery(int threads, int maxPictures) {
+		AtomicInteger count = new AtomicInteger();
+		this.workers = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+			Thread thread = new Thread(runnable, "FrameGallery-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			// the gallery must not slow down what the user is waiting for
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		});
+		this.maxPictures = Math.max(1, maxPictures);
+		this.pictures = new LinkedHashMap<String, Map<String, CompletableFuture<Preview>>>(16, 0.75f, true);
+	}
+
+	/**
+	 * starts to compose a picture with every frame, the results of an equal picture are reused,
+	 * the picture is hashed and copied on the calling thread, so it should not be the event dispatch thread
+	 * @param picture to compose, it is copied before this method returns
+	 * @param operation that puts a frame onto the picture, it must use a frame
+	 * @return the results by frame name, in the order of the frames
+	 */
+	public Map<String, CompletableFuture<Preview>> compose(BufferedImage picture, Operation operation) {
+		if (operation == Operation.LANDSCAPE) {
+			throw new IllegalArgumentException("Operation does not use a frame: " + operation.getKey());
+		}
+		String content = contentKey(picture);
+		String key = content + "|" + operation.getKey();
+		synchronized (this) {
+			Map<String, CompletableFuture<Preview>> found = this.pictures.get(key);
+			if (found != null) {
+				return found;
+			}
+		}
+		BufferedImage source = PixelRaster.copyArgb(picture);
+		Map<String, CompletableFuture<Preview>> results = new LinkedHashMap<String, CompletableFuture<Preview>>();
+		for (String frameName : FrameRegistry.FRAME_NAMES) {
+			results.put(frameName, CompletableFuture.supplyAsync(
+					() -> compose(source, content, operation, frameName), this.workers));
+		}
+		results = Collections.unmodifiableMap(results);
+		synchronized (this) {
+			Map<String, CompletableFuture<Preview>> found = this.pictures.get(key);
+			if (found != null) {
+				return found;
+			}
+			this.pictures.put(key, results);
+			Iterator<Map<String, CompletableFuture<Preview>>> eldest = this.pictures.values().iterator();
+			while (this.pictures.size() > this.maxPictures) {
+				eldest.next();
+				eldest.remove();
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * gives back a finished result for a picture, only if it was made from the same pixels
+	 * @param picture the result has to be made from
+	 * @param operation that put the frame onto the picture
+	 * @param frameName name of the frame
+	 * @return the result, null if it was not composed or is not done yet
+	 */
+	public Preview find(BufferedImage picture, Operation operation, String frameName) {
+		String key = contentKey(picture) + "|" + operation.getKey();
+		Map<String, CompletableFuture<Preview>> results;
+		synchronized (this) {
+			results = this.pictures.get(key);
+		}
+		CompletableFuture<Preview> result = results == null ? null : results.get(frameName);
+		if (result == null || !result.isDone() || result.isCompletedExceptionally()) {
+			return null;
+		}
+		Preview preview = result.join();
+		return preview.isMadeFrom(picture) ? preview : null;
+	}
+
+	/**
+	 * forgets all results
+	 */
+	public synchronized void clear() {
+		this.pictures.clear();
+	}
+
+	/**
+	 * computes the digest of the size and the pixels of a picture
+	 * @param picture to hash
+	 * @return hexadecimal SHA-256 of the size and the pixels
+	 */
+	public static String contentKey(BufferedImage picture) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		PixelRaster raster = PixelRaster.of(PixelRaster.toArgb(picture));
+		int width = raster.getWidth();
+		ByteBuffer buffer = ByteBuffer.allocate(Math.max(8, width * 4));
+		buffer.putInt(width).putInt(raster.getHeight());
+		digest.update(buffer.array(), 0, 8);
+		for (int y = 0; y < raster.getHeight(); y++) {
+			buffer.clear();
+			buffer.asIntBuffer().put(raster.getData(), raster.rowStart(y), width);
+			digest.update(buffer.array(), 0, width * 4);
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * composes the picture with one frame and scales the result down
+	 * @param source picture, it is not changed
+	 * @param content digest of the picture
+	 * @param operation that puts the frame onto the picture
+	 * @param frameName name of the frame
+	 * @return the result
+	 */
+	private static Preview compose(BufferedImage source, String content, Operation operation, String frameName) {
+		BufferedImage frame;
+		try {
+			frame = FrameRegistry.getDefault().getFrame(frameName);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		try (Metrics.Timer timer = Metrics.start("gallery")) {
+			BufferedImage result = PixelRaster.copyArgb(source);
+			operation.apply(new IconCreater(result), frame);
+			double scale = Math.min(1.0, (double) THUMBNAIL_SIZE / Math.max(result.getWidth(), result.getHeight()));
+			int width = Math.max(1, (int) Math.round(result.getWidth() * scale));
+			int height = Math.max(1, (int) Math.round(result.getHeight() * scale));
+			BufferedImage thumbnail = Resampler.resize(result, width, height, Resampler.Filter.BOX);
+			timer.done((long) result.getWidth() * result.getHeight(), 0);
+			return new Preview(frameName, content, source, result, thumbnail);
+		}
+	}
+
+	/**
+	 * picture composed with a frame
+	 */
+	public static final class Preview {
+
+		private final String frameName;
+		private final String content;
+		private final BufferedImage source;
+		private final BufferedImage result;
+		private final BufferedImage thumbnail;
+
+		private Preview(String frameName, String content, BufferedImage source, BufferedImage result,
+				BufferedImage thumbnail) {
+			this.frameName = frameName;
+			this.content = content;
+			this.source = source;
+			this.result = result;
+			this.thumbnail = thumbnail;
+		}
+
+		/**
+		 * Getter for the frame
+		 * @return name of the frame
+		 */
+		public String getFrameName() {
+			return this.frameName;
+		}
+
+		/**
+		 * Getter for the digest of the picture the result was made from
+		 * @return the content key of the picture
+		 */
+		public String getContentKey() {
+			return this.content;
+		}
+
+		/**
+		 * compares a picture with the one the result was made from
+		 * @param picture to compare
+		 * @return true if the picture has the same size and pixels
+		 */
+		public boolean isMadeFrom(BufferedImage picture) {
+			if (picture.getWidth() != this.source.getWidth() || picture.getHeight() != this.source.getHeight()) {
+				return false;
+			}
+			PixelRaster made = PixelRaster.of(this.source);
+			PixelRaster other = PixelRaster.of(PixelRaster.toArgb(picture));
+			int[] madeData = made.getData();
+			int[] otherData = other.getData();
+			for (int y = 0; y < made.getHeight(); y++) {
+				int from = made.rowStart(y);
+				int to = other.rowStart(y);
+				for (int x = 0; x < made.getWidth(); x++) {
+					if (madeData[from + x] != otherData[to + x]) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Getter for the thumbnail
+		 * @return the result scaled down to fit into THUMBNAIL_SIZE, it must not be changed
+		 */
+		public BufferedImage getThumbnail() {
+			return this.thumbnail;
+		}
+
+		/**
+		 * copies the result into an image
+		 * @param target of the size of the picture and of type TYPE_INT_ARGB
+		 */
+		public void copyInto(BufferedImage target) {
+			if (target.getWidth() != this.result.getWidth() || target.getHeight() != this.result.getHeight()) {
+				throw new IllegalArgumentException("Image has to be " + this.result.getWidth() + "x"
+						+ this.result.getHeight());
+			}
+			PixelRaster from = PixelRaster.of(this.result);
+			PixelRaster to = PixelRaster.of(target);
+			for (int y = 0; y < from.getHeight(); y++) {
+				System.arraycopy(from.getData(), from.rowStart(y), to.getData(), to.rowStart(y), from.getWidth());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+package eu.jlmb.MapIcon;
+
+/**
+ * Position and size of the map circle inside the frames
+ * @author Jean Baumgarten
+ */
+public final class FrameGeometry {
+
+	/**
+	 * geometry of the bundled frames
+	 */
+	public static final FrameGeometry DEFAULT = new FrameGeometry(97, 90, 62, 65);
+
+	private final int centerX;
+	private final int centerY;
+	private final int landscapeRadius;
+	private final int frameRadius;
+
+	/**
+	 * Constructor
+	 * @param centerX x position of the center of the map
+	 * @param centerY y position of the center of the map
+	 * @param landscapeRadius radius of the small circle that only contains landscape
+	 * @param frameRadius radius of the big circle that is filled by the frame
+	 */
+	public FrameGeometry(int centerX, int centerY, int landscapeRadius, int frameRadius) {
+		this.centerX = centerX;
+		this.centerY = centerY;
+		this.landscapeRadius = landscapeRadius;
+		this.frameRadius = frameRadius;
+	}
+
+	/**
+	 * reads a geometry out of a text
+	 * @param text like "97,90,62,65"
+	 * @return the geometry
+	 */
+	public static FrameGeometry parse(String text) {
+		String[] values = text.split(",");
+		if (values.length != 4) {
+			throw new IllegalArgumentException("Geometry needs centerX,centerY,landscapeRadius,frameRadius: " + text);
+		}
+		try {
+			return new FrameGeometry(Integer.parseInt(values[0].trim()), Integer.parseInt(values[1].trim()),
+					Integer.parseInt(values[2].trim()), Integer.parseInt(values[3].trim()));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid geometry: " + text);
+		}
+	}
+
+	/**
+	 * mask of the landscape circle for an image of the given size
+	 * @param width of the image
+	 * @param height of the image
+	 * @return the cached mask
+	 */
+	public CircleMask landscapeMask(int width, int height) {
+		return CircleMask.of(this.centerX, this.centerY, this.landscapeRadius, width, height);
+	}
+
+	/**
+	 * mask of the frame circle for an image of the given size
+	 * @param width of the image
+	 * @param height of the image
+	 * @return the cached mask
+	 */
+	public CircleMask frameMask(int width, int height) {
+		return CircleMask.of(this.centerX, this.centerY, this.frameRadius, width, height);
+	}
+
+	/**
+	 * Getter for the x position of the center
+	 * @return int
+	 */
+	public int getCenterX() {
+		return this.centerX;
+	}
+
+	/**
+	 * Getter for the y position of the center
+	 * @return int
+	 */
+	public int getCenterY() {
+		return this.centerY;
+	}
+
+	/**
+	 * Getter for the radius of the landscape circle
+	 * @return int
+	 */
+	public int getLandscapeRadius() {
+		return this.landscapeRadius;
+	}
+
+	/**
+	 * Getter for the radius of the frame circle
+	 * @return int
+	 */
+	public int getFrameRadius() {
+		return this.frameRadius;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof FrameGeometry)) {
+			return false;
+		}
+		FrameGeometry geometry = (FrameGeometry) other;
+		return this.centerX == geometry.centerX && this.centerY == geometry.centerY
+				&& this.landscapeRadius == geometry.landscapeRadius && this.frameRadius == geometry.frameRadius;
+	}
+
+	@Override
+	public int hashCode() {
+		return ((this.centerX * 31 + this.centerY) * 31 + this.landscapeRadius) * 31 + this.frameRadius;
+	}
+
+	@Override
+	public String toString() {
+		return this.centerX + "," + this.centerY + "," + this.landscapeRadius + "," + this.frameRadius;
+	}
+
+}
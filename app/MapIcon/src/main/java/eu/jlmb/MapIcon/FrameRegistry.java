@@ -0,0 +1,178 @@
+package eu.jlmb.MapIcon;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Decodes the atlas of the bundled pictures once and hands out views onto it as TYPE_INT_ARGB.
+ * The pictures share the pixels of the atlas and must not be changed by their users.
+ * @author Jean Baumgarten
+ */
+public final class FrameRegistry {
+
+	/**
+	 * names of all bundled frames
+	 */
+	public static final List<String> FRAME_NAMES = Collections.unmodifiableList(Arrays.asList(
+			"Standard", "CelticRing1", "CelticRing2",
+			"DecoRing", "StarRing", "GoldenRing",
+			"BlueRing", "FlowerRing", "OtherRing", "Original"
+			));
+
+	/**
+	 * picture of the button for Die Siedler - Aufstieg eines Koenigreichs
+	 */
+	public static final String S6_ICON = "S6Icon.png";
+
+	/**
+	 * picture of the button for Die Siedler - Das Erbe der Koenige
+	 */
+	public static final String S5_ICON = "S5Icon.png";
+
+	private static final FrameRegistry DEFAULT = new FrameRegistry();
+
+	private final Map<String, CompletableFuture<BufferedImage>> pictures;
+	private final CompletableFuture<Map<String, BufferedImage>> atlas;
+	private final AtomicBoolean started;
+
+	private FrameRegistry() {
+		this.pictures = new ConcurrentHashMap<String, CompletableFuture<BufferedImage>>();
+		this.atlas = new CompletableFuture<Map<String, BufferedImage>>();
+		this.started = new AtomicBoolean();
+	}
+
+	/**
+	 * gives back the registry of the application
+	 * @return the registry
+	 */
+	public static FrameRegistry getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * starts decoding the atlas with all bundled pictures in the background
+	 */
+	public void preload() {
+		if (this.started.compareAndSet(false, true)) {
+			Thread thread = new Thread(() -> decode(this.atlas), "FrameRegistry");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * gives back a decoded frame, waits if it is still being decoded
+	 * @param name of the frame, like GoldenRing
+	 * @return the frame
+	 * @throws IOException if the frame does not exist or cannot be read
+	 */
+	public BufferedImage getFrame(String name) throws IOException {
+		return this.getPicture(frameResource(name));
+	}
+
+	/**
+	 * gives back a decoded picture, waits if it is still being decoded
+	 * @param resource file name inside the resource folder, like S6Icon.png
+	 * @return the picture
+	 * @throws IOException if the picture does not exist or cannot be read
+	 */
+	public BufferedImage getPicture(String resource) throws IOException {
+		try {
+			return this.request(resource).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading " + resource, e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) cause).getCause();
+			}
+			throw new IOException("Error while reading " + resource, cause);
+		}
+	}
+
+	/**
+	 * gives back the picture when the atlas is decoded, the atlas is only decoded once
+	 * @param resource file name inside the resource folder
+	 * @return the future picture
+	 */
+	public CompletableFuture<BufferedImage> request(String resource) {
+		CompletableFuture<BufferedImage> picture = this.pictures.get(resource);
+		if (picture == null) {
+			CompletableFuture<BufferedImage> created = new CompletableFuture<BufferedImage>();
+			picture = this.pictures.putIfAbsent(resource, created);
+			if (picture == null) {
+				picture = created;
+				this.preload();
+				this.atlas.whenComplete((atlasPictures, error) -> {
+					if (error != null) {
+						created.completeExceptionally(error);
+					} else if (atlasPictures.containsKey(resource)) {
+						created.complete(atlasPictures.get(resource));
+					} else {
+						created.completeExceptionally(new UncheckedIOException(
+								new IOException("Unknown picture: " + resource)));
+					}
+				});
+			}
+		}
+		return picture;
+	}
+
+	/**
+	 * file name of a frame
+	 * @param name of the frame
+	 * @return the file name inside the resource folder
+	 */
+	public static String frameResource(String name) {
+		return "dummy_" + name + ".png";
+	}
+
+	/**
+	 * reads the atlas out of the resources and cuts the pictures out of it,
+	 * the pictures share the pixels of the atlas
+	 * @param result that is completed with the pictures by file name
+	 */
+	private static void decode(CompletableFuture<Map<String, BufferedImage>> result) {
+		try (Metrics.Timer timer = Metrics.start("frame");
+				InputStream index = FrameRegistry.class.getResourceAsStream("/eu/jlmb/" + FrameAtlas.INDEX);
+				InputStream stream = FrameRegistry.class.getResourceAsStream("/eu/jlmb/" + FrameAtlas.IMAGE)) {
+			if (index == null || stream == null) {
+				throw new IOException("Missing picture atlas " + FrameAtlas.IMAGE + " in the resources");
+			}
+			Map<String, Rectangle> places = FrameAtlas.readIndex(index);
+			BufferedImage picture = ImageIO.read(stream);
+			if (picture == null) {
+				throw new IOException("No readable image: " + FrameAtlas.IMAGE);
+			}
+			BufferedImage argb = PixelRaster.toArgb(picture);
+			Map<String, BufferedImage> pictures = new HashMap<String, BufferedImage>();
+			for (Map.Entry<String, Rectangle> entry : places.entrySet()) {
+				Rectangle place = entry.getValue();
+				pictures.put(entry.getKey(), argb.getSubimage(place.x, place.y, place.width, place.height));
+			}
+			timer.done((long) argb.getWidth() * argb.getHeight(), 0);
+			StartupProfile.getDefault().mark("frames decoded");
+			result.complete(pictures);
+		} catch (IOException e) {
+			result.completeExceptionally(new UncheckedIOException(e));
+		} catch (RuntimeException e) {
+			result.completeExceptionally(e);
+		}
+	}
+
+}
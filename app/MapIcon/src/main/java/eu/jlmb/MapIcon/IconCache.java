@@ -0,0 +1,258 @@
+package eu.jlmb.MapIcon;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of finished icon files on the disk.
+ * An icon is found by a hash of the input pixels and all settings that change the output,
+ * the least recently used icons are deleted when the cache grows too big.
+ * @author Jean Baumgarten
+ */
+public final class IconCache {
+
+	/**
+	 * size the default cache may reach
+	 */
+	public static final long DEFAULT_SIZE = 64L * 1024 * 1024;
+
+	private static final String VERSION = "1";
+	private static final String SUFFIX = ".png";
+	private static final IconCache DEFAULT = new IconCache(Paths.get(System.getProperty("user.home"),
+			"Documents", "Siedelwood Mapiconator", "cache"), DEFAULT_SIZE);
+
+	private final Path directory;
+	private final long maxBytes;
+	private final LinkedHashMap<String, Long> entries;
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+	private long bytes;
+	private boolean loaded;
+
+	/**
+	 * Constructor, the directory is only read when the cache is used for the first time
+	 * @param directory holding the icons
+	 * @param maxBytes size of all icons together that is kept at most
+	 */
+	public IconCache(Path directory, long maxBytes) {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		this.entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+	}
+
+	/**
+	 * gives back the cache in the folder of the preferences
+	 * @return the cache
+	 */
+	public static IconCache getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * computes the key of an icon
+	 * @param picture the icon is created from
+	 * @param settings used to create and write the icon
+	 * @return hexadecimal SHA-256 of the pixels and the settings
+	 */
+	public static String key(BufferedImage picture, IconSettings settings) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		int width = picture.getWidth();
+		int height = picture.getHeight();
+		String description = VERSION + "|" + width + "x" + height + "|" + settings.getRecipe()
+				+ "|" + settings.getGeometry() + "|" + settings.getFilter() + "|" + settings.getBlend()
+				+ "|" + settings.getEncoder().getLevel() + "|" + settings.getEncoder().getFilter()
+				+ "|" + settings.getEncoder().getPaletteError();
+		digest.update(description.getBytes(StandardCharsets.UTF_8));
+		int[] row = new int[width];
+		ByteBuffer buffer = ByteBuffer.allocate(width * 4);
+		for (int y = 0; y < height; y++) {
+			picture.getRGB(0, y, width, 1, row, 0, width);
+			buffer.clear();
+			buffer.asIntBuffer().put(row);
+			digest.update(buffer.array(), 0, width * 4);
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * copies a cached icon to the target
+	 * @param key of the icon
+	 * @param target file, it is replaced
+	 * @return true if the icon was in the cache
+	 * @throws IOException if copying fails
+	 */
+	public boolean copyTo(String key, Path target) throws IOException {
+		Path file = this.directory.resolve(key + SUFFIX);
+		synchronized (this) {
+			this.load();
+			if (this.entries.get(key) == null) {
+				this.misses.incrementAndGet();
+				Metrics.getDefault().cacheMiss();
+				return false;
+			}
+		}
+		try {
+			Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (NoSuchFileException e) {
+			synchronized (this) {
+				this.forget(key);
+			}
+			this.misses.incrementAndGet();
+			Metrics.getDefault().cacheMiss();
+			return false;
+		}
+		this.hits.incrementAndGet();
+		Metrics.getDefault().cacheHit();
+		return true;
+	}
+
+	/**
+	 * puts an icon into the cache and deletes the least recently used icons if it got too big
+	 * @param key of the icon
+	 * @param icon file that is copied into the cache
+	 * @throws IOException if copying fails
+	 */
+	public void store(String key, Path icon) throws IOException {
+		Files.createDirectories(this.directory);
+		Path file = this.directory.resolve(key + SUFFIX);
+		Path temporary = Files.createTempFile(this.directory, key, ".tmp");
+		try {
+			Files.copy(icon, temporary, StandardCopyOption.REPLACE_EXISTING);
+			try {
+				Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+		List<String> evicted = new ArrayList<String>();
+		synchronized (this) {
+			this.load();
+			this.forget(key);
+			long size = Files.size(file);
+			this.entries.put(key, size);
+			this.bytes += size;
+			Iterator<Map.Entry<String, Long>> eldest = this.entries.entrySet().iterator();
+			while (this.bytes > this.maxBytes && eldest.hasNext()) {
+				Map.Entry<String, Long> entry = eldest.next();
+				if (!entry.getKey().equals(key)) {
+					this.bytes -= entry.getValue();
+					evicted.add(entry.getKey());
+					eldest.remove();
+				}
+			}
+		}
+		for (String old : evicted) {
+			Files.deleteIfExists(this.directory.resolve(old + SUFFIX));
+		}
+	}
+
+	/**
+	 * reads the icons that are already on the disk, the oldest modification time is the least recently used
+	 */
+	private void load() {
+		if (this.loaded) {
+			return;
+		}
+		this.loaded = true;
+		if (!Files.isDirectory(this.directory)) {
+			return;
+		}
+		Map<Path, BasicFileAttributes> found = new HashMap<Path, BasicFileAttributes>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, "*" + SUFFIX)) {
+			for (Path file : files) {
+				found.put(file, Files.readAttributes(file, BasicFileAttributes.class));
+			}
+		} catch (IOException e) {
+			System.err.println("Error while reading the icon cache " + this.directory + ": " + e.getMessage());
+		}
+		List<Path> files = new ArrayList<Path>(found.keySet());
+		Collections.sort(files, (a, b) -> found.get(a).lastModifiedTime()
+				.compareTo(found.get(b).lastModifiedTime()));
+		for (Path file : files) {
+			String name = file.getFileName().toString();
+			long size = found.get(file).size();
+			this.entries.put(name.substring(0, name.length() - SUFFIX.length()), size);
+			this.bytes += size;
+		}
+	}
+
+	/**
+	 * removes an entry from the index
+	 * @param key of the entry
+	 */
+	private void forget(String key) {
+		Long size = this.entries.remove(key);
+		if (size != null) {
+			this.bytes -= size;
+		}
+	}
+
+	/**
+	 * Getter for the directory
+	 * @return folder holding the icons
+	 */
+	public Path getDirectory() {
+		return this.directory;
+	}
+
+	/**
+	 * Getter for the number of icons found in the cache
+	 * @return hits since the start
+	 */
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	/**
+	 * Getter for the number of icons that had to be created
+	 * @return misses since the start
+	 */
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	/**
+	 * Getter for the size of all cached icons
+	 * @return bytes on the disk
+	 */
+	public synchronized long getBytes() {
+		this.load();
+		return this.bytes;
+	}
+
+}
@@ -1,12 +1,9 @@
 package eu.jlmb.MapIcon;
 
-import java.awt.Color;
-import java.awt.Graphics2D;
-import java.awt.Image;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import javax.imageio.ImageIO;
+import java.util.List;
 
 /**
  * 
@@ -15,14 +12,42 @@ import javax.imageio.ImageIO;
  */
 public class IconCreater {
 
+	/**
+	 * width and height of the finished icon
+	 */
+	public static final int ICON_SIZE = 100;
+
 	private final BufferedImage image;
+	private final FrameGeometry geometry;
+	private final RasterCompositor.Blend blend;
 
 	/**
 	 * Constructor of IconCreator
-	 * @param icon that should be used
+	 * @param icon that should be used, it is converted to TYPE_INT_ARGB if necessary
 	 */
 	public IconCreater(BufferedImage icon) {
-		this.image = icon;
+		this(icon, FrameGeometry.DEFAULT);
+	}
+
+	/**
+	 * Constructor of IconCreator for frames with another map circle
+	 * @param icon that should be used, it is converted to TYPE_INT_ARGB if necessary
+	 * @param geometry of the map circle inside the frames
+	 */
+	public IconCreater(BufferedImage icon, FrameGeometry geometry) {
+		this(icon, geometry, RasterCompositor.Blend.AVERAGE);
+	}
+
+	/**
+	 * Constructor of IconCreator with a chosen way to blend the frames
+	 * @param icon that should be used, it is converted to TYPE_INT_ARGB if necessary
+	 * @param geometry of the map circle inside the frames
+	 * @param blend used to put the frame pixels onto the icon
+	 */
+	public IconCreater(BufferedImage icon, FrameGeometry geometry, RasterCompositor.Blend blend) {
+		this.image = PixelRaster.toArgb(icon);
+		this.geometry = geometry;
+		this.blend = blend;
 	}
 
 	/**
@@ -31,7 +56,7 @@ public class IconCreater {
 	 */
 	public void save(File file) {
 		try {
-			ImageIO.write(this.image, "png", file);
+			PngEncoder.DEFAULT.write(this.image, file.toPath());
 		} catch (IOException e) {
 			System.err.println("Error while writing image: " + e.getMessage());
 		}
@@ -50,36 +75,10 @@ public class IconCreater {
 	 * @param other is the image to add
 	 */
 	public void addOverlappImage(BufferedImage other) {
-		Boolean hasAlpha = other.getColorModel().hasAlpha();
-		for (int x = 0; x < this.image.getWidth(); x++) {
-			for (int y = 0; y < this.image.getHeight(); y++) {
-				Color color = new Color(other.getRGB(x, y), hasAlpha);
-				Color imagecolor = new Color(this.image.getRGB(x, y), hasAlpha);
-				if (color.getAlpha() == 255) {
-					//this.image.setRGB(x, y, color.getRGB());
-					this.image.setRGB(x, y, getCombiningColor(imagecolor, color).getRGB());
-				}
-			}
-		}
-	}
-	
-	/**
-	 * generates a color out of the two given ones
-	 * @param back color of the background
-	 * @param front color of the foreground
-	 * @return a new color
-	 */
-	private static Color getCombiningColor(Color back, Color front) {
-		int fa = front.getAlpha();
-		if (fa == 255) {
-			return front;
-		} else {
-			int nr = front.getRed() + back.getRed();
-			int ng = front.getGreen() + back.getGreen();
-			int nb = front.getBlue() + back.getBlue();
-			int na = fa + back.getAlpha();
-			return new Color(nr / 2, ng / 2, nb / 2, na / 2);
-			//return new Color(nr > 255 ? 255 : nr, ng > 255 ? 255 : ng, nb > 255 ? 255 : nb, na > 255 ? 255 : na);
+		try (Metrics.Timer timer = Metrics.start("overlap")) {
+			RasterCompositor.overlap(PixelRaster.of(this.image), PixelRaster.of(PixelRaster.toArgb(other)),
+					this.blend);
+			timer.done(this.pixels(), 0);
 		}
 	}
 	
@@ -88,69 +87,51 @@ public class IconCreater {
 	 * @param other is the image to add
 	 */
 	public void addCutOutImage(BufferedImage other) {
-		Boolean hasAlpha = other.getColorModel().hasAlpha();
-		Color transparent = new Color(0, 0, 0, 0);
-		for (int x = 0; x < this.image.getWidth(); x++) {
-			for (int y = 0; y < this.image.getHeight(); y++) {
-				Color color = new Color(other.getRGB(x, y), hasAlpha);
-				Color imagecolor = new Color(this.image.getRGB(x, y), hasAlpha);
-				if (!isInsideBigMapCircle(x, y)) {
-					this.image.setRGB(x, y, transparent.getRGB());
-				}
-				if (color.getAlpha() != 0) {
-					if (isInsideBigMapCircle(x, y)) {
-						this.image.setRGB(x, y, getCombiningColor(imagecolor, color).getRGB());
-					} else {
-						this.image.setRGB(x, y, color.getRGB());
-					}
-				}
-			}
+		try (Metrics.Timer timer = Metrics.start("cutout")) {
+			RasterCompositor.cutOut(PixelRaster.of(this.image), PixelRaster.of(PixelRaster.toArgb(other)),
+					this.geometry, this.blend);
+			timer.done(this.pixels(), 0);
 		}
 	}
 	
 	/**
-	 * checks if a point is inside a small circle around the center of the map
-	 * @param x is the x position of the point
-	 * @param y is the y position of the point
-	 * @return true if the point is inside that small circle
-	 */
-	private static Boolean isInsideSmallMapCircle(int x, int y) {
-		return isInsideMapCircleOfRadius(62, x, y);
-	}
-
-	/**
-	 * checks if a point is inside a big circle around the center of the map
-	 * @param x is the x position of the point
-	 * @param y is the y position of the point
-	 * @return true if the point is inside that big circle
+	 * cuts off every part of the icon that is not landscape
 	 */
-	private static Boolean isInsideBigMapCircle(int x, int y) {
-		return isInsideMapCircleOfRadius(65, x, y);
+	public void cutOutLandscape() {
+		try (Metrics.Timer timer = Metrics.start("landscape")) {
+			RasterCompositor.cutOutLandscape(PixelRaster.of(this.image), this.geometry);
+			timer.done(this.pixels(), 0);
+		}
 	}
 	
 	/**
-	 * checks if a point is inside a circle of given radius around the center of the map
-	 * @param radius of the circle to check
-	 * @param x is the x position of the point
-	 * @param y is the y position of the point
-	 * @return true if the point is inside that circle
+	 * applies all steps of a recipe in a single pass over the icon
+	 * @param recipe with the operations and their frames
+	 * @throws IOException if a frame cannot be read
 	 */
-	private static Boolean isInsideMapCircleOfRadius(int radius, int x, int y) {
-		return ((x - 97) * (x - 97) + (y - 90) * (y - 90)) < (radius * radius);
+	public void apply(Recipe recipe) throws IOException {
+		List<Recipe.Step> steps = recipe.getSteps();
+		Operation[] operations = new Operation[steps.size()];
+		PixelRaster[] frames = new PixelRaster[steps.size()];
+		for (int i = 0; i < operations.length; i++) {
+			Recipe.Step step = steps.get(i);
+			operations[i] = step.getOperation();
+			if (operations[i] != Operation.LANDSCAPE) {
+				frames[i] = PixelRaster.of(FrameRegistry.getDefault().getFrame(step.getFrameName()));
+			}
+		}
+		try (Metrics.Timer timer = Metrics.start("recipe")) {
+			RasterCompositor.fused(PixelRaster.of(this.image), operations, frames, this.geometry, this.blend);
+			timer.done(this.pixels(), 0);
+		}
 	}
-	
+
 	/**
-	 * cuts off every part of the icon that is not landscape
+	 * gives back the size of the icon
+	 * @return number of pixels
 	 */
-	public void cutOutLandscape() {
-		Color transparent = new Color(0, 0, 0, 0);
-		for (int x = 0; x < this.image.getWidth(); x++) {
-			for (int y = 0; y < this.image.getHeight(); y++) {
-				if (!isInsideSmallMapCircle(x, y)) {
-					this.image.setRGB(x, y, transparent.getRGB());
-				}
-			}
-		}
+	private long pixels() {
+		return (long) this.image.getWidth() * this.image.getHeight();
 	}
 	
 	/**
@@ -159,85 +140,37 @@ public class IconCreater {
 	 * @return output picture
 	 */
 	public static BufferedImage makeOutputImage(BufferedImage picture) {
-		return resizeToIcon(makeSquare(cutAlphaBorder(picture)));
-	}
-	
-	/**
-	 * creates a new image without the transparent border of this image
-	 * @param picture to be treated
-	 * @return an image without transparent borders
-	 */
-	private static BufferedImage cutAlphaBorder(BufferedImage picture) {
-		int width = picture.getWidth();
-		int height = picture.getHeight();
-		int startX = width;
-		int startY = height;
-		int endX = 0;
-		int endY = 0;
-		for (int x = 0; x < width; x++) {
-			for (int y = 0; y < height; y++) {
-				Color color = new Color(picture.getRGB(x, y), true);
-				if (color.getAlpha() != 0) {
-					startX = Math.min(x, startX);
-					startY = Math.min(y, startY);
-					endX = Math.max(x, endX);
-					endY = Math.max(y, endY);
-				}
-			}
-		}
-		startX = (startX > 2) ? (startX - 2) : startX;
-		startY = (startY > 2) ? (startY - 2) : startY;
-		endX = (endX < (width - 2)) ? (endX + 2) : endX;
-		endY = (endY < (height - 2)) ? (endY + 2) : endY;
-		int dx = endX - startX;
-		int dy = endY - startY;
-		BufferedImage cutImage = new BufferedImage(dx, dy, BufferedImage.TYPE_INT_ARGB);
-		for (int x = 0; x < dx; x++) {
-			for (int y = 0; y < dy; y++) {
-				Color color = new Color(picture.getRGB(x + startX, y + startY), true);
-				cutImage.setRGB(x, y, color.getRGB());
-			}
-		}
-		return cutImage;
+		return makeOutputImage(picture, Resampler.Filter.BOX);
 	}
-	
+
 	/**
-	 * creates an image with a square shape out of the given image
-	 * @param picture to be treated
-	 * @return a square image
+	 * creates a picture that has the right size to be uploaded
+	 * @param picture input picture
+	 * @param filter used to scale the picture to the icon size
+	 * @return output picture
 	 */
-	private static BufferedImage makeSquare(BufferedImage picture) {
-		int sideLengh = Math.max(picture.getWidth(), picture.getHeight());
-		BufferedImage squaredImage = new BufferedImage(sideLengh, sideLengh, BufferedImage.TYPE_INT_ARGB);
-		int startX = (sideLengh - picture.getWidth()) / 2;
-		int startY = (sideLengh - picture.getHeight()) / 2;
-		for (int x = 0; x < picture.getWidth(); x++) {
-			for (int y = 0; y < picture.getHeight(); y++) {
-				Color color = new Color(picture.getRGB(x, y), true);
-				squaredImage.setRGB(x + startX, y + startY, color.getRGB());
-			}
+	public static BufferedImage makeOutputImage(BufferedImage picture, Resampler.Filter filter) {
+		PixelRaster icon = makeOutputRaster(PixelRaster.of(PixelRaster.toArgb(picture)), filter);
+		try {
+			// the pooled pixels go back to the pool, the returned image gets pixels of its own
+			return PixelRaster.copyArgb(icon.toImage());
+		} finally {
+			icon.release();
 		}
-		return squaredImage;
-		
 	}
 
 	/**
-	 * resizes an image to 100x100
-	 * @param picture to resize
-	 * @return a resized BufferedImage
+	 * creates the icon that has the right size to be uploaded out of the pixels of a picture
+	 * @param picture input pixels, they are not changed
+	 * @param filter used to scale the picture to the icon size
+	 * @return the icon out of the buffer pool, it should be given back with release
 	 */
-	private static BufferedImage resizeToIcon(BufferedImage picture) {
-		int side = 100;
-		if (side != picture.getWidth() && side != picture.getHeight()) {
-			Image scaledImage = picture.getScaledInstance(side, side, Image.SCALE_SMOOTH);
-			BufferedImage resizedImage = new BufferedImage(side, side, BufferedImage.TYPE_INT_ARGB);
-			Graphics2D graphic = resizedImage.createGraphics();
-			graphic.drawImage(scaledImage, 0, 0, null);
-			graphic.dispose();
-			return resizedImage;
-		} else {
-			return picture;
+	public static PixelRaster makeOutputRaster(PixelRaster picture, Resampler.Filter filter) {
+		try (Metrics.Timer timer = Metrics.start("scale")) {
+			PixelRaster icon = OutputStage.makeIcon(picture, filter, ICON_SIZE);
+			timer.done((long) picture.getWidth() * picture.getHeight(), 0);
+			return icon;
 		}
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,478 @@
+package eu.jlmb.MapIcon;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Small HTTP service that creates icons out of uploaded pictures, so that one running JVM can serve many icons.
+ * A fixed number of workers creates the icons, a limited number of requests may wait for them,
+ * further requests are answered with 503 at once. Health and metrics are answered without waiting.
+ * @author Jean Baumgarten
+ */
+public class IconServer {
+
+	private static final String USAGE = "Usage: --serve [--host <address>] [--port <port>] [--threads <count>]"
+			+ " [--queue <count>] [--max-upload <bytes>] " + IconSettings.USAGE;
+
+	/**
+	 * options of the settings that may be changed per request as query parameters
+	 */
+	private static final List<String> REQUEST_OPTIONS = Arrays.asList(
+			"frame", "ops", "recipe", "geometry", "filter", "blend", "compression", "png-filter",
+			"palette");
+
+	/**
+	 * largest refused upload that is still read, so that the connection can be used for the next request
+	 */
+	private static final int SKIP_LIMIT = 64 * 1024;
+
+	private final InetSocketAddress address;
+	private final IconSettings settings;
+	private final int threads;
+	private final int queue;
+	private final int maxUpload;
+	private final Semaphore slots;
+	private final AtomicLong rejected;
+	private final CountDownLatch stopped;
+	private HttpServer server;
+	private ThreadPoolExecutor workers;
+
+	/**
+	 * Constructor
+	 * @param address the server listens on, port 0 chooses a free port
+	 * @param settings used for requests that do not change them
+	 * @param threads number of workers that create icons
+	 * @param queue number of requests that may wait for a worker
+	 * @param maxUpload size of the largest accepted picture in bytes
+	 */
+	public IconServer(InetSocketAddress address, IconSettings settings, int threads, int queue, int maxUpload) {
+		this.address = address;
+		this.settings = settings;
+		this.threads = Math.max(1, threads);
+		this.queue = Math.max(0, queue);
+		this.maxUpload = maxUpload;
+		this.slots = new Semaphore(this.threads + this.queue);
+		this.rejected = new AtomicLong();
+		this.stopped = new CountDownLatch(1);
+	}
+
+	/**
+	 * reads the command line arguments
+	 * @param args like --serve --port 8080 --frame GoldenRing --ops cutout,landscape
+	 * @return a server for the given arguments
+	 */
+	public static IconServer fromArguments(String[] args) {
+		IconSettings settings = new IconSettings();
+		settings.setCache(null);
+		String host = "127.0.0.1";
+		int port = 8080;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int queue = 64;
+		int maxUpload = 32 * 1024 * 1024;
+		for (int i = 1; i < args.length; i++) {
+			String arg = args[i];
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value for " + arg + "\n" + USAGE);
+			}
+			String value = args[++i];
+			if ("--host".equals(arg)) {
+				host = value;
+			} else if ("--port".equals(arg)) {
+				port = Integer.parseInt(value);
+			} else if ("--threads".equals(arg)) {
+				threads = Integer.parseInt(value);
+			} else if ("--queue".equals(arg)) {
+				queue = Integer.parseInt(value);
+			} else if ("--max-upload".equals(arg)) {
+				maxUpload = Integer.parseInt(value);
+			} else if ("--cache".equals(arg) || !settings.readOption(arg, value)) {
+				throw new IllegalArgumentException("Unknown argument " + arg + "\n" + USAGE);
+			}
+		}
+		return new IconServer(new InetSocketAddress(host, port), settings, threads, queue, maxUpload);
+	}
+
+	/**
+	 * starts listening, the requests are handled on background threads
+	 * @throws IOException if the address cannot be bound
+	 */
+	public void start() throws IOException {
+		ImageIO.setUseCache(false);
+		FrameRegistry.getDefault().preload();
+		AtomicInteger count = new AtomicInteger();
+		this.workers = new ThreadPoolExecutor(this.threads, this.threads, 0, TimeUnit.MILLISECONDS,
+				// a worker gives its slot back shortly before it is idle, so the queue has room for every slot
+				new ArrayBlockingQueue<Runnable>(this.threads + this.queue), runnable -> {
+					Thread thread = new Thread(runnable, "IconServer-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		this.server = HttpServer.create(this.address, this.queue);
+		this.server.createContext("/icon", this::handleIcon);
+		this.server.createContext("/health", this::handleHealth);
+		this.server.createContext("/metrics", this::handleMetrics);
+		this.server.setExecutor(null);
+		this.server.start();
+		System.out.println("Serving icons on http://" + this.server.getAddress().getHostString()
+				+ ":" + this.getPort() + "/icon");
+	}
+
+	/**
+	 * starts the server and waits until it is stopped or the program ends
+	 * @throws IOException if the address cannot be bound
+	 */
+	public void run() throws IOException {
+		this.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "IconServer-stop"));
+		try {
+			this.stopped.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			this.stop();
+		}
+	}
+
+	/**
+	 * stops accepting requests and lets the running requests finish
+	 */
+	public void stop() {
+		if (this.server != null) {
+			this.server.stop(1);
+			this.workers.shutdown();
+		}
+		this.stopped.countDown();
+	}
+
+	/**
+	 * Getter for the port
+	 * @return the port the server listens on
+	 */
+	public int getPort() {
+		return this.server.getAddress().getPort();
+	}
+
+	/**
+	 * accepts a picture if a worker or a place in the queue is free, runs on the dispatcher thread
+	 * @param exchange of the request
+	 * @throws IOException if the answer cannot be sent
+	 */
+	private void handleIcon(HttpExchange exchange) throws IOException {
+		if (!"POST".equals(exchange.getRequestMethod())) {
+			exchange.getResponseHeaders().set("Allow", "POST");
+			this.refuse(exchange, 405, "Upload the picture with POST");
+			exchange.close();
+			return;
+		}
+		if (!this.slots.tryAcquire()) {
+			this.busy(exchange);
+			return;
+		}
+		// the slot is given back before the answer is sent, so a client may send its next request right away
+		AtomicBoolean held = new AtomicBoolean(true);
+		Runnable free = () -> {
+			if (held.getAndSet(false)) {
+				this.slots.release();
+			}
+		};
+		try {
+			this.workers.execute(() -> {
+				try {
+					this.createIcon(exchange, free);
+				} finally {
+					free.run();
+					exchange.close();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// the server is stopping
+			this.slots.release();
+			this.busy(exchange);
+		}
+	}
+
+	/**
+	 * answers a request that cannot be accepted now
+	 * @param exchange of the request
+	 * @throws IOException if the answer cannot be sent
+	 */
+	private void busy(HttpExchange exchange) throws IOException {
+		this.rejected.incrementAndGet();
+		exchange.getResponseHeaders().set("Retry-After", "1");
+		this.refuse(exchange, 503, "All workers are busy");
+		exchange.close();
+	}
+
+	/**
+	 * creates the icon of an uploaded picture and sends it back
+	 * @param exchange of the request
+	 * @param free gives the slot of the request back, it is called before the answer is sent
+	 */
+	private void createIcon(HttpExchange exchange, Runnable free) {
+		try (Metrics.Timer timer = Metrics.start("request")) {
+			IconSettings request;
+			byte[] upload;
+			try {
+				request = this.requestSettings(exchange.getRequestURI().getRawQuery());
+				upload = this.readUpload(exchange);
+			} catch (IllegalArgumentException e) {
+				free.run();
+				this.refuse(exchange, 400, e.getMessage());
+				return;
+			}
+			if (upload == null) {
+				// the rest of the upload is not read, so the connection cannot be used again
+				exchange.getResponseHeaders().set("Connection", "close");
+				free.run();
+				this.sendText(exchange, 413, "The picture is bigger than " + this.maxUpload + " bytes");
+				return;
+			}
+			BufferedImage picture;
+			try (Metrics.Timer decode = Metrics.start("decode")) {
+				picture = ImageIO.read(new ByteArrayInputStream(upload));
+				if (picture != null) {
+					decode.done((long) picture.getWidth() * picture.getHeight(), 0);
+				}
+			}
+			if (picture == null) {
+				free.run();
+				this.sendText(exchange, 400, "No readable image");
+				return;
+			}
+			ByteArrayOutputStream icon = new ByteArrayOutputStream();
+			request.writeIcon(picture, Channels.newChannel(icon));
+			free.run();
+			this.send(exchange, 200, "image/png", icon.toByteArray());
+			timer.done((long) picture.getWidth() * picture.getHeight(), icon.size());
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Error while creating an icon for " + exchange.getRemoteAddress() + ": "
+					+ e.getMessage());
+			free.run();
+			try {
+				this.sendText(exchange, 500, "Error while creating the icon: " + e.getMessage());
+			} catch (IOException | RuntimeException gone) {
+				System.err.println("The answer could not be sent: " + gone.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * answers if the server is running and how busy it is
+	 * @param exchange of the request
+	 * @throws IOException if the answer cannot be sent
+	 */
+	private void handleHealth(HttpExchange exchange) throws IOException {
+		String health = String.format(Locale.ROOT,
+				"{\"status\":\"ok\",\"threads\":%d,\"active\":%d,\"queued\":%d,\"capacity\":%d,\"rejected\":%d}",
+				this.threads, this.workers.getActiveCount(), this.workers.getQueue().size(),
+				this.threads + this.queue, this.rejected.get());
+		this.send(exchange, 200, "application/json", health.getBytes(StandardCharsets.UTF_8));
+		exchange.close();
+	}
+
+	/**
+	 * answers the metrics in the Prometheus text format
+	 * @param exchange of the request
+	 * @throws IOException if the answer cannot be sent
+	 */
+	private void handleMetrics(HttpExchange exchange) throws IOException {
+		Metrics metrics = Metrics.getDefault();
+		double[] bounds = metrics.getHistogramBounds();
+		StringBuilder text = new StringBuilder();
+		text.append("# TYPE mapicon_operation_seconds histogram\n");
+		for (Metrics.OperationSummary operation : metrics.getOperations()) {
+			String label = "operation=\"" + operation.getName() + "\"";
+			long[] histogram = operation.getHistogram();
+			long cumulative = 0;
+			for (int i = 0; i < histogram.length; i++) {
+				cumulative += histogram[i];
+				String bound = (i < bounds.length) ? Double.toString(bounds[i] / 1000) : "+Inf";
+				text.append("mapicon_operation_seconds_bucket{").append(label).append(",le=\"").append(bound)
+						.append("\"} ").append(cumulative).append('\n');
+			}
+			text.append("mapicon_operation_seconds_sum{").append(label).append("} ")
+					.append(operation.getTotalMillis() / 1000).append('\n');
+			text.append("mapicon_operation_seconds_count{").append(label).append("} ")
+					.append(operation.getCount()).append('\n');
+			text.append("mapicon_operation_failures_total{").append(label).append("} ")
+					.append(operation.getFailures()).append('\n');
+		}
+		text.append("mapicon_pixels_total ").append(metrics.getPixelsProcessed()).append('\n');
+		text.append("mapicon_bytes_written_total ").append(metrics.getBytesWritten()).append('\n');
+		text.append("mapicon_cache_hits_total ").append(metrics.getCacheHits()).append('\n');
+		text.append("mapicon_cache_misses_total ").append(metrics.getCacheMisses()).append('\n');
+		text.append("mapicon_requests_rejected_total ").append(this.rejected.get()).append('\n');
+		text.append("mapicon_workers_active ").append(this.workers.getActiveCount()).append('\n');
+		text.append("mapicon_requests_queued ").append(this.workers.getQueue().size()).append('\n');
+		this.send(exchange, 200, "text/plain; version=0.0.4", text.toString().getBytes(StandardCharsets.UTF_8));
+		exchange.close();
+	}
+
+	/**
+	 * creates the settings of a request out of the settings of the server and the query parameters
+	 * @param query like frame=GoldenRing&amp;ops=cutout,landscape, may be null
+	 * @return the settings for the request
+	 * @throws IllegalArgumentException if a parameter is unknown or has a wrong value
+	 */
+	private IconSettings requestSettings(String query) {
+		IconSettings request = new IconSettings(this.settings);
+		if (query != null) {
+			for (String parameter : query.split("&")) {
+				if (parameter.isEmpty()) {
+					continue;
+				}
+				int split = parameter.indexOf('=');
+				String name = decode(split < 0 ? parameter : parameter.substring(0, split));
+				String value = decode(split < 0 ? "" : parameter.substring(split + 1));
+				if (!REQUEST_OPTIONS.contains(name)) {
+					throw new IllegalArgumentException("Unknown parameter " + name + ", known are " + REQUEST_OPTIONS);
+				}
+				request.readOption("--" + name, value);
+			}
+		}
+		if (request.getRecipe().isEmpty()) {
+			throw new IllegalArgumentException("No operations, use ops or recipe");
+		}
+		for (String frameName : request.getRecipe().getFrameNames()) {
+			if (!FrameRegistry.FRAME_NAMES.contains(frameName)) {
+				throw new IllegalArgumentException("Unknown frame " + frameName + ", known are "
+						+ FrameRegistry.FRAME_NAMES);
+			}
+		}
+		return request;
+	}
+
+	/**
+	 * reads the uploaded picture
+	 * @param exchange of the request
+	 * @return the bytes of the picture, null if it is too big
+	 * @throws IOException if reading fails
+	 */
+	private byte[] readUpload(HttpExchange exchange) throws IOException {
+		String length = exchange.getRequestHeaders().getFirst("Content-Length");
+		if (length != null && Long.parseLong(length.trim()) > this.maxUpload) {
+			return null;
+		}
+		ByteArrayOutputStream upload = new ByteArrayOutputStream();
+		byte[] buffer = new byte[16384];
+		try (InputStream body = exchange.getRequestBody()) {
+			int read;
+			while ((read = body.read(buffer)) >= 0) {
+				if (upload.size() + read > this.maxUpload) {
+					return null;
+				}
+				upload.write(buffer, 0, read);
+			}
+		}
+		return upload.toByteArray();
+	}
+
+	/**
+	 * sends a text answer to a request whose upload is not needed,
+	 * a small upload is read and dropped so that the connection stays usable, otherwise the connection is closed
+	 * @param exchange of the request
+	 * @param status code of the answer
+	 * @param message to send
+	 * @throws IOException if sending fails
+	 */
+	private void refuse(HttpExchange exchange, int status, String message) throws IOException {
+		if (!skipUpload(exchange)) {
+			exchange.getResponseHeaders().set("Connection", "close");
+		}
+		this.sendText(exchange, status, message);
+	}
+
+	/**
+	 * reads and drops the upload of a request if it is small
+	 * @param exchange of the request
+	 * @return true if the whole upload was read
+	 */
+	private static boolean skipUpload(HttpExchange exchange) {
+		String length = exchange.getRequestHeaders().getFirst("Content-Length");
+		if (exchange.getRequestHeaders().containsKey("Transfer-Encoding")) {
+			return false;
+		}
+		try {
+			if (length != null && Long.parseLong(length.trim()) > SKIP_LIMIT) {
+				return false;
+			}
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		byte[] buffer = new byte[4096];
+		try (InputStream body = exchange.getRequestBody()) {
+			while (body.read(buffer) >= 0) {
+				// dropped
+			}
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * sends a text answer
+	 * @param exchange of the request
+	 * @param status code of the answer
+	 * @param message to send
+	 * @throws IOException if sending fails
+	 */
+	private void sendText(HttpExchange exchange, int status, String message) throws IOException {
+		this.send(exchange, status, "text/plain; charset=utf-8", (message + "\n").getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * sends an answer with a known length, so that the connection can be kept alive
+	 * @param exchange of the request
+	 * @param status code of the answer
+	 * @param type of the content
+	 * @param body of the answer
+	 * @throws IOException if sending fails
+	 */
+	private void send(HttpExchange exchange, int status, String type, byte[] body) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", type);
+		exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/**
+	 * decodes a part of the query
+	 * @param text that is URL encoded
+	 * @return the decoded text
+	 */
+	private static String decode(String text) {
+		try {
+			return URLDecoder.decode(text, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
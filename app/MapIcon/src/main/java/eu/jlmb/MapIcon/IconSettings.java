@@ -0,0 +1,250 @@
+package eu.jlmb.MapIcon;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Frame, operations and output settings used to create icons without the window
+ * @author Jean Baumgarten
+ */
+public class IconSettings {
+
+	/**
+	 * description of the command line options read by this class
+	 */
+	public static final String USAGE = "--frame <name> --ops <overlap,cutout,landscape> "
+			+ "| --recipe <frame=name,operation,...> [--geometry <centerX,centerY,landscapeRadius,frameRadius>] [--filter <box|bilinear|lanczos3>]"
+			+ " [--compression <0-9>] [--png-filter <none|sub|up|average|paeth|adaptive>] [--palette <on|off|max error>]"
+			+ " [--blend <average|source-over>] [--cache <directory|off>]";
+
+	private String frameName = "Standard";
+	private Recipe recipe = Recipe.EMPTY;
+	private FrameGeometry geometry = FrameGeometry.DEFAULT;
+	private Resampler.Filter filter = Resampler.Filter.BOX;
+	private RasterCompositor.Blend blend = RasterCompositor.Blend.AVERAGE;
+	private PngEncoder encoder = PngEncoder.DEFAULT;
+	private IconCache cache = IconCache.getDefault();
+
+	/**
+	 * Constructor with the default settings
+	 */
+	public IconSettings() {
+	}
+
+	/**
+	 * Constructor that copies other settings
+	 * @param other settings to copy
+	 */
+	public IconSettings(IconSettings other) {
+		this.frameName = other.frameName;
+		this.recipe = other.recipe;
+		this.geometry = other.geometry;
+		this.filter = other.filter;
+		this.blend = other.blend;
+		this.encoder = other.encoder;
+		this.cache = other.cache;
+	}
+
+	/**
+	 * reads a command line option if it belongs to the settings
+	 * @param option like --frame
+	 * @param value of the option
+	 * @return true if the option was known
+	 */
+	public boolean readOption(String option, String value) {
+		if ("--frame".equals(option)) {
+			this.frameName = value;
+			this.recipe = this.recipe.withFrame(value);
+		} else if ("--ops".equals(option)) {
+			this.recipe = Recipe.of(this.frameName, Operation.parseSequence(value));
+		} else if ("--recipe".equals(option)) {
+			this.recipe = Recipe.parse(value);
+		} else if ("--geometry".equals(option)) {
+			this.geometry = FrameGeometry.parse(value);
+		} else if ("--filter".equals(option)) {
+			this.filter = Resampler.Filter.parse(value);
+		} else if ("--compression".equals(option)) {
+			this.encoder = new PngEncoder(Integer.parseInt(value), this.encoder.getFilter(),
+					this.encoder.getPaletteError());
+		} else if ("--png-filter".equals(option)) {
+			this.encoder = new PngEncoder(this.encoder.getLevel(), PngEncoder.RowFilter.parse(value),
+					this.encoder.getPaletteError());
+		} else if ("--palette".equals(option)) {
+			double error = "on".equals(value) ? PngEncoder.PALETTE_ERROR
+					: "off".equals(value) ? 0 : Double.parseDouble(value);
+			this.encoder = new PngEncoder(this.encoder.getLevel(), this.encoder.getFilter(), error);
+		} else if ("--blend".equals(option)) {
+			this.blend = RasterCompositor.Blend.parse(value);
+		} else if ("--cache".equals(option)) {
+			this.cache = "off".equals(value) ? null : new IconCache(Paths.get(value), IconCache.DEFAULT_SIZE);
+		} else {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * applies the recipe to a picture in a single pass and creates the icon out of it
+	 * @param picture like the content of Dummy.png, it is not changed
+	 * @return the finished icon
+	 * @throws IOException if a frame cannot be read
+	 */
+	public BufferedImage createIcon(BufferedImage picture) throws IOException {
+		IconCreater creater = new IconCreater(PixelRaster.copyArgb(picture), this.geometry, this.blend);
+		creater.apply(this.recipe);
+		return IconCreater.makeOutputImage(creater.getIcon(), this.filter);
+	}
+
+	/**
+	 * creates the icon of a picture and encodes it,
+	 * all rasters in between are taken out of the buffer pool and given back afterwards
+	 * @param picture like the content of Dummy.png, it is not changed
+	 * @param channel the PNG file is written to, it is not closed
+	 * @throws IOException if a frame cannot be read or writing fails
+	 */
+	public void writeIcon(BufferedImage picture, WritableByteChannel channel) throws IOException {
+		PixelRaster work = PixelRaster.copyOf(picture);
+		PixelRaster icon = null;
+		try {
+			new IconCreater(work.toImage(), this.geometry, this.blend).apply(this.recipe);
+			icon = IconCreater.makeOutputRaster(work, this.filter);
+			this.encoder.write(icon.toImage(), channel);
+		} finally {
+			work.release();
+			if (icon != null) {
+				icon.release();
+			}
+		}
+	}
+
+	/**
+	 * creates the icon of a picture and writes it into a file,
+	 * an icon that was created before with the same pixels and settings is copied out of the cache
+	 * @param picture like the content of Dummy.png, it is not changed
+	 * @param target file the icon is written to
+	 * @throws IOException if a frame cannot be read or writing the icon fails, a failing cache is only reported
+	 */
+	public void writeIcon(BufferedImage picture, Path target) throws IOException {
+		try (Metrics.Timer timer = Metrics.start("icon")) {
+			String key = (this.cache == null) ? null : IconCache.key(picture, this);
+			if (key == null || !this.cache.copyTo(key, target)) {
+				try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+					this.writeIcon(picture, channel);
+				}
+				if (key != null) {
+					try {
+						this.cache.store(key, target);
+					} catch (IOException e) {
+						// the icon is written, only the next request has to create it again
+						System.err.println("Error while storing the icon in the cache " + this.cache.getDirectory()
+								+ ": " + e.getMessage());
+					}
+				}
+			}
+			timer.done((long) picture.getWidth() * picture.getHeight(), 0);
+		}
+	}
+
+	/**
+	 * Getter for the recipe
+	 * @return the operations and their frames
+	 */
+	public Recipe getRecipe() {
+		return this.recipe;
+	}
+
+	/**
+	 * Getter for the geometry of the frame
+	 * @return the geometry
+	 */
+	public FrameGeometry getGeometry() {
+		return this.geometry;
+	}
+
+	/**
+	 * Getter for the filter used to scale the icon
+	 * @return the filter
+	 */
+	public Resampler.Filter getFilter() {
+		return this.filter;
+	}
+
+	/**
+	 * Getter for the blend used to put the frames onto the picture
+	 * @return the blend
+	 */
+	public RasterCompositor.Blend getBlend() {
+		return this.blend;
+	}
+
+	/**
+	 * Getter for the encoder used to write the icon
+	 * @return the encoder
+	 */
+	public PngEncoder getEncoder() {
+		return this.encoder;
+	}
+
+	/**
+	 * Getter for the cache of finished icons
+	 * @return the cache, null if icons are always created
+	 */
+	public IconCache getCache() {
+		return this.cache;
+	}
+
+	/**
+	 * Setter for the recipe
+	 * @param recipe with the operations and their frames
+	 */
+	public void setRecipe(Recipe recipe) {
+		this.recipe = recipe;
+	}
+
+	/**
+	 * Setter for the geometry of the frame
+	 * @param geometry of the map circle inside the frame
+	 */
+	public void setGeometry(FrameGeometry geometry) {
+		this.geometry = geometry;
+	}
+
+	/**
+	 * Setter for the filter used to scale the icon
+	 * @param filter used for resampling
+	 */
+	public void setFilter(Resampler.Filter filter) {
+		this.filter = filter;
+	}
+
+	/**
+	 * Setter for the blend used to put the frames onto the picture
+	 * @param blend like SOURCE_OVER
+	 */
+	public void setBlend(RasterCompositor.Blend blend) {
+		this.blend = blend;
+	}
+
+	/**
+	 * Setter for the encoder used to write the icon
+	 * @param encoder with the compression level and row filter
+	 */
+	public void setEncoder(PngEncoder encoder) {
+		this.encoder = encoder;
+	}
+
+	/**
+	 * Setter for the cache of finished icons
+	 * @param cache to use, null to always create the icons
+	 */
+	public void setCache(IconCache cache) {
+		this.cache = cache;
+	}
+
+}
@@ -1,5 +1,12 @@
 package eu.jlmb.MapIcon;
 
+import java.awt.Toolkit;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.swing.SwingUtilities;
+import javax.swing.UIManager;
+
 /**
  * 
  * @author Jean Baumgarten
@@ -12,17 +19,131 @@ public final class Main {
 
 	/**
 	 * main method of the Main class
-	 * @param args are unused
+	 * @param args are empty or --startup-profile and --edt-stall with optional milliseconds for the window,
+	 * or start with --batch, --watch or --serve for the headless modes
 	 */
 	public static void main(String[] args) {
+		if (args.length > 0 && "--batch".equals(args[0])) {
+			System.exit(runBatch(args));
+		}
+		if (args.length > 0 && "--watch".equals(args[0])) {
+			System.exit(runWatch(args));
+		}
+		if (args.length > 0 && "--serve".equals(args[0])) {
+			System.exit(runServe(args));
+		}
+		long stall;
+		try {
+			stall = EdtWatchdog.threshold(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(2);
+			return;
+		}
+		startWindow(Arrays.asList(args).contains(StartupProfile.FLAG), stall);
+	}
+
+	/**
+	 * opens the window as early as possible, Swing is initialized while the preferences are read
+	 * and the Dummy.png and the frames are decoded, the window fills itself once the pictures are ready
+	 * @param profiled true if the phases of the start should be reported
+	 * @param stall milliseconds after which the event dispatch thread counts as stalled, 0 to not watch it
+	 */
+	private static void startWindow(boolean profiled, long stall) {
+		StartupProfile profile = StartupProfile.getDefault();
+		if (profiled) {
+			profile.enable();
+		}
+		profile.mark("main");
+		SwingUtilities.invokeLater(() -> {
+			Toolkit.getDefaultToolkit();
+			UIManager.getLookAndFeelDefaults();
+			profile.mark("swing ready");
+		});
 		PrefManager manager = new PrefManager();
 		boolean ready = manager.loadData();
+		profile.mark("preferences loaded");
 		if (ready) {
+			profile.reportAfter(StartupProfile.WINDOW_SHOWN, StartupProfile.FRAME_SHOWN, StartupProfile.START_SHOWN);
 			WindowWorker worker = new WindowWorker(manager);
-			worker.buildGUI();
+			worker.preloadStartImage();
+			FrameRegistry.getDefault().preload();
+			SwingUtilities.invokeLater(worker::buildGUI);
 		} else {
+			profile.reportAfter(StartupProfile.WINDOW_SHOWN);
+			FrameRegistry.getDefault().preload();
 			FirstStarter starter = new FirstStarter(manager);
-			starter.buildGUI();
+			SwingUtilities.invokeLater(starter::buildGUI);
+		}
+		SwingUtilities.invokeLater(() -> {
+			EdtWatchdog.getDefault().start(stall);
+			Thread metrics = new Thread(() -> {
+				Metrics.getDefault().register();
+				profile.mark("metrics registered");
+			}, "Metrics");
+			metrics.setDaemon(true);
+			metrics.start();
+		});
+	}
+	
+	/**
+	 * creates the icons without opening a window
+	 * @param args of the command line
+	 * @return exit code of the program
+	 */
+	private static int runBatch(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		Metrics.getDefault().register();
+		try {
+			return BatchRunner.fromArguments(args).run() == 0 ? 0 : 1;
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			return 2;
+		} catch (IOException e) {
+			System.err.println("Error: " + e.getMessage());
+			return 1;
+		}
+	}
+	
+	/**
+	 * creates the icon every time the editor writes a new Dummy.png
+	 * @param args of the command line
+	 * @return exit code of the program
+	 */
+	private static int runWatch(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		Metrics.getDefault().register();
+		PrefManager manager = new PrefManager();
+		manager.loadData();
+		try {
+			DummyWatcher.fromArguments(args, manager).run();
+			return 0;
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			return 2;
+		} catch (IOException e) {
+			System.err.println("Error: " + e.getMessage());
+			return 1;
+		}
+	}
+	
+	/**
+	 * creates icons for pictures that are uploaded over HTTP
+	 * @param args of the command line
+	 * @return exit code of the program
+	 */
+	private static int runServe(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		Metrics.getDefault().register();
+		try {
+			IconServer.fromArguments(args).run();
+			return 0;
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			return 2;
+		} catch (IOException e) {
+			System.err.println("Error: " + e.getMessage());
+			return 1;
 		}
 	}
 
@@ -0,0 +1,414 @@
+package eu.jlmb.MapIcon;
+
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Timings and counters of the operations of the MapIconator.
+ * The values can be read over JMX, every operation is also written as flight recorder event
+ * if the runtime supports it.
+ * Operations may be measured inside other operations on the same thread, like the steps of an icon
+ * inside the request, the totals of pixels and bytes only count the innermost operations that report them.
+ * @author Jean Baumgarten
+ */
+public final class Metrics implements MetricsMXBean {
+
+	/**
+	 * name the metrics are registered with
+	 */
+	public static final String OBJECT_NAME = "eu.jlmb.MapIcon:type=Metrics";
+
+	private static final double[] BOUNDS = {
+		0.1, 0.25, 0.5, 1, 2.5, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000
+	};
+	private static final boolean FLIGHT_RECORDER = hasFlightRecorder();
+	private static final Metrics DEFAULT = new Metrics();
+	private static final ThreadLocal<Timer> RUNNING = new ThreadLocal<Timer>();
+
+	private final Map<String, Statistics> operations;
+	private final LongAdder cacheHits;
+	private final LongAdder cacheMisses;
+	private final LongAdder pixels;
+	private final LongAdder bytes;
+
+	private Metrics() {
+		this.operations = new ConcurrentSkipListMap<String, Statistics>();
+		this.pixels = new LongAdder();
+		this.bytes = new LongAdder();
+		this.cacheHits = new LongAdder();
+		this.cacheMisses = new LongAdder();
+	}
+
+	/**
+	 * gives back the metrics of the application
+	 * @return the metrics
+	 */
+	public static Metrics getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * starts measuring an operation, the timer has to be closed when the operation ends
+	 * @param operation name like decode or encode
+	 * @return the running timer
+	 */
+	public static Timer start(String operation) {
+		return new Timer(operation);
+	}
+
+	/**
+	 * makes the metrics readable over JMX, nothing happens if they are already registered
+	 */
+	public void register() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+		} catch (InstanceAlreadyExistsException e) {
+			return;
+		} catch (JMException e) {
+			System.err.println("Error while registering the metrics: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * counts an icon that was found in the cache
+	 */
+	public void cacheHit() {
+		this.cacheHits.increment();
+	}
+
+	/**
+	 * counts an icon that was not found in the cache
+	 */
+	public void cacheMiss() {
+		this.cacheMisses.increment();
+	}
+
+	/**
+	 * adds a measured operation, for durations that do not start and end on the same thread
+	 * @param operation name of the operation
+	 * @param nanos duration
+	 * @param pixels processed by the operation
+	 * @param bytes written by the operation
+	 * @param failed true if the operation ended with an error
+	 */
+	void record(String operation, long nanos, long pixels, long bytes, boolean failed) {
+		Statistics statistics = this.operations.get(operation);
+		if (statistics == null) {
+			this.operations.putIfAbsent(operation, new Statistics());
+			statistics = this.operations.get(operation);
+		}
+		statistics.add(nanos, pixels, bytes, failed);
+	}
+
+	@Override
+	public List<OperationSummary> getOperations() {
+		List<OperationSummary> summaries = new ArrayList<OperationSummary>();
+		for (Map.Entry<String, Statistics> entry : this.operations.entrySet()) {
+			summaries.add(entry.getValue().summary(entry.getKey()));
+		}
+		return summaries;
+	}
+
+	@Override
+	public double[] getHistogramBounds() {
+		return BOUNDS.clone();
+	}
+
+	@Override
+	public long getPixelsProcessed() {
+		return this.pixels.sum();
+	}
+
+	@Override
+	public long getBytesWritten() {
+		return this.bytes.sum();
+	}
+
+	@Override
+	public long getFailures() {
+		long failures = 0;
+		for (Statistics statistics : this.operations.values()) {
+			failures += statistics.failures.sum();
+		}
+		return failures;
+	}
+
+	@Override
+	public long getCacheHits() {
+		return this.cacheHits.sum();
+	}
+
+	@Override
+	public long getCacheMisses() {
+		return this.cacheMisses.sum();
+	}
+
+	@Override
+	public double getCacheHitRate() {
+		long hits = this.cacheHits.sum();
+		long lookups = hits + this.cacheMisses.sum();
+		return (lookups == 0) ? 0 : (double) hits / lookups;
+	}
+
+	@Override
+	public void reset() {
+		this.operations.clear();
+		this.pixels.reset();
+		this.bytes.reset();
+		this.cacheHits.reset();
+		this.cacheMisses.reset();
+	}
+
+	/**
+	 * checks if the flight recorder classes exist in this runtime
+	 * @return true if events can be written
+	 */
+	private static boolean hasFlightRecorder() {
+		try {
+			Class.forName("jdk.jfr.Event");
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Measures a single operation, an operation that is closed without calling done counts as failed.
+	 * A timer started while another one of the same thread is open belongs to that one,
+	 * so a timer has to be closed on the thread that started it.
+	 */
+	public static final class Timer implements AutoCloseable {
+
+		private final String operation;
+		private final Timer outer;
+		private final long start;
+		private final Object event;
+		private long pixels;
+		private long bytes;
+		private boolean innerPixels;
+		private boolean innerBytes;
+		private boolean done;
+
+		private Timer(String operation) {
+			this.operation = operation;
+			this.outer = RUNNING.get();
+			RUNNING.set(this);
+			this.event = FLIGHT_RECORDER ? OperationEvent.start(operation) : null;
+			this.start = System.nanoTime();
+		}
+
+		/**
+		 * marks the operation as successful
+		 * @param pixels processed by the operation
+		 * @param bytes written by the operation
+		 */
+		public void done(long pixels, long bytes) {
+			this.pixels = pixels;
+			this.bytes = bytes;
+			this.done = true;
+		}
+
+		/**
+		 * ends the measurement
+		 */
+		@Override
+		public void close() {
+			long nanos = System.nanoTime() - this.start;
+			RUNNING.set(this.outer);
+			if (this.outer != null) {
+				this.outer.innerPixels |= this.innerPixels || this.pixels > 0;
+				this.outer.innerBytes |= this.innerBytes || this.bytes > 0;
+			}
+			if (!this.innerPixels) {
+				DEFAULT.pixels.add(this.pixels);
+			}
+			if (!this.innerBytes) {
+				DEFAULT.bytes.add(this.bytes);
+			}
+			DEFAULT.record(this.operation, nanos, this.pixels, this.bytes, !this.done);
+			if (this.event != null) {
+				OperationEvent.finish(this.event, this.pixels, this.bytes, !this.done);
+			}
+		}
+	}
+
+	/**
+	 * Counters of one operation
+	 */
+	private static final class Statistics {
+
+		private final LongAdder count = new LongAdder();
+		private final LongAdder failures = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+		private final LongAdder pixels = new LongAdder();
+		private final LongAdder bytes = new LongAdder();
+		private final AtomicLong max = new AtomicLong();
+		private final AtomicLongArray histogram = new AtomicLongArray(BOUNDS.length + 1);
+
+		void add(long duration, long pixels, long bytes, boolean failed) {
+			this.count.increment();
+			if (failed) {
+				this.failures.increment();
+			}
+			this.nanos.add(duration);
+			this.pixels.add(pixels);
+			this.bytes.add(bytes);
+			long known = this.max.get();
+			while (duration > known && !this.max.compareAndSet(known, duration)) {
+				known = this.max.get();
+			}
+			double millis = duration / 1e6;
+			int bucket = 0;
+			while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) {
+				bucket++;
+			}
+			this.histogram.incrementAndGet(bucket);
+		}
+
+		OperationSummary summary(String name) {
+			long[] buckets = new long[this.histogram.length()];
+			for (int i = 0; i < buckets.length; i++) {
+				buckets[i] = this.histogram.get(i);
+			}
+			long total = this.count.sum();
+			double totalMillis = this.nanos.sum() / 1e6;
+			return new OperationSummary(name, total, this.failures.sum(), totalMillis,
+					(total == 0) ? 0 : totalMillis / total, this.max.get() / 1e6,
+					this.pixels.sum(), this.bytes.sum(), buckets);
+		}
+	}
+
+	/**
+	 * Statistics of one operation as shown over JMX
+	 */
+	public static final class OperationSummary {
+
+		private final String name;
+		private final long count;
+		private final long failures;
+		private final double totalMillis;
+		private final double meanMillis;
+		private final double maxMillis;
+		private final long pixels;
+		private final long bytes;
+		private final long[] histogram;
+
+		/**
+		 * Constructor
+		 * @param name of the operation
+		 * @param count of measured operations
+		 * @param failures of the operation
+		 * @param totalMillis duration of all operations
+		 * @param meanMillis mean duration
+		 * @param maxMillis longest duration
+		 * @param pixels processed
+		 * @param bytes written
+		 * @param histogram operations per latency bucket
+		 */
+		@ConstructorProperties({"name", "count", "failures", "totalMillis", "meanMillis", "maxMillis",
+			"pixels", "bytes", "histogram"})
+		public OperationSummary(String name, long count, long failures, double totalMillis, double meanMillis,
+				double maxMillis, long pixels, long bytes, long[] histogram) {
+			this.name = name;
+			this.count = count;
+			this.failures = failures;
+			this.totalMillis = totalMillis;
+			this.meanMillis = meanMillis;
+			this.maxMillis = maxMillis;
+			this.pixels = pixels;
+			this.bytes = bytes;
+			this.histogram = histogram;
+		}
+
+		/**
+		 * Getter for the name
+		 * @return name of the operation
+		 */
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * Getter for the count
+		 * @return number of measured operations
+		 */
+		public long getCount() {
+			return this.count;
+		}
+
+		/**
+		 * Getter for the failures
+		 * @return operations that ended with an error
+		 */
+		public long getFailures() {
+			return this.failures;
+		}
+
+		/**
+		 * Getter for the total duration
+		 * @return milliseconds of all operations
+		 */
+		public double getTotalMillis() {
+			return this.totalMillis;
+		}
+
+		/**
+		 * Getter for the mean duration
+		 * @return milliseconds per operation
+		 */
+		public double getMeanMillis() {
+			return this.meanMillis;
+		}
+
+		/**
+		 * Getter for the longest duration
+		 * @return milliseconds
+		 */
+		public double getMaxMillis() {
+			return this.maxMillis;
+		}
+
+		/**
+		 * Getter for the pixels
+		 * @return pixels processed by all operations of this name, inner operations included
+		 */
+		public long getPixels() {
+			return this.pixels;
+		}
+
+		/**
+		 * Getter for the bytes
+		 * @return bytes written by all operations of this name, inner operations included
+		 */
+		public long getBytes() {
+			return this.bytes;
+		}
+
+		/**
+		 * Getter for the histogram
+		 * @return operations per bucket of getHistogramBounds
+		 */
+		public long[] getHistogram() {
+			return this.histogram.clone();
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%s: %d (%d failed), mean %.2f ms, max %.2f ms",
+					this.name, this.count, this.failures, this.meanMillis, this.maxMillis);
+		}
+	}
+
+}
@@ -0,0 +1,64 @@
+package eu.jlmb.MapIcon;
+
+import java.util.List;
+
+/**
+ * Management interface of the metrics, registered as eu.jlmb.MapIcon:type=Metrics
+ * @author Jean Baumgarten
+ */
+public interface MetricsMXBean {
+
+	/**
+	 * statistics of every operation that was measured
+	 * @return one entry per operation, sorted by name
+	 */
+	List<Metrics.OperationSummary> getOperations();
+
+	/**
+	 * upper bounds of the latency histogram buckets
+	 * @return bounds in milliseconds, the last bucket has no bound
+	 */
+	double[] getHistogramBounds();
+
+	/**
+	 * Getter for the processed pixels
+	 * @return pixels of all measured operations, an operation around others adds only the pixels of the inner ones
+	 */
+	long getPixelsProcessed();
+
+	/**
+	 * Getter for the written bytes
+	 * @return bytes of all written icons, each icon is counted once even if it is measured inside a request
+	 */
+	long getBytesWritten();
+
+	/**
+	 * Getter for the failed operations
+	 * @return number of operations that ended with an error
+	 */
+	long getFailures();
+
+	/**
+	 * Getter for the cache hits
+	 * @return icons copied out of the cache
+	 */
+	long getCacheHits();
+
+	/**
+	 * Getter for the cache misses
+	 * @return icons that were not in the cache
+	 */
+	long getCacheMisses();
+
+	/**
+	 * Getter for the cache hit rate
+	 * @return hits divided by all lookups, 0 without lookups
+	 */
+	double getCacheHitRate();
+
+	/**
+	 * sets all values back to zero
+	 */
+	void reset();
+
+}
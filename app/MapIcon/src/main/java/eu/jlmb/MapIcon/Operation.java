@@ -0,0 +1,95 @@
+package eu.jlmb.MapIcon;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Operations that can be applied to an icon
+ * @author Jean Baumgarten
+ */
+public enum Operation {
+
+	/**
+	 * puts the frame onto the image
+	 */
+	OVERLAP("overlap"),
+
+	/**
+	 * fills the frame with the content of the image
+	 */
+	CUTOUT("cutout"),
+
+	/**
+	 * cuts off everything that is not landscape
+	 */
+	LANDSCAPE("landscape");
+
+	private final String key;
+
+	Operation(String key) {
+		this.key = key;
+	}
+
+	/**
+	 * Getter for the key
+	 * @return the name used on the command line
+	 */
+	public String getKey() {
+		return this.key;
+	}
+
+	/**
+	 * applies the operation
+	 * @param creater holding the image
+	 * @param frame that is used by the operation
+	 */
+	public void apply(IconCreater creater, BufferedImage frame) {
+		switch (this) {
+		case OVERLAP:
+			creater.addOverlappImage(frame);
+			break;
+		case CUTOUT:
+			creater.addCutOutImage(frame);
+			break;
+		default:
+			creater.cutOutLandscape();
+			break;
+		}
+	}
+
+	/**
+	 * finds the operation of the given name
+	 * @param name of the operation
+	 * @return the operation
+	 */
+	public static Operation parse(String name) {
+		String key = name.trim().toLowerCase(Locale.ROOT);
+		if ("overlapp".equals(key)) {
+			return OVERLAP;
+		}
+		for (Operation operation : values()) {
+			if (operation.key.equals(key)) {
+				return operation;
+			}
+		}
+		throw new IllegalArgumentException("Unknown operation: " + name);
+	}
+
+	/**
+	 * reads a comma separated sequence of operations
+	 * @param sequence like "cutout,landscape"
+	 * @return the operations in the given order
+	 */
+	public static List<Operation> parseSequence(String sequence) {
+		List<Operation> operations = new ArrayList<Operation>();
+		for (String name : sequence.split(",")) {
+			if (!name.trim().isEmpty()) {
+				operations.add(parse(name));
+			}
+		}
+		return operations;
+	}
+
+}
@@ -0,0 +1,66 @@
+package eu.jlmb.MapIcon;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a measured operation.
+ * The class is only loaded by Metrics if the runtime supports the flight recorder.
+ * @author Jean Baumgarten
+ */
+@Name("eu.jlmb.MapIcon.Operation")
+@Label("MapIcon Operation")
+@Category("MapIcon")
+@Description("Decoding, compositing, scaling or writing of an icon")
+@StackTrace(false)
+public final class OperationEvent extends Event {
+
+	@Label("Operation")
+	private String operation;
+
+	@Label("Pixels")
+	private long pixels;
+
+	@Label("Bytes Written")
+	@DataAmount
+	private long bytes;
+
+	@Label("Failed")
+	private boolean failed;
+
+	/**
+	 * starts an event
+	 * @param operation name of the operation
+	 * @return the event
+	 */
+	static Object start(String operation) {
+		OperationEvent event = new OperationEvent();
+		event.operation = operation;
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * ends an event and writes it if the event is enabled
+	 * @param started event given back by start
+	 * @param pixels processed by the operation
+	 * @param bytes written by the operation
+	 * @param failed true if the operation ended with an error
+	 */
+	static void finish(Object started, long pixels, long bytes, boolean failed) {
+		OperationEvent event = (OperationEvent) started;
+		event.end();
+		if (event.shouldCommit()) {
+			event.pixels = pixels;
+			event.bytes = bytes;
+			event.failed = failed;
+			event.commit();
+		}
+	}
+
+}
@@ -0,0 +1,102 @@
+package eu.jlmb.MapIcon;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Runs the image operations of the window one after another on a worker thread
+ * and hands their results back to the event dispatch thread.
+ * A task that is submitted while another task with the same key is still waiting is dropped,
+ * cancellable tasks are skipped if they became obsolete before they could finish.
+ * @author Jean Baumgarten
+ */
+public class OperationExecutor {
+
+	/**
+	 * Work that is done on the worker thread
+	 * @param <T> type of the result
+	 */
+	public interface Task<T> {
+
+		/**
+		 * does the work
+		 * @param cancelled tells if the task became obsolete, the task should check it before changing any state
+		 * @return the result that is published, null if nothing should be published
+		 * @throws Exception if the work fails
+		 */
+		T run(BooleanSupplier cancelled) throws Exception;
+	}
+
+	private final ExecutorService worker;
+	private final Set<String> waiting;
+	private final AtomicLong generation;
+
+	/**
+	 * Constructor
+	 * @param name of the worker thread
+	 */
+	public OperationExecutor(String name) {
+		this.worker = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, name);
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.waiting = ConcurrentHashMap.newKeySet();
+		this.generation = new AtomicLong();
+	}
+
+	/**
+	 * queues a task
+	 * @param key of the task, a task with the same key that is still waiting makes this one unnecessary
+	 * @param cancellable true if the task becomes obsolete by calling cancelPending
+	 * @param task to run on the worker thread
+	 * @param publish is called on the event dispatch thread with the result
+	 * @param failure is called on the event dispatch thread if the task fails
+	 * @param <T> type of the result
+	 */
+	public <T> void submit(String key, boolean cancellable, Task<T> task, Consumer<T> publish,
+			Consumer<Exception> failure) {
+		long submitted = this.generation.get();
+		String entry = submitted + ":" + key;
+		if (!this.waiting.add(entry)) {
+			return;
+		}
+		BooleanSupplier cancelled = () -> cancellable && submitted != this.generation.get();
+		this.worker.execute(() -> {
+			this.waiting.remove(entry);
+			if (cancelled.getAsBoolean()) {
+				return;
+			}
+			try {
+				T result = task.run(cancelled);
+				if (result != null) {
+					SwingUtilities.invokeLater(() -> publish.accept(result));
+				}
+			} catch (Exception e) {
+				SwingUtilities.invokeLater(() -> failure.accept(e));
+			}
+		});
+	}
+
+	/**
+	 * makes all cancellable tasks that were submitted until now obsolete
+	 */
+	public void cancelPending() {
+		this.generation.incrementAndGet();
+	}
+
+	/**
+	 * stops the worker thread after the queued tasks
+	 */
+	public void shutdown() {
+		this.worker.shutdown();
+	}
+
+}
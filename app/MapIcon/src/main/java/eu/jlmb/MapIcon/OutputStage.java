@@ -0,0 +1,210 @@
+package eu.jlmb.MapIcon;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Cuts the transparent border off a picture and centers the rest in a square,
+ * in one pass into a single new image
+ * @author Jean Baumgarten
+ */
+public final class OutputStage {
+
+	private static final int BORDER = 2;
+
+	private OutputStage() {
+	}
+
+	/**
+	 * creates a square image out of the visible part of the picture
+	 * @param picture to be treated
+	 * @return a square image, or null if the picture is completely transparent
+	 */
+	public static BufferedImage cropToSquare(BufferedImage picture) {
+		PixelRaster source = PixelRaster.of(PixelRaster.toArgb(picture));
+		int[] bounds = findBounds(source);
+		if (bounds == null) {
+			return null;
+		}
+		int side = Math.max(bounds[2], bounds[3]);
+		BufferedImage square = new BufferedImage(side, side, BufferedImage.TYPE_INT_ARGB);
+		copyCentered(source, bounds, PixelRaster.of(square));
+		return square;
+	}
+
+	/**
+	 * creates the icon out of a picture without creating any image,
+	 * the square and the icon are taken out of the buffer pool
+	 * @param picture to be treated, it is not changed
+	 * @param filter used to scale the square to the icon size
+	 * @param size of the icon
+	 * @return the icon, it should be given back with release
+	 */
+	public static PixelRaster makeIcon(PixelRaster picture, Resampler.Filter filter, int size) {
+		int[] bounds = findBounds(picture);
+		if (bounds == null) {
+			PixelRaster empty = PixelRaster.allocate(size, size);
+			Arrays.fill(empty.getData(), 0, size * size, 0);
+			return empty;
+		}
+		int side = Math.max(bounds[2], bounds[3]);
+		PixelRaster square = PixelRaster.allocate(side, side);
+		Arrays.fill(square.getData(), 0, side * side, 0);
+		copyCentered(picture, bounds, square);
+		if (side == size) {
+			return square;
+		}
+		PixelRaster icon = PixelRaster.allocate(size, size);
+		Resampler.resample(square, icon, filter, RowBands.isParallel(side, side));
+		square.release();
+		return icon;
+	}
+
+	/**
+	 * copies the visible area into the middle of a square
+	 * @param source picture
+	 * @param bounds x, y, width and height of the visible area
+	 * @param target square that is transparent outside of the copied area
+	 */
+	private static void copyCentered(PixelRaster source, int[] bounds, PixelRaster target) {
+		int startX = bounds[0];
+		int startY = bounds[1];
+		int dx = bounds[2];
+		int dy = bounds[3];
+		int side = target.getWidth();
+		int offsetX = (side - dx) / 2;
+		int offsetY = (side - dy) / 2;
+		int[] src = source.getData();
+		int[] dst = target.getData();
+		for (int y = 0; y < dy; y++) {
+			System.arraycopy(src, source.rowStart(y + startY) + startX,
+					dst, target.rowStart(y + offsetY) + offsetX, dx);
+		}
+	}
+
+	/**
+	 * finds the area of the picture that is not transparent, including a small border
+	 * @param picture to search
+	 * @return x, y, width and height of the area, or null if there is no such area
+	 */
+	public static int[] findBounds(PixelRaster picture) {
+		int width = picture.getWidth();
+		int height = picture.getHeight();
+		if (RowBands.isParallel(width, height)) {
+			return scanBands(picture);
+		}
+		int top = 0;
+		while (top < height && firstVisible(picture, top, width) == width) {
+			top++;
+		}
+		if (top == height) {
+			return null;
+		}
+		int bottom = height - 1;
+		while (firstVisible(picture, bottom, width) == width) {
+			bottom--;
+		}
+		int left = width;
+		int right = -1;
+		for (int y = top; y <= bottom; y++) {
+			left = Math.min(left, firstVisible(picture, y, left));
+			right = Math.max(right, lastVisible(picture, y, right));
+		}
+		return withBorder(left, top, right, bottom, width, height);
+	}
+
+	/**
+	 * finds the visible area of a big picture, the rows are searched in parallel bands
+	 * and the results of the rows are combined afterwards
+	 * @param picture to search
+	 * @return x, y, width and height of the area, or null if there is no such area
+	 */
+	private static int[] scanBands(PixelRaster picture) {
+		int width = picture.getWidth();
+		int height = picture.getHeight();
+		int[] first = new int[height];
+		int[] last = new int[height];
+		RowBands.run(width, height, (from, to) -> {
+			for (int y = from; y < to; y++) {
+				first[y] = firstVisible(picture, y, width);
+				last[y] = (first[y] == width) ? -1 : lastVisible(picture, y, first[y]);
+			}
+		});
+		int top = 0;
+		while (top < height && first[top] == width) {
+			top++;
+		}
+		if (top == height) {
+			return null;
+		}
+		int bottom = height - 1;
+		while (first[bottom] == width) {
+			bottom--;
+		}
+		int left = width;
+		int right = -1;
+		for (int y = top; y <= bottom; y++) {
+			left = Math.min(left, first[y]);
+			right = Math.max(right, last[y]);
+		}
+		return withBorder(left, top, right, bottom, width, height);
+	}
+
+	/**
+	 * adds the border around the visible pixels
+	 * @param left first visible column
+	 * @param top first visible row
+	 * @param right last visible column
+	 * @param bottom last visible row
+	 * @param width of the picture
+	 * @param height of the picture
+	 * @return x, y, width and height of the area, or null if there is no such area
+	 */
+	private static int[] withBorder(int left, int top, int right, int bottom, int width, int height) {
+		int startX = (left > BORDER) ? (left - BORDER) : left;
+		int startY = (top > BORDER) ? (top - BORDER) : top;
+		int endX = (right < width - BORDER) ? (right + BORDER) : right;
+		int endY = (bottom < height - BORDER) ? (bottom + BORDER) : bottom;
+		if (endX <= startX || endY <= startY) {
+			return null;
+		}
+		return new int[] {startX, startY, endX - startX, endY - startY};
+	}
+
+	/**
+	 * searches a row from the left for a pixel that is not transparent
+	 * @param picture to search
+	 * @param y is the row
+	 * @param limit x position where the search stops
+	 * @return x position of the pixel or the limit
+	 */
+	private static int firstVisible(PixelRaster picture, int y, int limit) {
+		int[] data = picture.getData();
+		int start = picture.rowStart(y);
+		for (int x = 0; x < limit; x++) {
+			if ((data[start + x] >>> 24) != 0) {
+				return x;
+			}
+		}
+		return limit;
+	}
+
+	/**
+	 * searches a row from the right for a pixel that is not transparent
+	 * @param picture to search
+	 * @param y is the row
+	 * @param limit x position where the search stops
+	 * @return x position of the pixel or the limit
+	 */
+	private static int lastVisible(PixelRaster picture, int y, int limit) {
+		int[] data = picture.getData();
+		int start = picture.rowStart(y);
+		for (int x = picture.getWidth() - 1; x > limit; x--) {
+			if ((data[start + x] >>> 24) != 0) {
+				return x;
+			}
+		}
+		return limit;
+	}
+
+}
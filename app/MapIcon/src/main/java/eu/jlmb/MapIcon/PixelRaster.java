@@ -0,0 +1,228 @@
+package eu.jlmb.MapIcon;
+
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * View onto the pixel array behind a TYPE_INT_ARGB image.
+ * Rasters created with allocate take their array out of the BufferPool and give it back with release,
+ * an image is only wrapped around the pixels where one is needed, like for encoding.
+ * @author Jean Baumgarten
+ */
+public final class PixelRaster {
+
+	private static final int[] MASKS = {0x00FF0000, 0x0000FF00, 0x000000FF, 0xFF000000};
+
+	private final int[] data;
+	private final int offset;
+	private final int scanline;
+	private final int width;
+	private final int height;
+	private boolean pooled;
+
+	/**
+	 * Constructor of a raster view
+	 * @param data array holding the pixels
+	 * @param offset index of the upper left pixel
+	 * @param scanline distance between two rows in the array
+	 * @param width of the view
+	 * @param height of the view
+	 */
+	public PixelRaster(int[] data, int offset, int scanline, int width, int height) {
+		this.data = data;
+		this.offset = offset;
+		this.scanline = scanline;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * creates a raster whose pixels come out of the buffer pool, the pixels are not cleared
+	 * @param width of the raster
+	 * @param height of the raster
+	 * @return a raster that should be given back with release
+	 */
+	public static PixelRaster allocate(int width, int height) {
+		int[] data = BufferPool.getDefault().takeInts(width * height);
+		PixelRaster raster = new PixelRaster(data, 0, width, width, height);
+		raster.pooled = true;
+		return raster;
+	}
+
+	/**
+	 * copies the pixels of an image into a raster out of the buffer pool
+	 * @param image to be copied
+	 * @return a raster that should be given back with release
+	 */
+	public static PixelRaster copyOf(BufferedImage image) {
+		PixelRaster raster = allocate(image.getWidth(), image.getHeight());
+		image.getRGB(0, 0, raster.width, raster.height, raster.data, 0, raster.width);
+		return raster;
+	}
+
+	/**
+	 * gives the pixels back to the buffer pool if they were taken out of it,
+	 * neither the raster nor an image wrapped around it may be used afterwards
+	 */
+	public void release() {
+		if (this.pooled) {
+			this.pooled = false;
+			BufferPool.getDefault().release(this.data);
+		}
+	}
+
+	/**
+	 * wraps an image around the pixels without copying them
+	 * @return an image of type TYPE_INT_ARGB sharing the pixels of the raster
+	 */
+	public BufferedImage toImage() {
+		DataBufferInt buffer = new DataBufferInt(this.data, this.data.length - this.offset, this.offset);
+		WritableRaster raster = Raster.createPackedRaster(buffer, this.width, this.height, this.scanline, MASKS,
+				new Point(0, 0));
+		ColorModel model = new DirectColorModel(32, MASKS[0], MASKS[1], MASKS[2], MASKS[3]);
+		return new BufferedImage(model, raster, false, null);
+	}
+
+	/**
+	 * creates a view onto the pixels of an image
+	 * @param image of type TYPE_INT_ARGB
+	 * @return a view sharing the pixels of the image
+	 */
+	public static PixelRaster of(BufferedImage image) {
+		if (image.getType() != BufferedImage.TYPE_INT_ARGB) {
+			throw new IllegalArgumentException("Image has to be of type TYPE_INT_ARGB");
+		}
+		WritableRaster raster = image.getRaster();
+		DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+		SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) raster.getSampleModel();
+		int x = -raster.getSampleModelTranslateX();
+		int y = -raster.getSampleModelTranslateY();
+		int offset = buffer.getOffset() + model.getOffset(x, y);
+		return new PixelRaster(buffer.getData(), offset, model.getScanlineStride(),
+				image.getWidth(), image.getHeight());
+	}
+
+	/**
+	 * gives back the image itself if it is already TYPE_INT_ARGB,
+	 * otherwise a converted copy of it
+	 * @param image to be normalized
+	 * @return an image of type TYPE_INT_ARGB
+	 */
+	public static BufferedImage toArgb(BufferedImage image) {
+		if (image.getType() == BufferedImage.TYPE_INT_ARGB) {
+			return image;
+		}
+		return copyArgb(image);
+	}
+
+	/**
+	 * creates a deep copy of an image
+	 * @param image to be copied
+	 * @return copy of the image as TYPE_INT_ARGB
+	 */
+	public static BufferedImage copyArgb(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		BufferedImage argb = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		int[] pixels = ((DataBufferInt) argb.getRaster().getDataBuffer()).getData();
+		if (!copyAbgr(image, pixels)) {
+			image.getRGB(0, 0, width, height, pixels, 0, width);
+		}
+		return argb;
+	}
+
+	/**
+	 * copies the bytes of a TYPE_4BYTE_ABGR image, like ImageIO decodes PNG files with alpha,
+	 * without going through the color model for every pixel
+	 * @param image to be copied
+	 * @param pixels to be filled with width times height pixels
+	 * @return false if the image is not a plain TYPE_4BYTE_ABGR image
+	 */
+	private static boolean copyAbgr(BufferedImage image, int[] pixels) {
+		if (image.getType() != BufferedImage.TYPE_4BYTE_ABGR || image.getColorModel().isAlphaPremultiplied()) {
+			return false;
+		}
+		WritableRaster raster = image.getRaster();
+		if (!(raster.getDataBuffer() instanceof DataBufferByte)
+				|| !(raster.getSampleModel() instanceof PixelInterleavedSampleModel)) {
+			return false;
+		}
+		PixelInterleavedSampleModel model = (PixelInterleavedSampleModel) raster.getSampleModel();
+		int[] bands = model.getBandOffsets();
+		if (model.getPixelStride() != 4 || bands[0] != 3 || bands[1] != 2 || bands[2] != 1 || bands[3] != 0) {
+			return false;
+		}
+		DataBufferByte buffer = (DataBufferByte) raster.getDataBuffer();
+		byte[] bytes = buffer.getData();
+		int width = image.getWidth();
+		int x0 = -raster.getSampleModelTranslateX();
+		int y0 = -raster.getSampleModelTranslateY();
+		for (int y = 0; y < image.getHeight(); y++) {
+			int from = buffer.getOffset() + model.getOffset(x0, y0 + y, 3);
+			int to = y * width;
+			for (int x = 0; x < width; x++, from += 4) {
+				pixels[to + x] = (bytes[from] & 0xFF) << 24 | (bytes[from + 3] & 0xFF) << 16
+						| (bytes[from + 2] & 0xFF) << 8 | (bytes[from + 1] & 0xFF);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Getter for the pixel array
+	 * @return the array shared with the image
+	 */
+	public int[] getData() {
+		return this.data;
+	}
+
+	/**
+	 * Getter for the offset
+	 * @return index of the upper left pixel
+	 */
+	public int getOffset() {
+		return this.offset;
+	}
+
+	/**
+	 * Getter for the scanline stride
+	 * @return distance between two rows in the array
+	 */
+	public int getScanline() {
+		return this.scanline;
+	}
+
+	/**
+	 * Getter for the width
+	 * @return int
+	 */
+	public int getWidth() {
+		return this.width;
+	}
+
+	/**
+	 * Getter for the height
+	 * @return int
+	 */
+	public int getHeight() {
+		return this.height;
+	}
+
+	/**
+	 * index of the first pixel of a row
+	 * @param y is the row
+	 * @return index inside the pixel array
+	 */
+	public int rowStart(int y) {
+		return this.offset + y * this.scanline;
+	}
+
+}
@@ -0,0 +1,503 @@
+package eu.jlmb.MapIcon;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes images as 8 bit truecolor PNG files, or as indexed PNG files with a palette of at most 256 colors
+ * if the quantized image stays close enough to the original.
+ * The Deflater and all buffers are kept per thread and reused for every file,
+ * compression level and row filter can be chosen to trade speed against size.
+ * @author Jean Baumgarten
+ */
+public final class PngEncoder {
+
+	/**
+	 * PNG row filters, ADAPTIVE chooses the best filter for every row
+	 */
+	public enum RowFilter {
+		NONE, SUB, UP, AVERAGE, PAETH, ADAPTIVE;
+
+		/**
+		 * reads a filter name like paeth
+		 * @param name of the filter, case is ignored
+		 * @return the filter
+		 */
+		public static RowFilter parse(String name) {
+			try {
+				return valueOf(name.trim().toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Unknown PNG filter: " + name);
+			}
+		}
+	}
+
+	/**
+	 * encoder with the default compression level and adaptive filtering
+	 */
+	public static final PngEncoder DEFAULT = new PngEncoder(Deflater.DEFAULT_COMPRESSION, RowFilter.ADAPTIVE);
+
+	/**
+	 * largest palette error that is not visible in the icons, about 38.6 dB peak signal to noise ratio
+	 */
+	public static final double PALETTE_ERROR = 3.0;
+
+	/**
+	 * encoder like the default one that writes a palette if the error stays below PALETTE_ERROR
+	 */
+	public static final PngEncoder PALETTE = new PngEncoder(Deflater.DEFAULT_COMPRESSION, RowFilter.ADAPTIVE,
+			PALETTE_ERROR);
+
+	private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+	private static final int CHUNK_SIZE = 1 << 16;
+	private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+	private final int level;
+	private final RowFilter filter;
+	private final double paletteError;
+
+	/**
+	 * Constructor of an encoder that always writes truecolor images
+	 * @param level of the compression from 0 (fastest) to 9 (smallest), -1 for the default level
+	 * @param filter applied to the rows before compressing them
+	 */
+	public PngEncoder(int level, RowFilter filter) {
+		this(level, filter, 0);
+	}
+
+	/**
+	 * Constructor
+	 * @param level of the compression from 0 (fastest) to 9 (smallest), -1 for the default level
+	 * @param filter applied to the truecolor rows before compressing them
+	 * @param paletteError largest root mean square error of a palette image, 0 to always write truecolor
+	 */
+	public PngEncoder(int level, RowFilter filter, double paletteError) {
+		if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("Compression level has to be between 0 and 9: " + level);
+		}
+		if (!(paletteError >= 0 && paletteError <= 255)) {
+			throw new IllegalArgumentException("Palette error has to be between 0 and 255: " + paletteError);
+		}
+		this.level = level;
+		this.filter = filter;
+		this.paletteError = paletteError;
+	}
+
+	/**
+	 * Getter for the compression level
+	 * @return level from 0 to 9, -1 for the default level
+	 */
+	public int getLevel() {
+		return this.level;
+	}
+
+	/**
+	 * Getter for the row filter
+	 * @return the filter
+	 */
+	public RowFilter getFilter() {
+		return this.filter;
+	}
+
+	/**
+	 * Getter for the palette error
+	 * @return largest error of a palette image, 0 if only truecolor images are written
+	 */
+	public double getPaletteError() {
+		return this.paletteError;
+	}
+
+	/**
+	 * writes an image into a file, an existing file is replaced
+	 * @param image to write
+	 * @param file to write to
+	 * @throws IOException if writing fails
+	 */
+	public void write(BufferedImage image, Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			this.write(image, channel);
+		}
+	}
+
+	/**
+	 * writes an image into a channel, the channel is not closed
+	 * @param image to write
+	 * @param channel to write to
+	 * @throws IOException if writing fails
+	 */
+	public void write(BufferedImage image, WritableByteChannel channel) throws IOException {
+		try (Metrics.Timer timer = Metrics.start("encode")) {
+			Scratch scratch = SCRATCH.get();
+			scratch.output = BufferPool.getDefault().takeBytes(CHUNK_SIZE + 12);
+			try {
+				this.encode(image, channel, scratch);
+			} finally {
+				BufferPool.getDefault().release(scratch.output);
+				scratch.output = null;
+			}
+			timer.done((long) image.getWidth() * image.getHeight(), scratch.written);
+		}
+	}
+
+	/**
+	 * writes an image into a channel with the buffers of the current thread
+	 * @param image to write
+	 * @param channel to write to
+	 * @param scratch buffers of the current thread, counts the written bytes
+	 * @throws IOException if writing fails
+	 */
+	private void encode(BufferedImage image, WritableByteChannel channel, Scratch scratch) throws IOException {
+		PixelRaster raster = PixelRaster.of(PixelRaster.toArgb(image));
+		if (this.paletteError > 0) {
+			Quantizer.Palette palette;
+			try (Metrics.Timer timer = Metrics.start("quantize")) {
+				palette = Quantizer.quantize(raster, Quantizer.MAX_COLORS);
+				timer.done((long) raster.getWidth() * raster.getHeight(), 0);
+			}
+			if (palette.getError() <= this.paletteError) {
+				this.encodeIndexed(palette, raster.getWidth(), raster.getHeight(), channel, scratch);
+				return;
+			}
+		}
+		int width = raster.getWidth();
+		int height = raster.getHeight();
+		boolean opaque = isOpaque(raster);
+		int bpp = opaque ? 3 : 4;
+		int rowBytes = width * bpp;
+		scratch.prepare(rowBytes + 1);
+		writeHeader(channel, scratch, width, height, opaque ? 2 : 6);
+
+		Deflater deflater = this.startDeflater(scratch,
+				this.filter == RowFilter.NONE ? Deflater.DEFAULT_STRATEGY : Deflater.FILTERED);
+		byte[] raw = scratch.raw;
+		byte[] prior = scratch.prior;
+		Arrays.fill(prior, 0, rowBytes, (byte) 0);
+		int[] data = raster.getData();
+		scratch.used = 0;
+		for (int y = 0; y < height; y++) {
+			int index = raster.rowStart(y);
+			int b = 0;
+			for (int x = 0; x < width; x++) {
+				int pixel = data[index + x];
+				raw[b++] = (byte) (pixel >> 16);
+				raw[b++] = (byte) (pixel >> 8);
+				raw[b++] = (byte) pixel;
+				if (!opaque) {
+					raw[b++] = (byte) (pixel >>> 24);
+				}
+			}
+			byte[] row = this.filterRow(scratch, raw, prior, rowBytes, bpp);
+			deflater.setInput(row, 0, rowBytes + 1);
+			while (!deflater.needsInput()) {
+				drain(channel, scratch);
+			}
+			scratch.raw = prior;
+			scratch.prior = raw;
+			raw = scratch.raw;
+			prior = scratch.prior;
+		}
+		finish(channel, scratch);
+	}
+
+	/**
+	 * writes a quantized image with a palette, the alpha of the palette entries goes into a transparency chunk.
+	 * The rows are not filtered, because the differences of palette indices do not compress better
+	 * @param palette of the image
+	 * @param width of the image
+	 * @param height of the image
+	 * @param channel to write to
+	 * @param scratch buffers of the current thread, counts the written bytes
+	 * @throws IOException if writing fails
+	 */
+	private void encodeIndexed(Quantizer.Palette palette, int width, int height, WritableByteChannel channel,
+			Scratch scratch) throws IOException {
+		scratch.prepare(Math.max(width + 1, 3 * Quantizer.MAX_COLORS));
+		writeHeader(channel, scratch, width, height, 3);
+		int[] colors = palette.getColors();
+		byte[] entries = scratch.best;
+		int translucent = 0;
+		for (int i = 0; i < colors.length; i++) {
+			entries[3 * i] = (byte) (colors[i] >> 16);
+			entries[3 * i + 1] = (byte) (colors[i] >> 8);
+			entries[3 * i + 2] = (byte) colors[i];
+			if (colors[i] >>> 24 != 0xFF) {
+				translucent = i + 1;
+			}
+		}
+		writeChunk(channel, scratch, "PLTE", entries, 3 * colors.length);
+		if (translucent > 0) {
+			for (int i = 0; i < translucent; i++) {
+				entries[i] = (byte) (colors[i] >>> 24);
+			}
+			writeChunk(channel, scratch, "tRNS", entries, translucent);
+		}
+
+		Deflater deflater = this.startDeflater(scratch, Deflater.DEFAULT_STRATEGY);
+		byte[] indices = palette.getIndices();
+		byte[] row = scratch.raw;
+		row[0] = 0;
+		scratch.used = 0;
+		for (int y = 0; y < height; y++) {
+			System.arraycopy(indices, y * width, row, 1, width);
+			deflater.setInput(row, 0, width + 1);
+			while (!deflater.needsInput()) {
+				drain(channel, scratch);
+			}
+		}
+		finish(channel, scratch);
+	}
+
+	/**
+	 * writes the signature and the header chunk
+	 * @param channel to write to
+	 * @param scratch buffers of the current thread, starts counting the written bytes
+	 * @param width of the image
+	 * @param height of the image
+	 * @param colorType 2 for truecolor, 6 for truecolor with alpha, 3 for a palette
+	 * @throws IOException if writing fails
+	 */
+	private static void writeHeader(WritableByteChannel channel, Scratch scratch, int width, int height,
+			int colorType) throws IOException {
+		writeFully(channel, ByteBuffer.wrap(SIGNATURE));
+		scratch.written = SIGNATURE.length;
+		ByteBuffer header = scratch.header;
+		header.clear();
+		header.putInt(width).putInt(height);
+		header.put((byte) 8).put((byte) colorType).put((byte) 0).put((byte) 0).put((byte) 0);
+		writeChunk(channel, scratch, "IHDR", header.array(), header.position());
+	}
+
+	/**
+	 * prepares the Deflater of the current thread for a new image
+	 * @param scratch buffers of the current thread
+	 * @param strategy of the Deflater
+	 * @return the Deflater
+	 */
+	private Deflater startDeflater(Scratch scratch, int strategy) {
+		Deflater deflater = scratch.deflater;
+		deflater.reset();
+		deflater.setLevel(this.level);
+		deflater.setStrategy(strategy);
+		return deflater;
+	}
+
+	/**
+	 * compresses the rest of the image and writes the last data chunk and the end chunk
+	 * @param channel to write to
+	 * @param scratch buffers of the current thread
+	 * @throws IOException if writing fails
+	 */
+	private static void finish(WritableByteChannel channel, Scratch scratch) throws IOException {
+		Deflater deflater = scratch.deflater;
+		deflater.finish();
+		while (!deflater.finished()) {
+			drain(channel, scratch);
+		}
+		if (scratch.used > 0) {
+			writeChunk(channel, scratch, "IDAT", scratch.compressed, scratch.used);
+		}
+		writeChunk(channel, scratch, "IEND", scratch.compressed, 0);
+	}
+
+	/**
+	 * filters a row with the filter of the encoder
+	 * @param scratch buffers of the current thread
+	 * @param raw bytes of the row
+	 * @param prior bytes of the row above, zeros for the first row
+	 * @param length of the row in bytes
+	 * @param bpp bytes per pixel
+	 * @return the filter type followed by the filtered row
+	 */
+	private byte[] filterRow(Scratch scratch, byte[] raw, byte[] prior, int length, int bpp) {
+		if (this.filter != RowFilter.ADAPTIVE) {
+			applyFilter(this.filter.ordinal(), raw, prior, length, bpp, scratch.best);
+			return scratch.best;
+		}
+		long bestSum = Long.MAX_VALUE;
+		for (int type = 0; type <= 4; type++) {
+			applyFilter(type, raw, prior, length, bpp, scratch.candidate);
+			long sum = 0;
+			byte[] candidate = scratch.candidate;
+			for (int i = 1; i <= length && sum < bestSum; i++) {
+				sum += Math.abs(candidate[i]);
+			}
+			if (sum < bestSum) {
+				bestSum = sum;
+				scratch.candidate = scratch.best;
+				scratch.best = candidate;
+			}
+		}
+		return scratch.best;
+	}
+
+	/**
+	 * applies one of the five PNG filter types
+	 * @param type from 0 (none) to 4 (paeth)
+	 * @param raw bytes of the row
+	 * @param prior bytes of the row above
+	 * @param length of the row in bytes
+	 * @param bpp bytes per pixel
+	 * @param out receives the filter type and the filtered bytes
+	 */
+	private static void applyFilter(int type, byte[] raw, byte[] prior, int length, int bpp, byte[] out) {
+		out[0] = (byte) type;
+		switch (type) {
+		case 1:
+			for (int i = 0; i < length; i++) {
+				int left = i >= bpp ? raw[i - bpp] : 0;
+				out[i + 1] = (byte) (raw[i] - left);
+			}
+			break;
+		case 2:
+			for (int i = 0; i < length; i++) {
+				out[i + 1] = (byte) (raw[i] - prior[i]);
+			}
+			break;
+		case 3:
+			for (int i = 0; i < length; i++) {
+				int left = i >= bpp ? raw[i - bpp] & 0xFF : 0;
+				out[i + 1] = (byte) (raw[i] - ((left + (prior[i] & 0xFF)) >>> 1));
+			}
+			break;
+		case 4:
+			for (int i = 0; i < length; i++) {
+				int left = i >= bpp ? raw[i - bpp] & 0xFF : 0;
+				int upLeft = i >= bpp ? prior[i - bpp] & 0xFF : 0;
+				out[i + 1] = (byte) (raw[i] - paeth(left, prior[i] & 0xFF, upLeft));
+			}
+			break;
+		default:
+			System.arraycopy(raw, 0, out, 1, length);
+		}
+	}
+
+	/**
+	 * paeth predictor of the PNG specification
+	 * @param left byte left of the current one
+	 * @param up byte above the current one
+	 * @param upLeft byte above the left one
+	 * @return the predicted byte
+	 */
+	private static int paeth(int left, int up, int upLeft) {
+		int p = left + up - upLeft;
+		int pa = Math.abs(p - left);
+		int pb = Math.abs(p - up);
+		int pc = Math.abs(p - upLeft);
+		if (pa <= pb && pa <= pc) {
+			return left;
+		}
+		return pb <= pc ? up : upLeft;
+	}
+
+	/**
+	 * checks if all pixels are fully opaque, so that the alpha channel can be left out
+	 * @param raster of the image
+	 * @return true if no pixel is transparent
+	 */
+	private static boolean isOpaque(PixelRaster raster) {
+		int[] data = raster.getData();
+		for (int y = 0; y < raster.getHeight(); y++) {
+			int index = raster.rowStart(y);
+			for (int x = 0; x < raster.getWidth(); x++) {
+				if ((data[index + x] >>> 24) != 0xFF) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * lets the deflater write into the output buffer and writes the buffer as IDAT chunk when it is full
+	 * @param channel to write to
+	 * @param scratch buffers of the current thread
+	 * @throws IOException if writing fails
+	 */
+	private static void drain(WritableByteChannel channel, Scratch scratch) throws IOException {
+		scratch.used += scratch.deflater.deflate(scratch.compressed, scratch.used, CHUNK_SIZE - scratch.used);
+		if (scratch.used == CHUNK_SIZE) {
+			writeChunk(channel, scratch, "IDAT", scratch.compressed, CHUNK_SIZE);
+			scratch.used = 0;
+		}
+	}
+
+	/**
+	 * writes a chunk with length, type, data and checksum
+	 * @param channel to write to
+	 * @param scratch buffers of the current thread
+	 * @param type of the chunk like IDAT
+	 * @param data of the chunk
+	 * @param length of the data
+	 * @throws IOException if writing fails
+	 */
+	private static void writeChunk(WritableByteChannel channel, Scratch scratch, String type, byte[] data,
+			int length) throws IOException {
+		byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+		CRC32 crc = scratch.crc;
+		crc.reset();
+		crc.update(name);
+		crc.update(data, 0, length);
+		ByteBuffer buffer = scratch.output;
+		buffer.clear();
+		buffer.putInt(length).put(name).put(data, 0, length).putInt((int) crc.getValue());
+		buffer.flip();
+		writeFully(channel, buffer);
+		scratch.written += length + 12;
+	}
+
+	/**
+	 * writes the whole buffer, channels may write less than asked for
+	 * @param channel to write to
+	 * @param buffer to write
+	 * @throws IOException if writing fails
+	 */
+	private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Deflater and buffers that are reused by all files written on a thread,
+	 * only the output buffer is taken out of the BufferPool for each file
+	 */
+	private static final class Scratch {
+
+		private final Deflater deflater = new Deflater();
+		private final CRC32 crc = new CRC32();
+		private final byte[] compressed = new byte[CHUNK_SIZE];
+		private ByteBuffer output;
+		private final ByteBuffer header = ByteBuffer.allocate(13);
+		private byte[] raw = new byte[0];
+		private byte[] prior = new byte[0];
+		private byte[] best = new byte[0];
+		private byte[] candidate = new byte[0];
+		private int used;
+		private long written;
+
+		/**
+		 * makes sure that the row buffers can hold a filtered row
+		 * @param length of a filtered row including the filter type
+		 */
+		void prepare(int length) {
+			if (this.best.length < length) {
+				this.raw = new byte[length];
+				this.prior = new byte[length];
+				this.best = new byte[length];
+				this.candidate = new byte[length];
+			}
+		}
+	}
+
+}
@@ -1,31 +1,80 @@
 package eu.jlmb.MapIcon;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Preferences Manager for the MapIconator
+ * Preferences Manager for the MapIconator.
+ * The preferences are kept in memory, changes are collected for a short time
+ * and then written by a background thread, so a setter never waits for the disk.
+ * The file is replaced atomically and holds one key=value pair per line after its format version,
+ * keys written by newer versions are kept when the file is written again.
  * @author Jean Baumgarten
  */
 public class PrefManager {
-	
-	private String version = "Die Siedler - Aufstieg eines Knigreichs";
+
+	/**
+	 * version of the file format that is written
+	 */
+	public static final int FORMAT = 2;
+
+	/**
+	 * milliseconds changes are collected before they are written
+	 */
+	public static final long FLUSH_DELAY = 500;
+
+	private static final String S6 = "Die Siedler - Aufstieg eines Knigreichs";
+	private static final String S5 = "Die Siedler - Das Erbe der Knige";
+	private static final String ORIGINAL = "orig";
+	private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "Preferences");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Path file;
+	private final Object writing = new Object();
+	private String version = S6;
 	private String s6Path;
 	private String s5Path;
 	private final String origS6;
 	private final String origS5;
-	
+	private Recipe recipe = Recipe.EMPTY;
+	private final Map<String, String> unknown = new LinkedHashMap<String, String>();
+	private ScheduledFuture<?> pending;
+	private boolean hooked;
+
 	/**
-	 * Constructor
+	 * Constructor for the preferences file in the documents folder
 	 */
 	public PrefManager() {
+		this(Paths.get(System.getProperty("user.home"), "Documents", "Siedelwood Mapiconator", "prefs.txt"));
+	}
+
+	/**
+	 * Constructor
+	 * @param file holding the preferences
+	 */
+	public PrefManager(Path file) {
+		this.file = file;
 		this.s6Path = System.getProperty("user.home") + File.separator;
 		this.s6Path += "Documents/DIE SIEDLER - Aufstieg eines Knigreichs/MapEditor/Temp/Dummy.png";
 		this.s5Path = System.getProperty("user.home") + File.separator;
@@ -33,118 +82,251 @@ public class PrefManager {
 		this.origS6 = this.s6Path;
 		this.origS5 = this.s5Path;
 	}
-	
+
 	/**
 	 * Getter for Version
 	 * @return String
 	 */
-	public String getVersion() {
+	public synchronized String getVersion() {
 		return this.version;
 	}
-	
+
 	/**
 	 * Getter for the S6 path
 	 * @return String
 	 */
-	public String getS6Path() {
+	public synchronized String getS6Path() {
 		return this.s6Path;
 	}
-	
+
 	/**
 	 * Getter for the S5 path
 	 * @return String
 	 */
-	public String getS5Path() {
+	public synchronized String getS5Path() {
 		return this.s5Path;
 	}
-	
+
 	/**
-	 * Setter for the Version
+	 * Getter for the recipe that was used for the last saved icon
+	 * @return Recipe
+	 */
+	public synchronized Recipe getRecipe() {
+		return this.recipe;
+	}
+
+	/**
+	 * Setter for the Version, it is saved in the background
 	 * @param version String
-	 * @return true if saving successful
 	 */
-	public boolean setVersion(String version) {
+	public synchronized void setVersion(String version) {
 		this.version = version;
-		return this.saveData();
+		this.changed();
 	}
-	
+
 	/**
-	 * Setter for the S6 path
+	 * Setter for the S6 path, it is saved in the background
 	 * @param path String
-	 * @return true if saving successful
 	 */
-	public boolean setS6Path(String path) {
+	public synchronized void setS6Path(String path) {
 		this.s6Path = path;
-		return this.saveData();
+		this.changed();
 	}
-	
+
 	/**
-	 * Setter for the S5 path
+	 * Setter for the S5 path, it is saved in the background
 	 * @param path String
-	 * @return true if saving successful
 	 */
-	public boolean setS5Path(String path) {
+	public synchronized void setS5Path(String path) {
 		this.s5Path = path;
-		return this.saveData();
+		this.changed();
 	}
-	
+
+	/**
+	 * Setter for the recipe, it is saved in the background
+	 * @param recipe Recipe
+	 */
+	public synchronized void setRecipe(Recipe recipe) {
+		this.recipe = recipe;
+		this.changed();
+	}
+
 	/**
-	 * Load saved data from preferences file
-	 * @return true if successful
+	 * Load saved data from preferences file, a missing or broken file is not changed
+	 * @return true if the file holds the preferences of a former start
 	 */
 	public boolean loadData() {
-        String path = System.getProperty("user.home") + File.separator + "Documents/Siedelwood Mapiconator/prefs.txt";
-        String line = null;
-        try {
-            FileReader fileReader = new FileReader(path);
-            BufferedReader bufferedReader = new BufferedReader(fileReader);
-            int lineNumber = 0;
-            while ((line = bufferedReader.readLine()) != null) {
-                if (lineNumber == 0) {
-                	String[] values = line.split(";");
-                	if (values.length == 3) {
-                		String s6 = "Die Siedler - Aufstieg eines Knigreichs";
-                		String s5 = "Die Siedler - Das Erbe der Knige";
-                		this.version = ("S6".equals(values[0])) ? s6 : s5;
-                		this.s6Path = ("orig".equals(values[1])) ? this.origS6 : values[1];
-                		this.s5Path = ("orig".equals(values[2])) ? this.origS5 : values[2];
-                	} else {
-                		return false;
-                	}
-                }
-                lineNumber++;
-            }
-            bufferedReader.close();
-            return true;
-        } catch (FileNotFoundException ex) {
-            this.saveData();
-            System.err.println("Error");
-            return false;
-        } catch (IOException ex) {
-        	this.saveData();
-            System.err.println("Error");
-            return false;
-        }
-	}
-	
-	/**
-	 * Saves Data to the preferences file
-	 * @return true if saving was successful
-	 */
-	private boolean saveData() {
-		String v = ("Die Siedler - Aufstieg eines Knigreichs".equals(this.version)) ? "S6" : "S5";
-		String s6 = (this.origS6.equals(this.s6Path)) ? "orig" : this.s6Path;
-		String s5 = (this.origS5.equals(this.s5Path)) ? "orig" : this.s5Path;
-		String content = v + ";" + s6 + ";" + s5;
-		String path = System.getProperty("user.home") + File.separator + "Documents/Siedelwood Mapiconator/";
-		new File(path).mkdir();
-		StandardOpenOption option = StandardOpenOption.CREATE;
+		List<String> lines;
 		try {
-			Files.write(Paths.get(path + "prefs.txt"), content.getBytes(StandardCharsets.UTF_8), option);
-			return true;
+			lines = Files.readAllLines(this.file, StandardCharsets.UTF_8);
+		} catch (NoSuchFileException e) {
+			return false;
 		} catch (IOException e) {
+			System.err.println("Could not read the preferences: " + e.getMessage());
+			return false;
+		}
+		synchronized (this) {
+			if (!lines.isEmpty() && lines.get(0).startsWith("format=")) {
+				return this.parse(lines);
+			}
+			return this.parseFirstFormat(lines);
+		}
+	}
+
+	/**
+	 * reads the preferences out of key=value lines
+	 * @param lines of the file, the first one holds the format version
+	 * @return true if the version of the game was found
+	 */
+	private boolean parse(List<String> lines) {
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		for (String line : lines.subList(1, lines.size())) {
+			int split = line.indexOf('=');
+			if (split > 0 && !line.startsWith("#")) {
+				values.put(line.substring(0, split), line.substring(split + 1));
+			}
+		}
+		String game = values.remove("version");
+		String s6 = values.remove("s6Path");
+		String s5 = values.remove("s5Path");
+		String steps = values.remove("recipe");
+		if (s6 != null) {
+			this.s6Path = ORIGINAL.equals(s6) ? this.origS6 : s6;
+		}
+		if (s5 != null) {
+			this.s5Path = ORIGINAL.equals(s5) ? this.origS5 : s5;
+		}
+		if (steps != null) {
+			this.readRecipe(steps);
+		}
+		this.unknown.clear();
+		this.unknown.putAll(values);
+		if (game == null) {
+			return false;
+		}
+		this.version = "S6".equals(game) ? S6 : S5;
+		return true;
+	}
+
+	/**
+	 * reads the preferences written before the format had a version,
+	 * the first line holds game version and paths separated by semicolons and the second one the recipe
+	 * @param lines of the file
+	 * @return true if the first line is complete
+	 */
+	private boolean parseFirstFormat(List<String> lines) {
+		String[] values = lines.isEmpty() ? new String[0] : lines.get(0).split(";");
+		if (values.length != 3) {
+			System.err.println("Ignoring invalid preferences: " + this.file);
 			return false;
 		}
+		this.version = "S6".equals(values[0]) ? S6 : S5;
+		this.s6Path = ORIGINAL.equals(values[1]) ? this.origS6 : values[1];
+		this.s5Path = ORIGINAL.equals(values[2]) ? this.origS5 : values[2];
+		if (lines.size() > 1) {
+			this.readRecipe(lines.get(1));
+		}
+		return true;
+	}
+
+	/**
+	 * sets the recipe if it is valid
+	 * @param steps description of the recipe
+	 */
+	private void readRecipe(String steps) {
+		try {
+			this.recipe = Recipe.parse(steps);
+		} catch (IllegalArgumentException e) {
+			System.err.println("Ignoring invalid recipe: " + steps);
+		}
+	}
+
+	/**
+	 * writes the changes that are not saved yet and waits until they are on the disk
+	 */
+	public void flush() {
+		ScheduledFuture<?> task;
+		synchronized (this) {
+			task = this.pending;
+		}
+		if (task == null) {
+			return;
+		}
+		if (task.cancel(false)) {
+			this.saveData();
+		} else {
+			try {
+				task.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				System.err.println("Could not save the preferences: " + e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * plans to save the preferences, changes until then are saved together
+	 */
+	private void changed() {
+		if (this.pending != null) {
+			return;
+		}
+		if (!this.hooked) {
+			this.hooked = true;
+			Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "Preferences-Flush"));
+		}
+		this.pending = WRITER.schedule(this::saveData, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * describes the preferences in the current format
+	 * @return content of the file
+	 */
+	private String format() {
+		StringBuilder content = new StringBuilder("format=").append(FORMAT).append('\n');
+		content.append("version=").append(S6.equals(this.version) ? "S6" : "S5").append('\n');
+		content.append("s6Path=").append(this.origS6.equals(this.s6Path) ? ORIGINAL : this.s6Path).append('\n');
+		content.append("s5Path=").append(this.origS5.equals(this.s5Path) ? ORIGINAL : this.s5Path).append('\n');
+		content.append("recipe=").append(this.recipe).append('\n');
+		for (Map.Entry<String, String> entry : this.unknown.entrySet()) {
+			content.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+		}
+		return content.toString();
+	}
+
+	/**
+	 * Saves Data to the preferences file,
+	 * the content is written to a temporary file first that then replaces the file
+	 */
+	private void saveData() {
+		synchronized (this.writing) {
+			String content;
+			synchronized (this) {
+				this.pending = null;
+				content = this.format();
+			}
+			Path temporary = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+			try {
+				Files.createDirectories(this.file.toAbsolutePath().getParent());
+				try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+					ByteBuffer bytes = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+					while (bytes.hasRemaining()) {
+						channel.write(bytes);
+					}
+					channel.force(true);
+				}
+				try {
+					Files.move(temporary, this.file, StandardCopyOption.ATOMIC_MOVE,
+							StandardCopyOption.REPLACE_EXISTING);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(temporary, this.file, StandardCopyOption.REPLACE_EXISTING);
+				}
+			} catch (IOException e) {
+				System.err.println("Could not save the preferences: " + e.getMessage());
+			}
+		}
 	}
 
 }
@@ -0,0 +1,229 @@
+package eu.jlmb.MapIcon;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+
+import javax.swing.JComponent;
+
+/**
+ * Shows an image that is changed in place.
+ * The pixels are kept on an accelerated surface, a change only uploads and repaints the region it touched.
+ * The mouse wheel zooms into the image around the pointer, the surface is scaled while it is drawn,
+ * so the image itself is never resampled for the preview.
+ * @author Jean Baumgarten
+ */
+public class PreviewPanel extends JComponent {
+
+	/**
+	 * largest zoom factor
+	 */
+	public static final int MAX_ZOOM = 8;
+
+	private static final long serialVersionUID = 1L;
+
+	private transient BufferedImage image;
+	private transient VolatileImage surface;
+	private Rectangle pending;
+	private String text = "";
+	private int zoom = 1;
+	private double originX;
+	private double originY;
+
+	/**
+	 * Constructor of an empty preview
+	 */
+	public PreviewPanel() {
+		this.setOpaque(false);
+		this.addMouseWheelListener(this::wheelMoved);
+	}
+
+	/**
+	 * shows a new image, the whole surface is uploaded again
+	 * @param image of type TYPE_INT_ARGB, it may be changed afterwards if changed is called
+	 */
+	public void setImage(BufferedImage image) {
+		boolean resized = this.image == null || image == null || this.image.getWidth() != image.getWidth()
+				|| this.image.getHeight() != image.getHeight();
+		this.image = image;
+		this.pending = image == null ? null : new Rectangle(0, 0, image.getWidth(), image.getHeight());
+		if (resized) {
+			this.setZoom(1, 0, 0);
+			this.revalidate();
+		}
+		this.repaint();
+	}
+
+	/**
+	 * Getter for the image
+	 * @return the shown image, null if there is none
+	 */
+	public BufferedImage getImage() {
+		return this.image;
+	}
+
+	/**
+	 * tells the preview that pixels of the image changed, only their region is uploaded and repainted
+	 * @param region of the image that changed, null if nothing changed
+	 */
+	public void changed(Rectangle region) {
+		if (region == null || this.image == null) {
+			return;
+		}
+		Rectangle clipped = region.intersection(new Rectangle(0, 0, this.image.getWidth(), this.image.getHeight()));
+		if (clipped.isEmpty()) {
+			return;
+		}
+		this.pending = this.pending == null ? clipped : this.pending.union(clipped);
+		this.repaint(this.toView(clipped));
+	}
+
+	/**
+	 * shows a message above the image, like a label next to its icon
+	 * @param text to show, empty for none
+	 */
+	public void setText(String text) {
+		String shown = text == null ? "" : text;
+		if (shown.equals(this.text)) {
+			return;
+		}
+		this.text = shown;
+		this.revalidate();
+		this.repaint();
+	}
+
+	/**
+	 * Getter for the zoom
+	 * @return factor the image is enlarged by
+	 */
+	public int getZoom() {
+		return this.zoom;
+	}
+
+	/**
+	 * zooms into the image
+	 * @param zoom factor from 1 to MAX_ZOOM
+	 * @param x position in the component that stays on the same pixel of the image
+	 * @param y position in the component that stays on the same pixel of the image
+	 */
+	public void setZoom(int zoom, int x, int y) {
+		int factor = Math.max(1, Math.min(MAX_ZOOM, zoom));
+		double imageX = this.originX + (double) x / this.zoom;
+		double imageY = this.originY + (double) y / this.zoom;
+		this.zoom = factor;
+		if (this.image == null) {
+			this.originX = 0;
+			this.originY = 0;
+		} else {
+			double width = this.image.getWidth();
+			double height = this.image.getHeight();
+			this.originX = Math.max(0, Math.min(width - width / factor, imageX - (double) x / factor));
+			this.originY = Math.max(0, Math.min(height - height / factor, imageY - (double) y / factor));
+		}
+		this.repaint();
+	}
+
+	/**
+	 * zooms in or out with the mouse wheel
+	 * @param e event of the wheel
+	 */
+	private void wheelMoved(MouseWheelEvent e) {
+		this.setZoom(this.zoom - e.getWheelRotation(), e.getX(), e.getY());
+	}
+
+	/**
+	 * finds the part of the component that shows a region of the image
+	 * @param region of the image
+	 * @return the region in coordinates of the component, rounded outwards
+	 */
+	private Rectangle toView(Rectangle region) {
+		int x0 = (int) Math.floor((region.x - this.originX) * this.zoom);
+		int y0 = (int) Math.floor((region.y - this.originY) * this.zoom);
+		int x1 = (int) Math.ceil((region.x + region.width - this.originX) * this.zoom);
+		int y1 = (int) Math.ceil((region.y + region.height - this.originY) * this.zoom);
+		return new Rectangle(x0, y0, x1 - x0, y1 - y0);
+	}
+
+	@Override
+	public Dimension getPreferredSize() {
+		if (this.isPreferredSizeSet()) {
+			return super.getPreferredSize();
+		}
+		Dimension size = this.image == null ? new Dimension() : new Dimension(this.image.getWidth(), this.image.getHeight());
+		if (!this.text.isEmpty()) {
+			FontMetrics metrics = this.getFontMetrics(this.getFont());
+			size.width = Math.max(size.width, metrics.stringWidth(this.text) + 4);
+			size.height = Math.max(size.height, metrics.getHeight() + 4);
+		}
+		return size;
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		if (this.image != null) {
+			Graphics2D g2 = (Graphics2D) g.create();
+			try {
+				g2.scale(this.zoom, this.zoom);
+				g2.translate(-this.originX, -this.originY);
+				this.paintImage(g2);
+			} finally {
+				g2.dispose();
+			}
+		}
+		if (!this.text.isEmpty()) {
+			FontMetrics metrics = g.getFontMetrics(this.getFont());
+			g.setColor(new Color(255, 255, 255, 200));
+			g.fillRect(0, 0, metrics.stringWidth(this.text) + 4, metrics.getHeight() + 4);
+			g.setColor(this.getForeground());
+			g.setFont(this.getFont());
+			g.drawString(this.text, 2, 2 + metrics.getAscent());
+		}
+	}
+
+	/**
+	 * draws the accelerated surface, it is created again if its contents were lost
+	 * @param g graphics in coordinates of the image
+	 */
+	private void paintImage(Graphics2D g) {
+		GraphicsConfiguration configuration = this.getGraphicsConfiguration();
+		if (configuration == null) {
+			// not on a screen, like when the preview is printed into an image
+			g.drawImage(this.image, 0, 0, null);
+			return;
+		}
+		int width = this.image.getWidth();
+		int height = this.image.getHeight();
+		do {
+			int state = this.surface == null ? VolatileImage.IMAGE_INCOMPATIBLE : this.surface.validate(configuration);
+			if (state == VolatileImage.IMAGE_INCOMPATIBLE || this.surface.getWidth() != width
+					|| this.surface.getHeight() != height) {
+				if (this.surface != null) {
+					this.surface.flush();
+				}
+				this.surface = configuration.createCompatibleVolatileImage(width, height, Transparency.TRANSLUCENT);
+				this.pending = new Rectangle(0, 0, width, height);
+			} else if (state == VolatileImage.IMAGE_RESTORED) {
+				this.pending = new Rectangle(0, 0, width, height);
+			}
+			if (this.pending != null) {
+				Graphics2D upload = this.surface.createGraphics();
+				upload.setComposite(AlphaComposite.Src);
+				upload.setClip(this.pending);
+				upload.drawImage(this.image, 0, 0, null);
+				upload.dispose();
+				this.pending = null;
+			}
+			g.drawImage(this.surface, 0, 0, null);
+		} while (this.surface.contentsLost());
+	}
+
+}
@@ -0,0 +1,377 @@
+package eu.jlmb.MapIcon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reduces the colors of an image to a palette of at most 256 entries with an octree over alpha, red, green and blue.
+ * The tree is reduced while it is built, so it never holds more leaves than the palette has entries.
+ * Fully transparent pixels share one palette entry, the other pixels are mapped to the nearest entry.
+ * @author Jean Baumgarten
+ */
+public final class Quantizer {
+
+	/**
+	 * most entries a PNG palette can hold
+	 */
+	public static final int MAX_COLORS = 256;
+
+	private static final int DEPTH = 8;
+	private static final int CACHE_SIZE = 4096;
+	private static final int REFINEMENTS = 2;
+
+	private final int limit;
+	private final Node root;
+	private final Node[] reducible;
+	private int leaves;
+
+	/**
+	 * Constructor
+	 * @param limit number of leaves the tree may have
+	 */
+	private Quantizer(int limit) {
+		this.limit = limit;
+		this.reducible = new Node[DEPTH];
+		this.root = new Node();
+		this.reducible[0] = this.root;
+	}
+
+	/**
+	 * quantizes an image
+	 * @param raster of the image
+	 * @param maxColors size of the palette from 1 to 256
+	 * @return the palette and the palette index of every pixel
+	 */
+	public static Palette quantize(PixelRaster raster, int maxColors) {
+		if (maxColors < 1 || maxColors > MAX_COLORS) {
+			throw new IllegalArgumentException("Palette size has to be between 1 and 256: " + maxColors);
+		}
+		int[] data = raster.getData();
+		int width = raster.getWidth();
+		int height = raster.getHeight();
+		boolean transparent = false;
+		for (int y = 0; y < height && !transparent; y++) {
+			int index = raster.rowStart(y);
+			for (int x = 0; x < width; x++) {
+				if (data[index + x] >>> 24 == 0) {
+					transparent = true;
+					break;
+				}
+			}
+		}
+		Quantizer quantizer = new Quantizer(Math.max(1, transparent ? maxColors - 1 : maxColors));
+		for (int y = 0; y < height; y++) {
+			int index = raster.rowStart(y);
+			for (int x = 0; x < width; x++) {
+				int pixel = data[index + x];
+				if (pixel >>> 24 != 0) {
+					quantizer.add(pixel);
+				}
+			}
+		}
+		return quantizer.map(raster, transparent);
+	}
+
+	/**
+	 * puts a pixel into the tree and reduces the tree if it has too many leaves
+	 * @param pixel with an alpha above 0
+	 */
+	private void add(int pixel) {
+		Node node = this.root;
+		for (int level = 0; level < DEPTH && !node.leaf; level++) {
+			int shift = 31 - level;
+			int child = (pixel >>> shift & 1) << 3 | (pixel >>> (shift - 8) & 1) << 2
+					| (pixel >>> (shift - 16) & 1) << 1 | (pixel >>> (shift - 24) & 1);
+			if (node.children == null) {
+				node.children = new Node[16];
+			}
+			Node next = node.children[child];
+			if (next == null) {
+				next = new Node();
+				node.children[child] = next;
+				node.childCount++;
+				if (level + 1 == DEPTH) {
+					next.leaf = true;
+					this.leaves++;
+				} else {
+					next.next = this.reducible[level + 1];
+					this.reducible[level + 1] = next;
+				}
+			}
+			node = next;
+		}
+		node.add(pixel);
+		while (this.leaves > this.limit) {
+			this.reduce();
+		}
+	}
+
+	/**
+	 * merges the children of the deepest node that still has children into the node itself
+	 */
+	private void reduce() {
+		int level = DEPTH - 1;
+		while (this.reducible[level] == null) {
+			level--;
+		}
+		Node node = this.reducible[level];
+		this.reducible[level] = node.next;
+		for (Node child : node.children) {
+			if (child != null) {
+				node.count += child.count;
+				node.alpha += child.alpha;
+				node.red += child.red;
+				node.green += child.green;
+				node.blue += child.blue;
+			}
+		}
+		node.children = null;
+		node.leaf = true;
+		this.leaves -= node.childCount - 1;
+	}
+
+	/**
+	 * builds the palette out of the leaves and maps every pixel to its nearest entry,
+	 * every refinement moves the entries to the mean of their pixels and maps the pixels again.
+	 * The entries are sorted by alpha at the end, so that the transparency chunk stays short
+	 * @param raster of the image
+	 * @param transparent true if a fully transparent entry is needed
+	 * @return the palette
+	 */
+	private Palette map(PixelRaster raster, boolean transparent) {
+		List<Node> found = new ArrayList<Node>();
+		collect(this.root, found);
+		int[] colors = new int[found.size() + (transparent ? 1 : 0)];
+		int n = 0;
+		if (transparent) {
+			colors[n++] = 0;
+		}
+		for (Node leaf : found) {
+			colors[n++] = leaf.color();
+		}
+		byte[] indices = new byte[raster.getWidth() * raster.getHeight()];
+		long[] sums = new long[5 * colors.length];
+		double squares = assign(raster, colors, indices, sums);
+		for (int pass = 0; pass < REFINEMENTS; pass++) {
+			for (int i = 0; i < colors.length; i++) {
+				long count = sums[5 * i];
+				if (count > 0 && colors[i] >>> 24 != 0) {
+					long half = count / 2;
+					colors[i] = (int) ((sums[5 * i + 1] + half) / count) << 24
+							| (int) ((sums[5 * i + 2] + half) / count) << 16
+							| (int) ((sums[5 * i + 3] + half) / count) << 8 | (int) ((sums[5 * i + 4] + half) / count);
+				}
+			}
+			Arrays.fill(sums, 0);
+			squares = assign(raster, colors, indices, sums);
+		}
+
+		// sorted by alpha first, the color breaks ties so that the palette does not depend on the tree order
+		long[] keyed = new long[colors.length];
+		for (int i = 0; i < colors.length; i++) {
+			keyed[i] = (long) (colors[i] >>> 24) << 40 | (colors[i] & 0xFFFFFFL) << 8 | i;
+		}
+		Arrays.sort(keyed);
+		int[] sorted = new int[colors.length];
+		byte[] position = new byte[colors.length];
+		for (int i = 0; i < keyed.length; i++) {
+			int old = (int) (keyed[i] & 0xFF);
+			sorted[i] = colors[old];
+			position[old] = (byte) i;
+		}
+		for (int i = 0; i < indices.length; i++) {
+			indices[i] = position[indices[i] & 0xFF];
+		}
+		double error = Math.sqrt(squares / (4.0 * Math.max(1, indices.length)));
+		return new Palette(sorted, indices, error);
+	}
+
+	/**
+	 * maps every pixel to the nearest palette entry
+	 * @param raster of the image
+	 * @param colors of the palette
+	 * @param indices receives the palette index of every pixel, row after row
+	 * @param sums receives the number of pixels and the sums of their channels for every entry
+	 * @return sum of the squared differences of the premultiplied channels
+	 */
+	private static double assign(PixelRaster raster, int[] colors, byte[] indices, long[] sums) {
+		int[] premultiplied = new int[colors.length];
+		for (int i = 0; i < colors.length; i++) {
+			premultiplied[i] = premultiply(colors[i]);
+		}
+		int[] cacheKeys = new int[CACHE_SIZE];
+		int[] cacheValues = new int[CACHE_SIZE];
+		Arrays.fill(cacheValues, -1);
+		int[] data = raster.getData();
+		int width = raster.getWidth();
+		double squares = 0;
+		for (int y = 0; y < raster.getHeight(); y++) {
+			int index = raster.rowStart(y);
+			for (int x = 0; x < width; x++) {
+				int pixel = data[index + x];
+				if (pixel >>> 24 == 0) {
+					pixel = 0;
+				}
+				int slot = (pixel * 0x9E3779B1) >>> 20;
+				int entry;
+				if (cacheValues[slot] >= 0 && cacheKeys[slot] == pixel) {
+					entry = cacheValues[slot];
+				} else {
+					entry = nearest(premultiply(pixel), premultiplied);
+					cacheKeys[slot] = pixel;
+					cacheValues[slot] = entry;
+				}
+				indices[y * width + x] = (byte) entry;
+				squares += distance(premultiply(pixel), premultiplied[entry]);
+				sums[5 * entry]++;
+				sums[5 * entry + 1] += pixel >>> 24;
+				sums[5 * entry + 2] += (pixel >> 16) & 0xFF;
+				sums[5 * entry + 3] += (pixel >> 8) & 0xFF;
+				sums[5 * entry + 4] += pixel & 0xFF;
+			}
+		}
+		return squares;
+	}
+
+	/**
+	 * finds all leaves of the tree
+	 * @param node to start with
+	 * @param found receives the leaves
+	 */
+	private static void collect(Node node, List<Node> found) {
+		if (node.leaf) {
+			found.add(node);
+		} else if (node.children != null) {
+			for (Node child : node.children) {
+				if (child != null) {
+					collect(child, found);
+				}
+			}
+		}
+	}
+
+	/**
+	 * finds the palette entry with the smallest distance
+	 * @param pixel premultiplied color
+	 * @param premultiplied colors of the palette entries
+	 * @return index of the entry
+	 */
+	private static int nearest(int pixel, int[] premultiplied) {
+		int best = 0;
+		long bestDistance = Long.MAX_VALUE;
+		for (int i = 0; i < premultiplied.length && bestDistance > 0; i++) {
+			long d = distance(pixel, premultiplied[i]);
+			if (d < bestDistance) {
+				bestDistance = d;
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * squared distance of two premultiplied colors
+	 * @param a first color
+	 * @param b second color
+	 * @return sum of the squared channel differences
+	 */
+	private static long distance(int a, int b) {
+		long sum = 0;
+		for (int shift = 0; shift < 32; shift += 8) {
+			long d = ((a >>> shift) & 0xFF) - ((b >>> shift) & 0xFF);
+			sum += d * d;
+		}
+		return sum;
+	}
+
+	/**
+	 * multiplies the color channels with alpha
+	 * @param pixel ARGB
+	 * @return premultiplied ARGB
+	 */
+	private static int premultiply(int pixel) {
+		int alpha = pixel >>> 24;
+		return alpha << 24 | ((pixel >> 16) & 0xFF) * alpha / 255 << 16
+				| ((pixel >> 8) & 0xFF) * alpha / 255 << 8 | (pixel & 0xFF) * alpha / 255;
+	}
+
+	/**
+	 * node of the octree, a leaf sums up the pixels that fell into it
+	 */
+	private static final class Node {
+
+		private Node[] children;
+		private Node next;
+		private int childCount;
+		private boolean leaf;
+		private long count;
+		private long alpha;
+		private long red;
+		private long green;
+		private long blue;
+
+		/**
+		 * adds a pixel to the sums
+		 * @param pixel ARGB
+		 */
+		void add(int pixel) {
+			this.count++;
+			this.alpha += pixel >>> 24;
+			this.red += (pixel >> 16) & 0xFF;
+			this.green += (pixel >> 8) & 0xFF;
+			this.blue += pixel & 0xFF;
+		}
+
+		/**
+		 * mean color of the pixels of the leaf
+		 * @return ARGB
+		 */
+		int color() {
+			long half = this.count / 2;
+			return (int) ((this.alpha + half) / this.count) << 24 | (int) ((this.red + half) / this.count) << 16
+					| (int) ((this.green + half) / this.count) << 8 | (int) ((this.blue + half) / this.count);
+		}
+	}
+
+	/**
+	 * result of a quantization
+	 */
+	public static final class Palette {
+
+		private final int[] colors;
+		private final byte[] indices;
+		private final double error;
+
+		private Palette(int[] colors, byte[] indices, double error) {
+			this.colors = colors;
+			this.indices = indices;
+			this.error = error;
+		}
+
+		/**
+		 * Getter for the palette
+		 * @return ARGB colors sorted by alpha
+		 */
+		public int[] getColors() {
+			return this.colors;
+		}
+
+		/**
+		 * Getter for the pixels
+		 * @return palette index of every pixel, row after row
+		 */
+		public byte[] getIndices() {
+			return this.indices;
+		}
+
+		/**
+		 * Getter for the error of the quantization
+		 * @return root mean square difference of the premultiplied channels, from 0 to 255
+		 */
+		public double getError() {
+			return this.error;
+		}
+	}
+
+}
@@ -0,0 +1,349 @@
+package eu.jlmb.MapIcon;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Compositing engine that works directly on the pixel arrays of ARGB rasters.
+ * No objects are created per pixel, circles are handled as one span per row.
+ * @author Jean Baumgarten
+ */
+public final class RasterCompositor {
+
+	/**
+	 * ways to put a frame pixel onto an image pixel
+	 */
+	public enum Blend {
+
+		/**
+		 * the old way, opaque frame pixels replace the image, the others are averaged with it
+		 * and are skipped by overlap
+		 */
+		AVERAGE,
+
+		/**
+		 * Porter-Duff source over, every frame pixel covers the image according to its alpha
+		 */
+		SOURCE_OVER;
+
+		/**
+		 * reads a blend name like source-over
+		 * @param name of the blend, case is ignored
+		 * @return the blend
+		 */
+		public static Blend parse(String name) {
+			try {
+				return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Unknown blend: " + name);
+			}
+		}
+	}
+
+	/**
+	 * MULTIPLY[(a << 8) | c] is a * c / 255 rounded
+	 */
+	private static final byte[] MULTIPLY = new byte[256 * 256];
+
+	/**
+	 * RECIPROCAL[a] is 2^32 / a rounded up, dividing by a becomes a multiplication and a shift
+	 */
+	private static final long[] RECIPROCAL = new long[256];
+
+	static {
+		for (int a = 0; a < 256; a++) {
+			for (int c = 0; c < 256; c++) {
+				MULTIPLY[(a << 8) | c] = (byte) ((a * c + 127) / 255);
+			}
+			if (a > 0) {
+				RECIPROCAL[a] = ((1L << 32) + a - 1) / a;
+			}
+		}
+	}
+
+	private RasterCompositor() {
+	}
+
+	/**
+	 * puts the frame onto the image
+	 * @param image to be changed
+	 * @param frame to put on the image
+	 * @param blend used for the frame pixels
+	 */
+	public static void overlap(PixelRaster image, PixelRaster frame, Blend blend) {
+		int[] dst = image.getData();
+		int[] src = frame.getData();
+		int width = Math.min(image.getWidth(), frame.getWidth());
+		int height = Math.min(image.getHeight(), frame.getHeight());
+		RowBands.run(width, height, (from, to) -> {
+			for (int y = from; y < to; y++) {
+				overlapRow(dst, image.rowStart(y), src, frame.rowStart(y), 0, width, blend);
+			}
+		});
+	}
+
+	/**
+	 * removes everything outside the frame circle and puts the frame onto the image
+	 * @param image to be changed
+	 * @param frame to put on the image
+	 * @param geometry of the frame
+	 * @param blend used for the frame pixels inside the circle
+	 */
+	public static void cutOut(PixelRaster image, PixelRaster frame, FrameGeometry geometry, Blend blend) {
+		int[] dst = image.getData();
+		int[] src = frame.getData();
+		CircleMask mask = geometry.frameMask(image.getWidth(), image.getHeight());
+		int width = image.getWidth();
+		RowBands.run(width, image.getHeight(), (from, to) -> {
+			for (int y = from; y < to; y++) {
+				int covered = (y < frame.getHeight()) ? Math.min(width, frame.getWidth()) : 0;
+				int s = (y < frame.getHeight()) ? frame.rowStart(y) : 0;
+				cutOutRow(dst, image.rowStart(y), src, s, mask.start(y), mask.end(y), covered, 0, width, blend);
+			}
+		});
+	}
+
+	/**
+	 * removes everything outside the landscape circle
+	 * @param image to be changed
+	 * @param geometry of the frame
+	 */
+	public static void cutOutLandscape(PixelRaster image, FrameGeometry geometry) {
+		int[] dst = image.getData();
+		CircleMask mask = geometry.landscapeMask(image.getWidth(), image.getHeight());
+		int width = image.getWidth();
+		RowBands.run(width, image.getHeight(), (from, to) -> {
+			for (int y = from; y < to; y++) {
+				landscapeRow(dst, image.rowStart(y), mask.start(y), mask.end(y), 0, width);
+			}
+		});
+	}
+
+	/**
+	 * applies a sequence of operations in a single pass over the image,
+	 * the result is the same as applying them one after another.
+	 * Every row is read once and all steps are applied to it while it is in the cache,
+	 * steps before the last LANDSCAPE step only treat the part of the row it keeps.
+	 * @param image to be changed
+	 * @param operations in the order they are applied
+	 * @param frames used by the operations, one per operation, null for LANDSCAPE
+	 * @param geometry of the frames
+	 * @param blend used for the frame pixels
+	 */
+	public static void fused(PixelRaster image, Operation[] operations, PixelRaster[] frames,
+			FrameGeometry geometry, Blend blend) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		CircleMask frameMask = geometry.frameMask(width, height);
+		CircleMask landscapeMask = geometry.landscapeMask(width, height);
+		int lastClear = lastLandscape(operations);
+		int[] dst = image.getData();
+		RowBands.run(width, height, (first, end) -> {
+			for (int y = first; y < end; y++) {
+				int d = image.rowStart(y);
+				int keepStart = landscapeMask.start(y);
+				int keepEnd = landscapeMask.end(y);
+				for (int k = 0; k < operations.length; k++) {
+					int from = (k < lastClear) ? keepStart : 0;
+					int to = (k < lastClear) ? keepEnd : width;
+					PixelRaster frame = frames[k];
+					boolean covers = frame != null && y < frame.getHeight();
+					int covered = covers ? Math.min(width, frame.getWidth()) : 0;
+					int s = covers ? frame.rowStart(y) : 0;
+					switch (operations[k]) {
+					case OVERLAP:
+						overlapRow(dst, d, covers ? frame.getData() : null, s, from, Math.min(to, covered), blend);
+						break;
+					case CUTOUT:
+						cutOutRow(dst, d, frame.getData(), s, frameMask.start(y), frameMask.end(y), covered,
+								from, to, blend);
+						break;
+					default:
+						landscapeRow(dst, d, keepStart, keepEnd, from, to);
+						break;
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * finds the last step that cuts out the landscape
+	 * @param operations of the recipe
+	 * @return index of the step, -1 if there is none
+	 */
+	private static int lastLandscape(Operation[] operations) {
+		for (int k = operations.length - 1; k >= 0; k--) {
+			if (operations[k] == Operation.LANDSCAPE) {
+				return k;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * puts a part of a frame row onto the image
+	 * @param dst pixels of the image
+	 * @param d index of the row in the image
+	 * @param src pixels of the frame
+	 * @param s index of the row in the frame
+	 * @param from first x position
+	 * @param to x position after the part, not wider than the frame
+	 * @param blend AVERAGE only takes the opaque pixels, SOURCE_OVER blends all of them
+	 */
+	private static void overlapRow(int[] dst, int d, int[] src, int s, int from, int to, Blend blend) {
+		if (blend == Blend.SOURCE_OVER) {
+			for (int x = from; x < to; x++) {
+				int color = src[s + x];
+				if ((color >>> 24) != 0) {
+					dst[d + x] = over(dst[d + x], color);
+				}
+			}
+			return;
+		}
+		for (int x = from; x < to; x++) {
+			int color = src[s + x];
+			if ((color >>> 24) == 255) {
+				dst[d + x] = color;
+			}
+		}
+	}
+
+	/**
+	 * treats a part of a row for the cut out,
+	 * inside the circle the frame is combined with the image, outside only the frame is kept
+	 * @param dst pixels of the image
+	 * @param d index of the row in the image
+	 * @param src pixels of the frame
+	 * @param s index of the row in the frame
+	 * @param start first x position inside the circle
+	 * @param end x position after the circle
+	 * @param covered width of the row that is covered by the frame
+	 * @param from first x position of the part
+	 * @param to x position after the part
+	 * @param blend used inside the circle
+	 */
+	private static void cutOutRow(int[] dst, int d, int[] src, int s, int start, int end, int covered,
+			int from, int to, Blend blend) {
+		cutOutside(dst, d, src, s, from, Math.min(start, to), covered);
+		int insideEnd = Math.min(Math.min(end, to), covered);
+		if (blend == Blend.SOURCE_OVER) {
+			for (int x = Math.max(start, from); x < insideEnd; x++) {
+				int color = src[s + x];
+				if ((color >>> 24) != 0) {
+					dst[d + x] = over(dst[d + x], color);
+				}
+			}
+		} else {
+			for (int x = Math.max(start, from); x < insideEnd; x++) {
+				int color = src[s + x];
+				if ((color >>> 24) != 0) {
+					dst[d + x] = combine(dst[d + x], color);
+				}
+			}
+		}
+		cutOutside(dst, d, src, s, Math.max(end, from), to, covered);
+	}
+
+	/**
+	 * treats a part of a row outside the circle, pixels of the frame are taken over
+	 * and everything else becomes transparent
+	 * @param dst pixels of the image
+	 * @param d index of the row in the image
+	 * @param src pixels of the frame
+	 * @param s index of the row in the frame
+	 * @param from first x position
+	 * @param to x position after the part
+	 * @param covered width of the row that is covered by the frame
+	 */
+	private static void cutOutside(int[] dst, int d, int[] src, int s, int from, int to, int covered) {
+		int frameEnd = Math.min(to, covered);
+		for (int x = from; x < frameEnd; x++) {
+			int color = src[s + x];
+			dst[d + x] = ((color >>> 24) != 0) ? color : 0;
+		}
+		int clearStart = Math.max(from, frameEnd);
+		if (clearStart < to) {
+			Arrays.fill(dst, d + clearStart, d + to, 0);
+		}
+	}
+
+	/**
+	 * clears a part of a row outside the landscape circle
+	 * @param dst pixels of the image
+	 * @param d index of the row in the image
+	 * @param start first x position inside the circle
+	 * @param end x position after the circle
+	 * @param from first x position of the part
+	 * @param to x position after the part
+	 */
+	private static void landscapeRow(int[] dst, int d, int start, int end, int from, int to) {
+		if (start == end) {
+			if (from < to) {
+				Arrays.fill(dst, d + from, d + to, 0);
+			}
+			return;
+		}
+		if (from < Math.min(start, to)) {
+			Arrays.fill(dst, d + from, d + Math.min(start, to), 0);
+		}
+		if (Math.max(end, from) < to) {
+			Arrays.fill(dst, d + Math.max(end, from), d + to, 0);
+		}
+	}
+
+	/**
+	 * generates a color out of the two given ones
+	 * @param back color of the background
+	 * @param front color of the foreground
+	 * @return the combined color
+	 */
+	public static int combine(int back, int front) {
+		int fa = front >>> 24;
+		if (fa == 255) {
+			return front;
+		}
+		int na = (fa + (back >>> 24)) >> 1;
+		int nr = (((front >> 16) & 0xFF) + ((back >> 16) & 0xFF)) >> 1;
+		int ng = (((front >> 8) & 0xFF) + ((back >> 8) & 0xFF)) >> 1;
+		int nb = ((front & 0xFF) + (back & 0xFF)) >> 1;
+		return (na << 24) | (nr << 16) | (ng << 8) | nb;
+	}
+
+	/**
+	 * puts the front color over the back color like Porter-Duff source over,
+	 * both colors and the result are not premultiplied.
+	 * Over an opaque background red and blue are blended together in one int and divided by 255
+	 * with shifts, otherwise the tables replace the multiplications and divisions by the alpha.
+	 * @param back color of the background
+	 * @param front color of the foreground
+	 * @return the combined color
+	 */
+	public static int over(int back, int front) {
+		int fa = front >>> 24;
+		int ba = back >>> 24;
+		if (fa == 255 || ba == 0) {
+			return front;
+		}
+		if (fa == 0) {
+			return back;
+		}
+		if (ba == 255) {
+			int ia = 255 - fa;
+			int rb = (front & 0xFF00FF) * fa + (back & 0xFF00FF) * ia + 0x800080;
+			rb = ((rb + ((rb >>> 8) & 0xFF00FF)) >>> 8) & 0xFF00FF;
+			int g = ((front >> 8) & 0xFF) * fa + ((back >> 8) & 0xFF) * ia + 128;
+			g = (g + (g >> 8)) >> 8;
+			return 0xFF000000 | rb | (g << 8);
+		}
+		int bw = MULTIPLY[(ba << 8) | (255 - fa)] & 0xFF;
+		int na = fa + bw;
+		long reciprocal = RECIPROCAL[na];
+		long half = na >> 1;
+		long nr = ((((front >> 16) & 0xFF) * fa + ((back >> 16) & 0xFF) * bw + half) * reciprocal) >>> 32;
+		long ng = ((((front >> 8) & 0xFF) * fa + ((back >> 8) & 0xFF) * bw + half) * reciprocal) >>> 32;
+		long nb = (((front & 0xFF) * fa + (back & 0xFF) * bw + half) * reciprocal) >>> 32;
+		return (na << 24) | ((int) nr << 16) | ((int) ng << 8) | (int) nb;
+	}
+
+}
@@ -0,0 +1,184 @@
+package eu.jlmb.MapIcon;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Recorded sequence of operations, each one with the frame it uses.
+ * A recipe is written as text like "frame=GoldenRing,cutout,landscape",
+ * a frame entry is valid for all following operations.
+ * @author Jean Baumgarten
+ */
+public final class Recipe {
+
+	/**
+	 * recipe without any operation
+	 */
+	public static final Recipe EMPTY = new Recipe(Collections.<Step>emptyList());
+
+	private static final String FRAME_PREFIX = "frame=";
+
+	private final List<Step> steps;
+
+	private Recipe(List<Step> steps) {
+		this.steps = steps;
+	}
+
+	/**
+	 * creates a recipe that uses the same frame for every operation
+	 * @param frameName name of the frame, like GoldenRing
+	 * @param operations in the order they are applied
+	 * @return the recipe
+	 */
+	public static Recipe of(String frameName, List<Operation> operations) {
+		List<Step> steps = new ArrayList<Step>();
+		for (Operation operation : operations) {
+			steps.add(new Step(operation, frameName));
+		}
+		return new Recipe(Collections.unmodifiableList(steps));
+	}
+
+	/**
+	 * reads a recipe out of a text
+	 * @param text like "frame=GoldenRing,cutout,landscape"
+	 * @return the recipe
+	 */
+	public static Recipe parse(String text) {
+		List<Step> steps = new ArrayList<Step>();
+		String frameName = "Standard";
+		for (String entry : text.split(",")) {
+			String trimmed = entry.trim();
+			if (trimmed.startsWith(FRAME_PREFIX)) {
+				frameName = trimmed.substring(FRAME_PREFIX.length()).trim();
+				if (frameName.isEmpty()) {
+					throw new IllegalArgumentException("Missing frame name in recipe: " + text);
+				}
+			} else if (!trimmed.isEmpty()) {
+				steps.add(new Step(Operation.parse(trimmed), frameName));
+			}
+		}
+		return new Recipe(Collections.unmodifiableList(steps));
+	}
+
+	/**
+	 * creates a recipe with one more operation at the end
+	 * @param operation to add
+	 * @param frameName of the frame the operation uses
+	 * @return the longer recipe, this recipe is not changed
+	 */
+	public Recipe then(Operation operation, String frameName) {
+		List<Step> steps = new ArrayList<Step>(this.steps);
+		steps.add(new Step(operation, frameName));
+		return new Recipe(Collections.unmodifiableList(steps));
+	}
+
+	/**
+	 * creates a recipe with the same operations that all use the given frame
+	 * @param frameName of the frame
+	 * @return the recipe
+	 */
+	public Recipe withFrame(String frameName) {
+		List<Operation> operations = new ArrayList<Operation>();
+		for (Step step : this.steps) {
+			operations.add(step.getOperation());
+		}
+		return of(frameName, operations);
+	}
+
+	/**
+	 * Getter for the steps
+	 * @return the steps in the order they are applied
+	 */
+	public List<Step> getSteps() {
+		return this.steps;
+	}
+
+	/**
+	 * names of all frames used by the recipe
+	 * @return the names in the order they are first used
+	 */
+	public Set<String> getFrameNames() {
+		Set<String> names = new LinkedHashSet<String>();
+		for (Step step : this.steps) {
+			if (step.getOperation() != Operation.LANDSCAPE) {
+				names.add(step.getFrameName());
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * tells if the recipe does nothing
+	 * @return true if there is no step
+	 */
+	public boolean isEmpty() {
+		return this.steps.isEmpty();
+	}
+
+	/**
+	 * writes the recipe in the form read by parse
+	 * @return text like "frame=GoldenRing,cutout,landscape"
+	 */
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		String frameName = null;
+		for (Step step : this.steps) {
+			if (step.getOperation() != Operation.LANDSCAPE && !step.getFrameName().equals(frameName)) {
+				frameName = step.getFrameName();
+				text.append(text.length() == 0 ? "" : ",").append(FRAME_PREFIX).append(frameName);
+			}
+			text.append(text.length() == 0 ? "" : ",").append(step.getOperation().getKey());
+		}
+		return text.toString();
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof Recipe && this.toString().equals(other.toString());
+	}
+
+	@Override
+	public int hashCode() {
+		return this.toString().hashCode();
+	}
+
+	/**
+	 * One operation of a recipe together with its frame
+	 */
+	public static final class Step {
+
+		private final Operation operation;
+		private final String frameName;
+
+		/**
+		 * Constructor
+		 * @param operation that is applied
+		 * @param frameName of the frame the operation uses
+		 */
+		public Step(Operation operation, String frameName) {
+			this.operation = operation;
+			this.frameName = frameName;
+		}
+
+		/**
+		 * Getter for the operation
+		 * @return the operation
+		 */
+		public Operation getOperation() {
+			return this.operation;
+		}
+
+		/**
+		 * Getter for the name of the frame
+		 * @return name like GoldenRing
+		 */
+		public String getFrameName() {
+			return this.frameName;
+		}
+	}
+
+}
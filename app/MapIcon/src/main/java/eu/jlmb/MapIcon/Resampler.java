@@ -0,0 +1,340 @@
+package eu.jlmb.MapIcon;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Separable resampler for ARGB rasters.
+ * The weights of every source and target size are computed once and reused,
+ * both passes work on premultiplied float arrays.
+ * @author Jean Baumgarten
+ */
+public final class Resampler {
+
+	/**
+	 * filters that can be used for resampling
+	 */
+	public enum Filter {
+
+		/**
+		 * averages all covered pixels weighted by their covered area, like the old area averaging
+		 */
+		BOX(0.5) {
+			@Override
+			double weight(double x) {
+				return (x > -0.5 && x <= 0.5) ? 1.0 : 0.0;
+			}
+		},
+
+		/**
+		 * linear interpolation between neighbouring pixels
+		 */
+		BILINEAR(1.0) {
+			@Override
+			double weight(double x) {
+				double distance = Math.abs(x);
+				return (distance < 1.0) ? 1.0 - distance : 0.0;
+			}
+		},
+
+		/**
+		 * windowed sinc with three lobes, keeps edges sharp
+		 */
+		LANCZOS3(3.0) {
+			@Override
+			double weight(double x) {
+				if (x == 0.0) {
+					return 1.0;
+				}
+				if (x <= -3.0 || x >= 3.0) {
+					return 0.0;
+				}
+				double px = Math.PI * x;
+				return 3.0 * Math.sin(px) * Math.sin(px / 3.0) / (px * px);
+			}
+		};
+
+		private final double support;
+
+		Filter(double support) {
+			this.support = support;
+		}
+
+		/**
+		 * value of the filter function
+		 * @param x distance to the center
+		 * @return the weight
+		 */
+		abstract double weight(double x);
+
+		/**
+		 * finds the filter of the given name
+		 * @param name like "lanczos3"
+		 * @return the filter
+		 */
+		public static Filter parse(String name) {
+			try {
+				return valueOf(name.trim().toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Unknown filter: " + name);
+			}
+		}
+	}
+
+	private static final int CACHE_LIMIT = 64;
+	private static final Map<String, Kernel> KERNELS = new ConcurrentHashMap<String, Kernel>();
+	private static final ThreadLocal<float[]> ROW = ThreadLocal.withInitial(() -> new float[0]);
+	private static final ThreadLocal<float[]> SUMS = ThreadLocal.withInitial(() -> new float[0]);
+
+	private Resampler() {
+	}
+
+	/**
+	 * creates a resized copy of a picture
+	 * @param picture to resize
+	 * @param width of the new picture
+	 * @param height of the new picture
+	 * @param filter used for resampling
+	 * @return a new image of type TYPE_INT_ARGB
+	 */
+	public static BufferedImage resize(BufferedImage picture, int width, int height, Filter filter) {
+		BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		PixelRaster source = PixelRaster.of(PixelRaster.toArgb(picture));
+		boolean parallel = RowBands.isParallel(source.getWidth(), source.getHeight());
+		resample(source, PixelRaster.of(target), filter, parallel);
+		return target;
+	}
+
+	/**
+	 * resamples the source into the target raster
+	 * @param source raster to read
+	 * @param target raster to write, its size decides the scale
+	 * @param filter used for resampling
+	 * @param parallel true if the rows should be split across threads
+	 */
+	public static void resample(PixelRaster source, PixelRaster target, Filter filter, boolean parallel) {
+		int srcWidth = source.getWidth();
+		int srcHeight = source.getHeight();
+		int dstWidth = target.getWidth();
+		Kernel horizontal = kernel(srcWidth, dstWidth, filter);
+		Kernel vertical = kernel(srcHeight, target.getHeight(), filter);
+		float[] between = BufferPool.getDefault().takeFloats(dstWidth * srcHeight * 4);
+		IntStream rows = IntStream.range(0, srcHeight);
+		(parallel ? rows.parallel() : rows).forEach(y -> horizontalPass(source, y, horizontal, between));
+		IntStream targetRows = IntStream.range(0, target.getHeight());
+		(parallel ? targetRows.parallel() : targetRows)
+				.forEach(y -> verticalPass(between, dstWidth, y, vertical, target));
+		BufferPool.getDefault().release(between);
+	}
+
+	/**
+	 * resamples one row of the source into the intermediate buffer
+	 * @param source raster to read
+	 * @param y is the row
+	 * @param kernel of the horizontal pass
+	 * @param between intermediate buffer with premultiplied channels
+	 */
+	private static void horizontalPass(PixelRaster source, int y, Kernel kernel, float[] between) {
+		int width = source.getWidth();
+		float[] line = ROW.get();
+		if (line.length < width * 4) {
+			line = new float[width * 4];
+			ROW.set(line);
+		}
+		int[] src = source.getData();
+		int row = source.rowStart(y);
+		for (int x = 0, i = 0; x < width; x++) {
+			int color = src[row + x];
+			float alpha = color >>> 24;
+			line[i++] = alpha;
+			line[i++] = ((color >> 16) & 0xFF) * alpha;
+			line[i++] = ((color >> 8) & 0xFF) * alpha;
+			line[i++] = (color & 0xFF) * alpha;
+		}
+		int[] starts = kernel.starts;
+		int[] counts = kernel.counts;
+		float[] weights = kernel.weights;
+		int taps = kernel.taps;
+		int out = y * kernel.size * 4;
+		for (int x = 0; x < kernel.size; x++) {
+			float a = 0;
+			float r = 0;
+			float g = 0;
+			float b = 0;
+			int in = starts[x] * 4;
+			int w = x * taps;
+			int end = w + counts[x];
+			for (; w < end; w++, in += 4) {
+				float weight = weights[w];
+				a += line[in] * weight;
+				r += line[in + 1] * weight;
+				g += line[in + 2] * weight;
+				b += line[in + 3] * weight;
+			}
+			between[out++] = a;
+			between[out++] = r;
+			between[out++] = g;
+			between[out++] = b;
+		}
+	}
+
+	/**
+	 * resamples one row of the target out of the intermediate buffer
+	 * @param between intermediate buffer with premultiplied channels
+	 * @param width of the target
+	 * @param y is the row of the target
+	 * @param kernel of the vertical pass
+	 * @param target raster to write
+	 */
+	private static void verticalPass(float[] between, int width, int y, Kernel kernel, PixelRaster target) {
+		float[] sums = SUMS.get();
+		if (sums.length < width * 4) {
+			sums = new float[width * 4];
+			SUMS.set(sums);
+		}
+		Arrays.fill(sums, 0, width * 4, 0f);
+		int first = kernel.starts[y];
+		int count = kernel.counts[y];
+		int w = y * kernel.taps;
+		for (int t = 0; t < count; t++) {
+			float weight = kernel.weights[w + t];
+			int in = (first + t) * width * 4;
+			for (int i = 0; i < width * 4; i++) {
+				sums[i] += between[in + i] * weight;
+			}
+		}
+		int[] dst = target.getData();
+		int row = target.rowStart(y);
+		for (int x = 0, i = 0; x < width; x++, i += 4) {
+			dst[row + x] = pack(sums[i], sums[i + 1], sums[i + 2], sums[i + 3]);
+		}
+	}
+
+	/**
+	 * turns premultiplied channels back into a color
+	 * @param a alpha
+	 * @param r red multiplied with alpha
+	 * @param g green multiplied with alpha
+	 * @param b blue multiplied with alpha
+	 * @return the color
+	 */
+	private static int pack(float a, float r, float g, float b) {
+		int alpha = clamp(a);
+		if (alpha == 0) {
+			return 0;
+		}
+		return (alpha << 24) | (clamp(r / a) << 16) | (clamp(g / a) << 8) | clamp(b / a);
+	}
+
+	/**
+	 * rounds a channel into the range of a byte
+	 * @param value of the channel
+	 * @return value between 0 and 255
+	 */
+	private static int clamp(float value) {
+		int rounded = Math.round(value);
+		return (rounded < 0) ? 0 : ((rounded > 255) ? 255 : rounded);
+	}
+
+	/**
+	 * gives back the weights for one axis, every kernel is only computed once
+	 * @param source length of the axis in the source
+	 * @param target length of the axis in the target
+	 * @param filter used for resampling
+	 * @return the kernel
+	 */
+	private static Kernel kernel(int source, int target, Filter filter) {
+		String key = source + ":" + target + ":" + filter;
+		Kernel kernel = KERNELS.get(key);
+		if (kernel == null) {
+			if (KERNELS.size() >= CACHE_LIMIT) {
+				KERNELS.clear();
+			}
+			kernel = new Kernel(source, target, filter);
+			KERNELS.put(key, kernel);
+		}
+		return kernel;
+	}
+
+	/**
+	 * Weights of all target pixels along one axis
+	 */
+	private static final class Kernel {
+
+		private final int size;
+		private final int taps;
+		private final int[] starts;
+		private final int[] counts;
+		private final float[] weights;
+
+		/**
+		 * Constructor, computes and normalizes the weights
+		 * @param source length of the axis in the source
+		 * @param target length of the axis in the target
+		 * @param filter used for resampling
+		 */
+		Kernel(int source, int target, Filter filter) {
+			double scale = (double) target / source;
+			double stretch = Math.max(1.0, 1.0 / scale);
+			double support = filter.support * stretch;
+			this.size = target;
+			this.taps = (int) Math.ceil(support * 2) + 2;
+			this.starts = new int[target];
+			this.counts = new int[target];
+			this.weights = new float[target * this.taps];
+			double[] values = new double[this.taps];
+			for (int i = 0; i < target; i++) {
+				double center = (i + 0.5) / scale - 0.5;
+				int first = Math.max(0, (int) Math.floor(center - support));
+				int last = Math.min(source - 1, (int) Math.ceil(center + support));
+				int count = Math.min(this.taps, last - first + 1);
+				double sum = 0;
+				for (int t = 0; t < count; t++) {
+					if (filter == Filter.BOX) {
+						values[t] = coverage(first + t, center, stretch / 2);
+					} else {
+						values[t] = filter.weight((first + t - center) / stretch);
+					}
+					sum += values[t];
+				}
+				if (sum == 0) {
+					int nearest = Math.min(source - 1, Math.max(0, (int) Math.round(center)));
+					first = nearest;
+					count = 1;
+					values[0] = 1;
+					sum = 1;
+				}
+				int skip = 0;
+				while (values[skip] == 0) {
+					skip++;
+				}
+				while (values[count - 1] == 0) {
+					count--;
+				}
+				this.starts[i] = first + skip;
+				this.counts[i] = count - skip;
+				for (int t = skip; t < count; t++) {
+					this.weights[i * this.taps + t - skip] = (float) (values[t] / sum);
+				}
+			}
+		}
+
+		/**
+		 * computes how much of a source pixel is covered by a target pixel
+		 * @param pixel position of the source pixel
+		 * @param center of the target pixel in source coordinates
+		 * @param half of the width of the target pixel in source coordinates
+		 * @return the covered length
+		 */
+		private static double coverage(int pixel, double center, double half) {
+			double from = Math.max(pixel - 0.5, center - half);
+			double to = Math.min(pixel + 0.5, center + half);
+			return Math.max(0, to - from);
+		}
+	}
+
+}
@@ -0,0 +1,117 @@
+package eu.jlmb.MapIcon;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits the rows of a raster into bands that are treated on the common ForkJoinPool.
+ * Small rasters are treated on the calling thread, every row is always written by exactly one band,
+ * so the result does not depend on the number of threads.
+ * @author Jean Baumgarten
+ */
+public final class RowBands {
+
+	/**
+	 * number of pixels from which rasters are treated in parallel
+	 */
+	public static final long DEFAULT_THRESHOLD = 1 << 20;
+
+	private static final int MIN_BAND_PIXELS = 1 << 16;
+	private static final int BANDS_PER_THREAD = 4;
+
+	private static volatile long threshold = DEFAULT_THRESHOLD;
+
+	/**
+	 * Work done on a band of rows
+	 */
+	public interface Band {
+
+		/**
+		 * treats the rows of a band
+		 * @param from first row
+		 * @param to row after the band
+		 */
+		void rows(int from, int to);
+	}
+
+	private RowBands() {
+	}
+
+	/**
+	 * treats all rows, in parallel bands if the raster is big enough
+	 * @param width of the raster
+	 * @param height of the raster
+	 * @param band work done on the rows
+	 */
+	public static void run(int width, int height, Band band) {
+		if (!isParallel(width, height)) {
+			band.rows(0, height);
+			return;
+		}
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		int bands = pool.getParallelism() * BANDS_PER_THREAD;
+		int rows = Math.max((height + bands - 1) / bands, (MIN_BAND_PIXELS + width - 1) / width);
+		pool.invoke(new Split(band, 0, height, rows));
+	}
+
+	/**
+	 * decides if a raster is treated in parallel
+	 * @param width of the raster
+	 * @param height of the raster
+	 * @return true if the raster reaches the threshold
+	 */
+	public static boolean isParallel(int width, int height) {
+		return (long) width * height >= threshold && height > 1;
+	}
+
+	/**
+	 * Getter for the threshold
+	 * @return number of pixels from which rasters are treated in parallel
+	 */
+	public static long getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Setter for the threshold
+	 * @param pixels from which rasters are treated in parallel, Long.MAX_VALUE to always work serially
+	 */
+	public static void setThreshold(long pixels) {
+		if (pixels < 1) {
+			throw new IllegalArgumentException("The threshold has to be positive: " + pixels);
+		}
+		threshold = pixels;
+	}
+
+	/**
+	 * Halves the rows until a band is small enough
+	 */
+	private static final class Split extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient Band band;
+		private final int from;
+		private final int to;
+		private final int rows;
+
+		Split(Band band, int from, int to, int rows) {
+			this.band = band;
+			this.from = from;
+			this.to = to;
+			this.rows = rows;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from <= this.rows) {
+				this.band.rows(this.from, this.to);
+				return;
+			}
+			int middle = (this.from + this.to) >>> 1;
+			invokeAll(new Split(this.band, this.from, middle, this.rows),
+					new Split(this.band, middle, this.to, this.rows));
+		}
+	}
+
+}
@@ -0,0 +1,161 @@
+package eu.jlmb.MapIcon;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Timeline of the start of the window, measured from the start of the virtual machine.
+ * Nothing is recorded unless the profile is enabled with --startup-profile,
+ * the report is printed as soon as the window is filled, or at the latest when the program ends.
+ * @author Jean Baumgarten
+ */
+public final class StartupProfile {
+
+	/**
+	 * command line flag that enables the profile
+	 */
+	public static final String FLAG = "--startup-profile";
+
+	/**
+	 * phase in which the window became visible
+	 */
+	public static final String WINDOW_SHOWN = "window shown";
+
+	/**
+	 * phase in which the preview of the chosen frame is shown
+	 */
+	public static final String FRAME_SHOWN = "frame shown";
+
+	/**
+	 * phase in which the Dummy.png or the reason why it is missing is shown
+	 */
+	public static final String START_SHOWN = "start image shown";
+
+	private static final StartupProfile DEFAULT = new StartupProfile();
+
+	private final List<Phase> phases;
+	private final Set<String> awaited;
+	private volatile boolean enabled;
+	private long origin;
+	private boolean reported;
+
+	/**
+	 * Constructor of a disabled profile
+	 */
+	public StartupProfile() {
+		this.phases = new ArrayList<Phase>();
+		this.awaited = new HashSet<String>();
+	}
+
+	/**
+	 * gives back the profile of the application
+	 * @return the profile
+	 */
+	public static StartupProfile getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * starts recording, the report is printed when the program ends if it was not printed before
+	 */
+	public synchronized void enable() {
+		if (this.enabled) {
+			return;
+		}
+		this.origin = System.nanoTime() - ManagementFactory.getRuntimeMXBean().getUptime() * 1000000L;
+		this.enabled = true;
+		Runtime.getRuntime().addShutdownHook(new Thread(this::report, "StartupProfile"));
+	}
+
+	/**
+	 * tells if phases are recorded
+	 * @return true if the profile is enabled
+	 */
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	/**
+	 * records that a phase of the start has been reached, does nothing if the profile is not enabled
+	 * @param phase name of the phase
+	 */
+	public void mark(String phase) {
+		if (!this.enabled) {
+			return;
+		}
+		long now = System.nanoTime();
+		boolean done;
+		synchronized (this) {
+			this.phases.add(new Phase(phase, Thread.currentThread().getName(), now));
+			done = this.awaited.remove(phase) && this.awaited.isEmpty();
+		}
+		if (done) {
+			this.report();
+		}
+	}
+
+	/**
+	 * prints the report as soon as all given phases have been marked
+	 * @param names of the phases after which the start is complete
+	 */
+	public synchronized void reportAfter(String... names) {
+		this.awaited.addAll(Arrays.asList(names));
+		for (Phase phase : this.phases) {
+			this.awaited.remove(phase.name);
+		}
+	}
+
+	/**
+	 * prints the report to the error stream once
+	 */
+	private void report() {
+		String report;
+		synchronized (this) {
+			if (!this.enabled || this.reported) {
+				return;
+			}
+			this.reported = true;
+			report = this.format();
+		}
+		System.err.print(report);
+	}
+
+	/**
+	 * describes the recorded phases in the order they were reached
+	 * @return one line per phase with the time since the start of the virtual machine
+	 */
+	public synchronized String format() {
+		List<Phase> sorted = new ArrayList<Phase>(this.phases);
+		sorted.sort((a, b) -> Long.compare(a.nanos, b.nanos));
+		StringBuilder report = new StringBuilder("Startup profile, ms since the start of the virtual machine:\n");
+		long previous = this.origin;
+		for (Phase phase : sorted) {
+			report.append(String.format(Locale.ROOT, "%8.1f %+8.1f  %-22s %s%n", (phase.nanos - this.origin) / 1e6,
+					(phase.nanos - previous) / 1e6, phase.name, phase.thread));
+			previous = phase.nanos;
+		}
+		return report.toString();
+	}
+
+	/**
+	 * a reached phase
+	 */
+	private static final class Phase {
+
+		private final String name;
+		private final String thread;
+		private final long nanos;
+
+		private Phase(String name, String thread, long nanos) {
+			this.name = name;
+			this.thread = thread;
+			this.nanos = nanos;
+		}
+	}
+
+}
@@ -0,0 +1,243 @@
+package eu.jlmb.MapIcon;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * Unchangeable state of an image, stored as square tiles.
+ * A state derived from another one shares all tiles that did not change,
+ * so a step of the history only costs the tiles an operation touched.
+ * @author Jean Baumgarten
+ */
+public final class TiledImage {
+
+	/**
+	 * width and height of a tile, tiles at the right and lower border can be smaller
+	 */
+	public static final int TILE_SIZE = 64;
+
+	private final int width;
+	private final int height;
+	private final int columns;
+	private final int rows;
+	private final int[][] tiles;
+
+	private TiledImage(int width, int height, int[][] tiles) {
+		this.width = width;
+		this.height = height;
+		this.columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+		this.rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+		this.tiles = tiles;
+	}
+
+	/**
+	 * stores the current pixels of an image
+	 * @param image to store
+	 * @return the state of the image
+	 */
+	public static TiledImage of(BufferedImage image) {
+		return derive(null, PixelRaster.of(PixelRaster.toArgb(image)));
+	}
+
+	/**
+	 * stores the current pixels of an image that was changed after this state,
+	 * tiles without changes are shared with this state
+	 * @param image of the same size as this state
+	 * @return the new state, this state itself if no pixel changed
+	 */
+	public TiledImage derive(BufferedImage image) {
+		if (image.getWidth() != this.width || image.getHeight() != this.height) {
+			throw new IllegalArgumentException("Image has to be " + this.width + "x" + this.height);
+		}
+		TiledImage derived = derive(this, PixelRaster.of(PixelRaster.toArgb(image)));
+		return derived.countNewTiles(this) == 0 ? this : derived;
+	}
+
+	/**
+	 * creates a state, sharing the unchanged tiles of a parent state
+	 * @param parent state to share tiles with, null to copy every tile
+	 * @param raster of the image
+	 * @return the state
+	 */
+	private static TiledImage derive(TiledImage parent, PixelRaster raster) {
+		int width = raster.getWidth();
+		int height = raster.getHeight();
+		int columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+		int rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+		int[][] tiles = new int[columns * rows][];
+		int[] data = raster.getData();
+		for (int row = 0; row < rows; row++) {
+			int y0 = row * TILE_SIZE;
+			int tileHeight = Math.min(TILE_SIZE, height - y0);
+			for (int column = 0; column < columns; column++) {
+				int x0 = column * TILE_SIZE;
+				int tileWidth = Math.min(TILE_SIZE, width - x0);
+				int index = row * columns + column;
+				if (parent != null && sameTile(parent.tiles[index], raster, x0, y0, tileWidth, tileHeight)) {
+					tiles[index] = parent.tiles[index];
+					continue;
+				}
+				int[] tile = new int[tileWidth * tileHeight];
+				for (int y = 0; y < tileHeight; y++) {
+					System.arraycopy(data, raster.rowStart(y0 + y) + x0, tile, y * tileWidth, tileWidth);
+				}
+				tiles[index] = tile;
+			}
+		}
+		return new TiledImage(width, height, tiles);
+	}
+
+	/**
+	 * compares a tile with a part of an image
+	 * @param tile to compare
+	 * @param raster of the image
+	 * @param x0 left border of the tile
+	 * @param y0 upper border of the tile
+	 * @param tileWidth width of the tile
+	 * @param tileHeight height of the tile
+	 * @return true if all pixels are equal
+	 */
+	private static boolean sameTile(int[] tile, PixelRaster raster, int x0, int y0, int tileWidth, int tileHeight) {
+		int[] data = raster.getData();
+		for (int y = 0; y < tileHeight; y++) {
+			int index = raster.rowStart(y0 + y) + x0;
+			int start = y * tileWidth;
+			for (int x = 0; x < tileWidth; x++) {
+				if (tile[start + x] != data[index + x]) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * writes this state into an image that shows another state,
+	 * only tiles that are not shared with the shown state are copied
+	 * @param target TYPE_INT_ARGB image of the same size
+	 * @param shown state the target shows now, null if it is unknown
+	 * @return number of copied tiles
+	 */
+	public int copyInto(BufferedImage target, TiledImage shown) {
+		PixelRaster raster = PixelRaster.of(target);
+		if (raster.getWidth() != this.width || raster.getHeight() != this.height) {
+			throw new IllegalArgumentException("Image has to be " + this.width + "x" + this.height);
+		}
+		int[] data = raster.getData();
+		int copied = 0;
+		for (int row = 0; row < this.rows; row++) {
+			int y0 = row * TILE_SIZE;
+			int tileHeight = Math.min(TILE_SIZE, this.height - y0);
+			for (int column = 0; column < this.columns; column++) {
+				int index = row * this.columns + column;
+				if (this.shares(shown, index)) {
+					continue;
+				}
+				int x0 = column * TILE_SIZE;
+				int tileWidth = Math.min(TILE_SIZE, this.width - x0);
+				int[] tile = this.tiles[index];
+				for (int y = 0; y < tileHeight; y++) {
+					System.arraycopy(tile, y * tileWidth, data, raster.rowStart(y0 + y) + x0, tileWidth);
+				}
+				copied++;
+			}
+		}
+		return copied;
+	}
+
+	/**
+	 * finds the part of the image in which this state differs from another one
+	 * @param other state, null if it is unknown
+	 * @return bounds of the tiles that are not shared with the other state, null if all are shared
+	 */
+	public Rectangle changedArea(TiledImage other) {
+		Rectangle area = null;
+		for (int index = 0; index < this.tiles.length; index++) {
+			if (this.shares(other, index)) {
+				continue;
+			}
+			int x0 = (index % this.columns) * TILE_SIZE;
+			int y0 = (index / this.columns) * TILE_SIZE;
+			Rectangle tile = new Rectangle(x0, y0, Math.min(TILE_SIZE, this.width - x0),
+					Math.min(TILE_SIZE, this.height - y0));
+			area = area == null ? tile : area.union(tile);
+		}
+		return area;
+	}
+
+	/**
+	 * creates a new image with the pixels of this state
+	 * @return image of type TYPE_INT_ARGB
+	 */
+	public BufferedImage toImage() {
+		BufferedImage image = new BufferedImage(this.width, this.height, BufferedImage.TYPE_INT_ARGB);
+		this.copyInto(image, null);
+		return image;
+	}
+
+	/**
+	 * counts the tiles that are not shared with another state
+	 * @param other state, null to count all tiles
+	 * @return number of tiles only this state holds
+	 */
+	public int countNewTiles(TiledImage other) {
+		int count = 0;
+		for (int i = 0; i < this.tiles.length; i++) {
+			if (!this.shares(other, i)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * memory of the tiles that are not shared with another state
+	 * @param other state, null to count all tiles
+	 * @return bytes of the pixels only this state holds
+	 */
+	public long newTileBytes(TiledImage other) {
+		long bytes = 0;
+		for (int i = 0; i < this.tiles.length; i++) {
+			if (!this.shares(other, i)) {
+				bytes += 4L * this.tiles[i].length;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * checks if a tile is shared with another state
+	 * @param other state, may be null
+	 * @param index of the tile
+	 * @return true if both states hold the same tile
+	 */
+	private boolean shares(TiledImage other, int index) {
+		return other != null && other.width == this.width && other.height == this.height
+				&& other.tiles[index] == this.tiles[index];
+	}
+
+	/**
+	 * Getter for the width
+	 * @return int
+	 */
+	public int getWidth() {
+		return this.width;
+	}
+
+	/**
+	 * Getter for the height
+	 * @return int
+	 */
+	public int getHeight() {
+		return this.height;
+	}
+
+	/**
+	 * Getter for the number of tiles
+	 * @return columns times rows
+	 */
+	public int getTileCount() {
+		return this.tiles.length;
+	}
+
+}
@@ -2,23 +2,35 @@ package eu.jlmb.MapIcon;
 
 import java.awt.Component;
 import java.awt.Container;
-import java.awt.Graphics2D;
+import java.awt.Dimension;
+import java.awt.GridLayout;
+import java.awt.Rectangle;
+import java.awt.Window;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
+import javax.swing.JDialog;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JTabbedPane;
+import javax.swing.SwingConstants;
 import javax.swing.SpringLayout;
+import javax.swing.SwingUtilities;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 /**
@@ -28,10 +40,13 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 public class WindowWorker implements ActionListener {
 
 	private JLabel originalDummy = null;
-	private JLabel changedDummy = null;
+	private PreviewPanel changedDummy = null;
 	private BufferedImage image = null;
-	private BufferedImage changedImage = null;
-	private BufferedImage imageFrame = null;
+	private EditHistory history = null;
+	private BufferedImage shownImage = null;
+	private TiledImage shownState = null;
+	private TiledImage startState = null;
+	private String frameName = null;
 	private Component frame = null;
 	private JLabel transformerPreview = null;
 	private JComboBox<String> iconType = null;
@@ -40,7 +55,15 @@ public class WindowWorker implements ActionListener {
 	private String gameVersion = null;
 	private final String[] gameVersions;
 	private JComboBox<String> settlerVersion = null;
+	private JCheckBox palette = null;
 	private final PrefManager manager;
+	private final OperationExecutor executor = new OperationExecutor("MapIconator-Worker");
+	private final FrameGallery gallery = new FrameGallery();
+	private final AtomicLong loads = new AtomicLong();
+	private long steps = 0;
+	private JDialog galleryDialog = null;
+	private boolean startRequested = false;
+	private Runnable pendingStart = null;
 	
 	/**
 	 * Constructor of the Working window
@@ -48,12 +71,7 @@ public class WindowWorker implements ActionListener {
 	 */
 	public WindowWorker(PrefManager manager) {
 		this.manager = manager;
-		String[] icons = {
-				"Standard", "CelticRing1", "CelticRing2",
-				"DecoRing", "StarRing", "GoldenRing",
-				"BlueRing", "FlowerRing", "OtherRing", "Original"
-				};
-		this.iconNames = icons;
+		this.iconNames = FrameRegistry.FRAME_NAMES.toArray(new String[0]);
 		String[] versions = {
 				"Die Siedler - Aufstieg eines Knigreichs",
 				"Die Siedler - Das Erbe der Knige"
@@ -81,6 +99,18 @@ public class WindowWorker implements ActionListener {
 		}
 	}
 	
+	/**
+	 * starts reading the Dummy.png before the window is built, so that both happen at the same time
+	 */
+	public void preloadStartImage() {
+		this.getDummyPath();
+		File file = new File(this.path);
+		if (file.exists()) {
+			this.startRequested = true;
+			this.trySetStartImages(file);
+		}
+	}
+	
 	/**
 	 * Builds the GUI of the window
 	 */
@@ -106,7 +136,8 @@ public class WindowWorker implements ActionListener {
         layout.putConstraint(SpringLayout.WEST, this.originalDummy, 30, SpringLayout.WEST, contentPane);
         layout.putConstraint(SpringLayout.NORTH, this.originalDummy, 30, SpringLayout.SOUTH, this.settlerVersion);
 
-        this.changedDummy = new JLabel();
+        this.changedDummy = new PreviewPanel();
+        this.changedDummy.setToolTipText("Mit dem Mausrad l\u00e4sst sich das Zielbild vergr\u00f6\u00dfern.");
         contentPane.add(this.changedDummy);
         layout.putConstraint(SpringLayout.WEST, this.changedDummy, 30, SpringLayout.WEST, contentPane);
         layout.putConstraint(SpringLayout.SOUTH, this.changedDummy, -30, SpringLayout.SOUTH, contentPane);
@@ -125,11 +156,7 @@ public class WindowWorker implements ActionListener {
         layout.putConstraint(SpringLayout.NORTH, this.iconType, 30, SpringLayout.SOUTH, this.transformerPreview);
         this.iconType.addActionListener(this);
         
-        this.getDummyPath();
-        this.iconChanged();
-        
-        File file = new File(this.path);
-        this.loadStartImage(file, this.gameVersion);
+        this.showFrame();
 
         // make the buttons
         JButton restart = new JButton("Neu anfangen");
@@ -139,6 +166,30 @@ public class WindowWorker implements ActionListener {
         layout.putConstraint(SpringLayout.WEST, restart, 70, SpringLayout.WEST, contentPane);
         layout.putConstraint(SpringLayout.NORTH, restart, 30, SpringLayout.SOUTH, this.originalDummy);
         restart.addActionListener(this);
+
+        JButton undo = new JButton("R\u00fcckg\u00e4ngig");
+        undo.setName("undo");
+        undo.setToolTipText("Nimmt den letzten Schritt am Zielbild zur\u00fcck.");
+        contentPane.add(undo);
+        layout.putConstraint(SpringLayout.WEST, undo, 30, SpringLayout.WEST, contentPane);
+        layout.putConstraint(SpringLayout.NORTH, undo, 10, SpringLayout.SOUTH, restart);
+        undo.addActionListener(this);
+
+        JButton redo = new JButton("Wiederholen");
+        redo.setName("redo");
+        redo.setToolTipText("F\u00fchrt den zur\u00fcckgenommenen Schritt wieder aus.");
+        contentPane.add(redo);
+        layout.putConstraint(SpringLayout.WEST, redo, 10, SpringLayout.EAST, undo);
+        layout.putConstraint(SpringLayout.NORTH, redo, 10, SpringLayout.SOUTH, restart);
+        redo.addActionListener(this);
+
+        JButton replay = new JButton("Rezept anwenden");
+        replay.setName("replay");
+        replay.setToolTipText("Wendet die Schritte des zuletzt gespeicherten Bildes auf das Startbild an.");
+        contentPane.add(replay);
+        layout.putConstraint(SpringLayout.WEST, replay, 30, SpringLayout.WEST, contentPane);
+        layout.putConstraint(SpringLayout.NORTH, replay, 10, SpringLayout.SOUTH, undo);
+        replay.addActionListener(this);
         
         JButton landscape = new JButton("Landschaft");
         landscape.setName("landscape");
@@ -167,6 +218,15 @@ public class WindowWorker implements ActionListener {
         layout.putConstraint(SpringLayout.NORTH, cutout, 10, SpringLayout.SOUTH, this.iconType);
         cutout.addActionListener(this);
         
+        JButton gallery = new JButton("Galerie");
+        gallery.setName("gallery");
+        gallery.setToolTipText("Zeigt das Zielbild mit jedem Rahmen, ein Klick wendet den Rahmen an.");
+        contentPane.add(gallery);
+        layout.putConstraint(SpringLayout.EAST, gallery, -30, SpringLayout.EAST, contentPane);
+        layout.putConstraint(SpringLayout.WEST, gallery, -240, SpringLayout.EAST, contentPane);
+        layout.putConstraint(SpringLayout.NORTH, gallery, 10, SpringLayout.SOUTH, overlapp);
+        gallery.addActionListener(this);
+        
         JButton save = new JButton("Speichere auf Schreibtisch");
         save.setName("saveDesktop");
         save.setToolTipText("Speichert das erstellte Bild im richtigen Format auf dem Schreibtisch.");
@@ -193,14 +253,31 @@ public class WindowWorker implements ActionListener {
         layout.putConstraint(SpringLayout.WEST, save3, -240, SpringLayout.EAST, contentPane);
         layout.putConstraint(SpringLayout.SOUTH, save3, -10, SpringLayout.NORTH, save2);
         save3.addActionListener(this);
+        
+        this.palette = new JCheckBox("Mit Palette speichern (kleiner)");
+        this.palette.setName("palette");
+        this.palette.setToolTipText("Speichert mit h\u00f6chstens 256 Farben, wenn das Bild dabei sichtbar gleich bleibt.");
+        contentPane.add(this.palette);
+        layout.putConstraint(SpringLayout.EAST, this.palette, -30, SpringLayout.EAST, contentPane);
+        layout.putConstraint(SpringLayout.WEST, this.palette, -240, SpringLayout.EAST, contentPane);
+        layout.putConstraint(SpringLayout.SOUTH, this.palette, -10, SpringLayout.NORTH, save3);
 
         // finalize window and show it
-        int height = 250 + 175 * 2;
+        int height = 290 + 175 * 2;
         frame.setSize(500, height > 300 ? height : 300);
         frame.setResizable(false);
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
+        StartupProfile.getDefault().mark(StartupProfile.WINDOW_SHOWN);
+        
+        if (this.pendingStart != null) {
+        	this.pendingStart.run();
+        	this.pendingStart = null;
+        } else if (!this.startRequested) {
+        	this.getDummyPath();
+        	this.loadStartImage(new File(this.path), this.gameVersion);
+        }
 	}
 	
 	/**
@@ -235,26 +312,65 @@ public class WindowWorker implements ActionListener {
                 }
             } else {
             	this.originalDummy.setText("Fehler, Datei unauffindbar");
+            	StartupProfile.getDefault().mark(StartupProfile.START_SHOWN);
             }
         }
 	}
 	
 	/**
-	 * reads in the given file and puts it on the labels that should show the Dummy.png and how it has changed
+	 * reads in the given file and puts it on the labels that should show the Dummy.png and how it has changed,
+	 * only a newer load makes it obsolete, other actions never drop it
 	 * @param file
 	 */
 	private void trySetStartImages(File file) {
-		try {
-            BufferedImage dummy = ImageIO.read(file);
+		long load = this.loads.incrementAndGet();
+		this.executor.submit("load:" + load, false, cancelled -> {
+            BufferedImage dummy;
+            try (Metrics.Timer timer = Metrics.start("decode")) {
+            	dummy = ImageIO.read(file);
+            	if (dummy == null) {
+            		throw new IOException("Keine lesbare Bilddatei: " + file.getName());
+            	}
+            	timer.done((long) dummy.getWidth() * dummy.getHeight(), 0);
+            }
+            StartupProfile.getDefault().mark("start image decoded");
+            EditHistory history = new EditHistory(dummy);
+            if (load != this.loads.get()) {
+            	return null;
+            }
             this.image = dummy;
-            this.changedImage = copyImage(dummy);
+            this.history = history;
+            this.startState = history.current();
+            return history.current();
+		}, start -> this.whenBuilt(() -> {
+            BufferedImage startImage = start.toImage();
             this.originalDummy.setText("");
-            this.changedDummy.setText("");
-            this.originalDummy.setIcon(new ImageIcon(dummy));
-            this.changedDummy.setIcon(new ImageIcon(dummy));
-        } catch (IOException e) {
-            this.originalDummy.setText(e.getLocalizedMessage());
-        }
+            this.originalDummy.setIcon(new ImageIcon(startImage));
+            this.shownImage = null;
+            this.showState(start);
+            StartupProfile.getDefault().mark(StartupProfile.START_SHOWN);
+            // the frames are tried on the start image most of the time, so their results are prepared early
+            this.executor.submit("gallery:start", false, cancelled -> {
+            	this.gallery.compose(this.history.getWorkingImage(), Operation.CUTOUT);
+            	this.gallery.compose(this.history.getWorkingImage(), Operation.OVERLAP);
+            	return null;
+            }, result -> { }, error -> { });
+		}), e -> this.whenBuilt(() -> {
+			this.originalDummy.setText(e.getLocalizedMessage());
+			StartupProfile.getDefault().mark(StartupProfile.START_SHOWN);
+		}));
+	}
+	
+	/**
+	 * runs an update of the labels now, or after the window is built if the Dummy.png was read faster
+	 * @param update to run on the event dispatch thread
+	 */
+	private void whenBuilt(Runnable update) {
+		if (this.originalDummy == null) {
+			this.pendingStart = update;
+		} else {
+			update.run();
+		}
 	}
 
 	/**
@@ -268,12 +384,29 @@ public class WindowWorker implements ActionListener {
 		} else if (e.getSource().getClass() == JComboBox.class) {
 			name = ((JComboBox) e.getSource()).getName();
 		}
+		String action = name;
+		EdtWatchdog.getDefault().measure(action, () -> this.dispatch(action));
+	}
+
+	/**
+	 * runs the action of a button or combo box
+	 * @param name of the component
+	 */
+	private void dispatch(String name) {
 		if ("restart".equals(name)) {
 			this.restart();
+		} else if ("undo".equals(name)) {
+			this.undo();
+		} else if ("redo".equals(name)) {
+			this.redo();
+		} else if ("replay".equals(name)) {
+			this.replay();
 		} else if ("overlapp".equals(name)) {
 			this.overlapp();
 		} else if ("cutout".equals(name)) {
 			this.cutout();
+		} else if ("gallery".equals(name)) {
+			this.openGallery();
 		} else if ("iconType".equals(name)) {
 			this.iconChanged();
 		} else if ("settlerVersion".equals(name)) {
@@ -294,21 +427,67 @@ public class WindowWorker implements ActionListener {
 	 * loads Dummy.png again
 	 */
 	private void restart() {
+		this.executor.cancelPending();
         File file = new File(this.path);
 		this.trySetStartImages(file);
 		//this.changedDummy.setIcon(new ImageIcon(this.image));
 		//this.changedImage = copyImage(this.image);
 	}
 	
+	/**
+	 * action behind the undo button
+	 * goes back to the state before the last operation, every click goes back one more step
+	 */
+	private void undo() {
+		this.executor.submit("undo:" + (++this.steps), false, cancelled -> this.history == null ? null : this.history.undo(),
+				this::showState, e -> this.changedDummy.setText(e.getLocalizedMessage()));
+	}
+	
+	/**
+	 * action behind the redo button
+	 * applies the last undone operation again, every click applies one more step
+	 */
+	private void redo() {
+		this.executor.submit("redo:" + (++this.steps), false, cancelled -> this.history == null ? null : this.history.redo(),
+				this::showState, e -> this.changedDummy.setText(e.getLocalizedMessage()));
+	}
+	
+	/**
+	 * action behind the replay button
+	 * applies the recipe of the last saved icon to the start image in a single pass
+	 */
+	private void replay() {
+		Recipe recipe = this.manager.getRecipe();
+		if (recipe.isEmpty()) {
+			JOptionPane.showMessageDialog(null, "Es wurde noch kein Bild mit Rezept gespeichert.");
+			return;
+		}
+		this.executor.submit("replay", true, cancelled -> {
+			EditHistory history = this.history;
+			if (history == null) {
+				return null;
+			}
+			this.startState.copyInto(history.getWorkingImage(), history.current());
+			try {
+				new IconCreater(history.getWorkingImage()).apply(recipe);
+			} catch (IOException | RuntimeException e) {
+				history.revert();
+				throw e;
+			}
+			if (cancelled.getAsBoolean()) {
+				history.revert();
+				return null;
+			}
+			return history.commit(recipe);
+		}, this::showState, e -> this.changedDummy.setText(e.getLocalizedMessage()));
+	}
+	
 	/**
 	 * action behind the overlapp button
 	 * puts the current image frame onto the image
 	 */
 	private void overlapp() {
-		IconCreater creater = new IconCreater(this.changedImage);
-		creater.addOverlappImage(this.imageFrame);
-		this.changedImage = creater.getIcon();
-		this.changedDummy.setIcon(new ImageIcon(this.changedImage));
+		this.runOperation(Operation.OVERLAP);
 	}
 	
 	/**
@@ -317,10 +496,87 @@ public class WindowWorker implements ActionListener {
 	 * after cutting out the landscape of the image itself
 	 */
 	private void cutout() {
-		IconCreater creater = new IconCreater(this.changedImage);
-		creater.addCutOutImage(this.imageFrame);
-		this.changedImage = creater.getIcon();
-		this.changedDummy.setIcon(new ImageIcon(this.changedImage));
+		this.runOperation(Operation.CUTOUT);
+	}
+	
+	/**
+	 * action behind the gallery button
+	 * shows the changed image with every frame, the results are composed in the background
+	 * and a chosen result is applied without computing it again,
+	 * the changed image is copied and hashed on the worker thread after the waiting operations
+	 */
+	private void openGallery() {
+		if (this.shownImage == null) {
+			JOptionPane.showMessageDialog(null, "Es wurde noch kein Bild geladen.");
+			return;
+		}
+		this.executor.submit("gallery", false, cancelled -> {
+			Map<Operation, Map<String, CompletableFuture<FrameGallery.Preview>>> results =
+					new EnumMap<Operation, Map<String, CompletableFuture<FrameGallery.Preview>>>(Operation.class);
+			BufferedImage working = this.history.getWorkingImage();
+			results.put(Operation.CUTOUT, this.gallery.compose(working, Operation.CUTOUT));
+			results.put(Operation.OVERLAP, this.gallery.compose(working, Operation.OVERLAP));
+			return results;
+		}, this::showGallery, e -> this.changedDummy.setText(e.getLocalizedMessage()));
+	}
+	
+	/**
+	 * shows the dialog of the gallery
+	 * @param results of the frames by operation
+	 */
+	private void showGallery(Map<Operation, Map<String, CompletableFuture<FrameGallery.Preview>>> results) {
+		if (this.galleryDialog != null) {
+			this.galleryDialog.dispose();
+		}
+		Window owner = SwingUtilities.getWindowAncestor(this.changedDummy);
+		JDialog dialog = new JDialog(owner, "Rahmengalerie");
+		JTabbedPane pages = new JTabbedPane();
+		pages.addTab("Ausf\u00fcllen", this.galleryPage(dialog, Operation.CUTOUT, results.get(Operation.CUTOUT)));
+		pages.addTab("Hinzuf\u00fcgen", this.galleryPage(dialog, Operation.OVERLAP, results.get(Operation.OVERLAP)));
+		dialog.getContentPane().add(pages);
+		dialog.pack();
+		dialog.setLocationRelativeTo(owner);
+		dialog.setVisible(true);
+		this.galleryDialog = dialog;
+	}
+	
+	/**
+	 * makes a page of the gallery with a button for every frame,
+	 * the thumbnails are shown as soon as they are composed
+	 * @param dialog holding the gallery
+	 * @param operation that puts the frames onto the changed image
+	 * @param results of the frames for the operation
+	 * @return the page
+	 */
+	private JPanel galleryPage(JDialog dialog, Operation operation,
+			Map<String, CompletableFuture<FrameGallery.Preview>> results) {
+		JPanel page = new JPanel(new GridLayout(0, 5, 5, 5));
+		for (Map.Entry<String, CompletableFuture<FrameGallery.Preview>> result : results.entrySet()) {
+			String name = result.getKey();
+			JButton choice = new JButton(name);
+			choice.setName(name);
+			choice.setVerticalTextPosition(SwingConstants.BOTTOM);
+			choice.setHorizontalTextPosition(SwingConstants.CENTER);
+			choice.setPreferredSize(new Dimension(FrameGallery.THUMBNAIL_SIZE + 30, FrameGallery.THUMBNAIL_SIZE + 40));
+			choice.setEnabled(false);
+			choice.addActionListener(e -> {
+				EdtWatchdog.getDefault().measure("gallery:" + name, () -> {
+					dialog.dispose();
+					this.iconType.setSelectedItem(name);
+					this.runOperation(operation);
+				});
+			});
+			result.getValue().whenComplete((preview, error) -> SwingUtilities.invokeLater(() -> {
+				if (preview != null) {
+					choice.setIcon(new ImageIcon(preview.getThumbnail()));
+					choice.setEnabled(true);
+				} else {
+					choice.setToolTipText(error.getCause() != null ? error.getCause().getMessage() : error.getMessage());
+				}
+			}));
+			page.add(choice);
+		}
+		return page;
 	}
 	
 	/**
@@ -328,15 +584,31 @@ public class WindowWorker implements ActionListener {
 	 * reloads a new image frame
 	 */
 	private void iconChanged() {
-		int index = this.iconType.getSelectedIndex();
-		InputStream stream = WindowWorker.class.getResourceAsStream("/eu/jlmb/dummy_" + iconNames[index] + ".png");
-        try {
-            BufferedImage preview = ImageIO.read(stream);
-            this.imageFrame = preview;
-            this.transformerPreview.setIcon(new ImageIcon(preview));
-        } catch (IOException e) {
-            this.transformerPreview.setText(e.getLocalizedMessage());
-        }
+		this.executor.cancelPending();
+		this.showFrame();
+	}
+	
+	/**
+	 * shows the preview of the chosen frame as soon as it is decoded
+	 */
+	private void showFrame() {
+		String name = this.iconNames[this.iconType.getSelectedIndex()];
+		this.frameName = name;
+		FrameRegistry.getDefault().request(FrameRegistry.frameResource(name)).whenComplete((preview, error) -> {
+			SwingUtilities.invokeLater(() -> {
+				if (!name.equals(this.frameName)) {
+					return;
+				}
+				if (preview != null) {
+					this.transformerPreview.setText("");
+					this.transformerPreview.setIcon(new ImageIcon(preview));
+				} else {
+					this.transformerPreview.setText(error.getCause() != null
+							? error.getCause().getMessage() : error.getMessage());
+				}
+				StartupProfile.getDefault().mark(StartupProfile.FRAME_SHOWN);
+			});
+		});
 	}
 	
 	/**
@@ -344,6 +616,7 @@ public class WindowWorker implements ActionListener {
 	 * reloads the map icons
 	 */
 	private void versionChanged() {
+		this.executor.cancelPending();
 		int index = this.settlerVersion.getSelectedIndex();
 		this.gameVersion = this.gameVersions[index];
 		this.manager.setVersion(this.gameVersion);
@@ -357,10 +630,61 @@ public class WindowWorker implements ActionListener {
 	 * cuts out the landscape from the image
 	 */
 	private void cutLandscape() {
-		IconCreater creater = new IconCreater(this.changedImage);
-		creater.cutOutLandscape();
-		this.changedImage = creater.getIcon();
-		this.changedDummy.setIcon(new ImageIcon(this.changedImage));
+		this.runOperation(Operation.LANDSCAPE);
+	}
+	
+	/**
+	 * applies an operation to the working image of the history on the worker thread
+	 * and shows the result when it is done, a result the gallery already composed is copied instead
+	 * @param operation to apply
+	 */
+	private void runOperation(Operation operation) {
+		String frameName = this.frameName;
+		this.executor.submit(operation.getKey(), true, cancelled -> {
+			EditHistory history = this.history;
+			if (history == null) {
+				return null;
+			}
+			BufferedImage working = history.getWorkingImage();
+			FrameGallery.Preview ready = operation == Operation.LANDSCAPE ? null
+					: this.gallery.find(working, operation, frameName);
+			BufferedImage frame = operation == Operation.LANDSCAPE || ready != null ? null
+					: FrameRegistry.getDefault().getFrame(frameName);
+			try {
+				if (ready != null) {
+					ready.copyInto(working);
+				} else {
+					operation.apply(new IconCreater(working), frame);
+				}
+			} catch (RuntimeException e) {
+				history.revert();
+				throw e;
+			}
+			if (cancelled.getAsBoolean()) {
+				history.revert();
+				return null;
+			}
+			return history.commit(history.getRecipe().then(operation, frameName));
+		}, this::showState, e -> this.changedDummy.setText(e.getLocalizedMessage()));
+	}
+	
+	/**
+	 * shows a state of the history in the preview of the changed image,
+	 * only the tiles that differ from the shown state are copied, uploaded and repainted
+	 * @param state to show
+	 */
+	private void showState(TiledImage state) {
+		this.changedDummy.setText("");
+		if (this.shownImage == null || this.shownImage.getWidth() != state.getWidth()
+				|| this.shownImage.getHeight() != state.getHeight()) {
+			this.shownImage = state.toImage();
+			this.changedDummy.setImage(this.shownImage);
+		} else {
+			Rectangle changed = state.changedArea(this.shownState);
+			state.copyInto(this.shownImage, this.shownState);
+			this.changedDummy.changed(changed);
+		}
+		this.shownState = state;
 	}
 	
 	/**
@@ -422,24 +746,24 @@ public class WindowWorker implements ActionListener {
 	 * @param file where to save the image
 	 */
 	private void finalSaving(File file) {
-		try {
-			ImageIO.write(IconCreater.makeOutputImage(this.changedImage), "png", file);
-		} catch (IOException e) {
-			JOptionPane.showMessageDialog(null, e.getLocalizedMessage());
-		}
-	}
-	
-	/**
-	 * creates a deep copy of a buffered image
-	 * @param image to be copied
-	 * @return copy of the image
-	 */
-	private static BufferedImage copyImage(BufferedImage image) {
-	    BufferedImage newImage = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
-	    Graphics2D graphic = newImage.createGraphics();
-	    graphic.drawImage(image, 0, 0, null);
-	    graphic.dispose();
-	    return newImage;
+		PngEncoder encoder = this.palette.isSelected() ? PngEncoder.PALETTE : PngEncoder.DEFAULT;
+		this.executor.submit("save:" + file.getPath(), false, cancelled -> {
+			EditHistory history = this.history;
+			if (history == null) {
+				throw new IOException("Kein Bild geladen");
+			}
+			PixelRaster icon = IconCreater.makeOutputRaster(PixelRaster.of(history.getWorkingImage()),
+					Resampler.Filter.BOX);
+			try {
+				encoder.write(icon.toImage(), file.toPath());
+			} finally {
+				icon.release();
+			}
+			if (!history.getRecipe().isEmpty()) {
+				this.manager.setRecipe(history.getRecipe());
+			}
+			return file;
+		}, saved -> { }, e -> JOptionPane.showMessageDialog(null, e.getLocalizedMessage()));
 	}
 	
 }
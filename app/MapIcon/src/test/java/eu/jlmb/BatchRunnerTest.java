@@ -0,0 +1,105 @@
+package eu.jlmb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eu.jlmb.MapIcon.BatchRunner;
+
+/**
+ *
+ * @author Jean Baumgarten
+ *
+ */
+public class BatchRunnerTest {
+
+	/**
+	 * folder for the maps and the icons
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * inputs in folders whose names only differ by separators get their own icons,
+	 * the folders of the input are repeated in the output
+	 * @throws IOException if the files cannot be written
+	 */
+	@Test
+	public void mirrorsTheInputFolders() throws IOException {
+		Path maps = this.folder.getRoot().toPath().resolve("maps");
+		Path out = this.folder.getRoot().toPath().resolve("icons");
+		copyDummy(maps.resolve("a_b").resolve("Dummy.png"));
+		copyDummy(maps.resolve("a").resolve("b").resolve("Dummy.png"));
+		copyDummy(maps.resolve("a").resolve("notes.png"));
+
+		BatchRunner runner = BatchRunner.fromArguments(new String[] {"--batch", maps.toString(),
+				"--out", out.toString(), "--recipe", "frame=GoldenRing,cutout", "--cache", "off", "--threads", "2"});
+		assertEquals(0, runner.run());
+
+		assertTrue(Files.isRegularFile(out.resolve("a_b").resolve("Dummy.png")));
+		assertTrue(Files.isRegularFile(out.resolve("a").resolve("b").resolve("Dummy.png")));
+		assertFalse(Files.exists(out.resolve("a").resolve("notes.png")));
+	}
+
+	/**
+	 * a glob keeps the folders below its fixed part
+	 * @throws IOException if the files cannot be written
+	 */
+	@Test
+	public void mirrorsBelowTheGlob() throws IOException {
+		Path maps = this.folder.getRoot().toPath().resolve("maps");
+		Path out = this.folder.getRoot().toPath().resolve("icons");
+		copyDummy(maps.resolve("one").resolve("Dummy.png"));
+		copyDummy(maps.resolve("two").resolve("Dummy.png"));
+
+		BatchRunner runner = BatchRunner.fromArguments(new String[] {"--batch", maps + "/*/Dummy.png",
+				"--out", out.toString(), "--ops", "overlap", "--cache", "off"});
+		assertEquals(0, runner.run());
+
+		assertTrue(Files.isRegularFile(out.resolve("one").resolve("Dummy.png")));
+		assertTrue(Files.isRegularFile(out.resolve("two").resolve("Dummy.png")));
+	}
+
+	/**
+	 * missing operations and invalid thread counts are usage errors
+	 */
+	@Test
+	public void rejectsInvalidArguments() {
+		String[][] invalid = {
+			{"--batch", "maps", "--out", "icons"},
+			{"--batch", "maps", "--out", "icons", "--ops", "cutout", "--threads", "many"},
+			{"--batch", "maps", "--out", "icons", "--ops", "cutout", "--threads", "0"},
+		};
+		for (String[] args : invalid) {
+			try {
+				BatchRunner.fromArguments(args);
+				fail(String.join(" ", args));
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("Usage: --batch"));
+			}
+		}
+	}
+
+	/**
+	 * copies the test map to a file
+	 * @param target path of the copy
+	 * @throws IOException if the copy fails
+	 */
+	private static void copyDummy(Path target) throws IOException {
+		Files.createDirectories(target.getParent());
+		try (InputStream in = BatchRunnerTest.class.getResourceAsStream("/eu/jlmb/dummy.png")) {
+			Files.copy(in, target);
+		}
+	}
+
+}
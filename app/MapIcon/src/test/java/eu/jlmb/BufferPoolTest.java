@@ -0,0 +1,117 @@
+package eu.jlmb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Random;
+
+import org.junit.Test;
+
+import eu.jlmb.MapIcon.BufferPool;
+import eu.jlmb.MapIcon.IconCreater;
+import eu.jlmb.MapIcon.IconSettings;
+import eu.jlmb.MapIcon.PixelRaster;
+
+/**
+ *
+ * @author Jean Baumgarten
+ *
+ */
+public class BufferPoolTest {
+
+	/**
+	 * arrays are handed out by size class and reused until the pool is full
+	 */
+	@Test
+	public void reusesArrays() {
+		BufferPool pool = new BufferPool(16 * 1024);
+		int[] first = pool.takeInts(3000);
+		assertEquals(4096, first.length);
+		pool.release(first);
+		assertSame(first, pool.takeInts(2049));
+		assertNotSame(first, pool.takeInts(2049));
+		pool.release(first);
+		pool.release(new int[4096]);
+		assertEquals(16 * 1024, pool.getBytes());
+		assertEquals(1, pool.getHits());
+		assertEquals(2, pool.getMisses());
+		assertEquals(1 << 10, pool.takeFloats(1).length);
+	}
+
+	/**
+	 * byte buffers are direct if the pool is created so, buffers of the other kind are not kept
+	 */
+	@Test
+	public void reusesDirectBuffers() {
+		BufferPool pool = new BufferPool(1 << 20, true);
+		ByteBuffer first = pool.takeBytes(70000);
+		assertTrue(first.isDirect());
+		assertEquals(1 << 17, first.capacity());
+		first.putInt(7);
+		pool.release(first);
+		assertEquals(1 << 17, pool.getBytes());
+		ByteBuffer again = pool.takeBytes(65548);
+		assertSame(first, again);
+		assertEquals(0, again.position());
+		assertEquals(again.capacity(), again.limit());
+		pool.release(ByteBuffer.allocate(1 << 17));
+		assertEquals(0, pool.getBytes());
+		assertFalse(new BufferPool(1 << 20).takeBytes(100).isDirect());
+	}
+
+	/**
+	 * the icon image gets pixels of its own, the pooled ones go back to the pool
+	 */
+	@Test
+	public void outputImageDoesNotKeepPooledPixels() {
+		BufferedImage picture = new BufferedImage(190, 175, BufferedImage.TYPE_INT_ARGB);
+		BufferedImage first = IconCreater.makeOutputImage(picture);
+		long hits = BufferPool.getDefault().getHits();
+		BufferedImage second = IconCreater.makeOutputImage(picture);
+		assertTrue(BufferPool.getDefault().getHits() > hits);
+		assertNotSame(PixelRaster.of(first).getData(), PixelRaster.of(second).getData());
+	}
+
+	/**
+	 * the pooled pipeline has to write the same icon as the one creating new images
+	 * @throws IOException if a frame cannot be read
+	 */
+	@Test
+	public void pooledIconMatchesImages() throws IOException {
+		Random random = new Random(18);
+		BufferedImage picture = new BufferedImage(190, 175, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < picture.getHeight(); y++) {
+			for (int x = 0; x < picture.getWidth(); x++) {
+				picture.setRGB(x, y, 0xFF000000 | random.nextInt(1 << 24));
+			}
+		}
+		IconSettings settings = new IconSettings();
+		settings.readOption("--recipe", "frame=GoldenRing,overlap,cutout,landscape");
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		settings.getEncoder().write(settings.createIcon(picture), Channels.newChannel(expected));
+		long hits = BufferPool.getDefault().getHits();
+		for (int run = 0; run < 3; run++) {
+			ByteArrayOutputStream pooled = new ByteArrayOutputStream();
+			settings.writeIcon(picture, Channels.newChannel(pooled));
+			assertArrayEquals(expected.toByteArray(), pooled.toByteArray());
+		}
+		assertTrue(BufferPool.getDefault().getHits() > hits);
+
+		PixelRaster raster = PixelRaster.allocate(30, 20);
+		BufferedImage image = raster.toImage();
+		assertEquals(BufferedImage.TYPE_INT_ARGB, image.getType());
+		image.setRGB(4, 3, 0x80102030);
+		assertEquals(0x80102030, raster.getData()[3 * 30 + 4]);
+		raster.release();
+	}
+
+}
@@ -0,0 +1,171 @@
+package eu.jlmb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eu.jlmb.MapIcon.DummyWatcher;
+import eu.jlmb.MapIcon.IconSettings;
+import eu.jlmb.MapIcon.PrefManager;
+import eu.jlmb.MapIcon.Recipe;
+
+/**
+ *
+ * @author Jean Baumgarten
+ *
+ */
+public class DummyWatcherTest {
+
+	private static final long DEBOUNCE = 200;
+	private static final String WRITTEN = "Icon for ";
+
+	/**
+	 * folder for the Dummy.png and the icon
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * several writes in a row give one icon made of the last content,
+	 * writing the same content again gives none and a new content gives the next one,
+	 * no temporary file is left next to the icon
+	 * @throws Exception if the files cannot be written or the watcher fails
+	 */
+	@Test
+	public void writesIconOncePerNewContent() throws Exception {
+		Path editor = this.folder.newFolder("Temp").toPath();
+		Path dummy = editor.resolve("Dummy.png");
+		Path icons = this.folder.newFolder("icons").toPath();
+		Path target = icons.resolve("mapicon.png");
+		byte[] map = resource("dummy.png");
+		IconSettings settings = new IconSettings();
+		settings.setRecipe(Recipe.parse("frame=GoldenRing,cutout"));
+		settings.setCache(null);
+		DummyWatcher watcher = new DummyWatcher(Collections.singletonList(dummy), settings, target, DEBOUNCE);
+
+		PrintStream out = System.out;
+		ByteArrayOutputStream captured = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(captured, true));
+		Thread thread = new Thread(() -> {
+			try {
+				watcher.run();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}, "Watcher");
+		try {
+			thread.start();
+			awaitOutput(captured, "Watching", 1);
+			// the editor writes the file in parts, only the complete file is read
+			Files.write(dummy, Arrays.copyOf(map, map.length / 2));
+			Thread.sleep(DEBOUNCE / 4);
+			Files.write(dummy, map);
+			awaitOutput(captured, WRITTEN, 1);
+			assertNotNull(ImageIO.read(target.toFile()));
+
+			Files.write(dummy, map);
+			Thread.sleep(3 * DEBOUNCE);
+			Files.write(dummy, resource("dummy_Ring.png"));
+			awaitOutput(captured, WRITTEN, 2);
+			Thread.sleep(2 * DEBOUNCE);
+		} finally {
+			thread.interrupt();
+			thread.join(5000);
+			System.setOut(out);
+		}
+		assertEquals(2, count(captured, WRITTEN));
+		try (Stream<Path> files = Files.list(icons)) {
+			assertEquals(Collections.singletonList(target), files.collect(Collectors.toList()));
+		}
+	}
+
+	/**
+	 * without operations on the command line and without a saved recipe there is nothing to do
+	 */
+	@Test
+	public void needsRecipe() {
+		PrefManager manager = new PrefManager(this.folder.getRoot().toPath().resolve("prefs.txt"));
+		try {
+			DummyWatcher.fromArguments(new String[] {"--watch"}, manager);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("--recipe"));
+		}
+		assertNotNull(DummyWatcher.fromArguments(new String[] {"--watch", "--ops", "cutout"}, manager));
+		manager.setRecipe(Recipe.parse("frame=GoldenRing,overlap"));
+		assertNotNull(DummyWatcher.fromArguments(new String[] {"--watch"}, manager));
+		try {
+			DummyWatcher.fromArguments(new String[] {"--watch", "--debounce", "soon"}, manager);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("--debounce"));
+		}
+	}
+
+	/**
+	 * waits until a text was written often enough
+	 * @param captured output of the watcher
+	 * @param text to wait for
+	 * @param times the text has to be found
+	 * @throws InterruptedException if the test is interrupted
+	 */
+	private static void awaitOutput(ByteArrayOutputStream captured, String text, int times)
+			throws InterruptedException {
+		for (int i = 0; i < 500 && count(captured, text) < times; i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(new String(captured.toByteArray(), StandardCharsets.UTF_8), count(captured, text) >= times);
+	}
+
+	/**
+	 * counts how often a text was written
+	 * @param captured output of the watcher
+	 * @param text to count
+	 * @return number of occurrences
+	 */
+	private static int count(ByteArrayOutputStream captured, String text) {
+		String log = new String(captured.toByteArray(), StandardCharsets.UTF_8);
+		int count = 0;
+		for (int at = log.indexOf(text); at >= 0; at = log.indexOf(text, at + 1)) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * reads a test image
+	 * @param name of the resource
+	 * @return content of the file
+	 * @throws IOException if the resource is missing
+	 */
+	private static byte[] resource(String name) throws IOException {
+		try (InputStream in = DummyWatcherTest.class.getResourceAsStream("/eu/jlmb/" + name)) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			for (int read = in.read(buffer); read > 0; read = in.read(buffer)) {
+				bytes.write(buffer, 0, read);
+			}
+			return bytes.toByteArray();
+		}
+	}
+
+}
@@ -0,0 +1,131 @@
+package eu.jlmb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+import eu.jlmb.MapIcon.EditHistory;
+import eu.jlmb.MapIcon.TiledImage;
+
+/**
+ *
+ * @author Jean Baumgarten
+ *
+ */
+public class EditHistoryTest {
+
+	/**
+	 * undo and redo have to give back exactly the pixels of every step
+	 */
+	@Test
+	public void undoAndRedo() {
+		EditHistory history = new EditHistory(picture(190, 175, 0xFF102030));
+		BufferedImage start = copy(history.getWorkingImage());
+		history.getWorkingImage().setRGB(5, 5, 0xFFFFFFFF);
+		history.commit();
+		BufferedImage first = copy(history.getWorkingImage());
+		history.getWorkingImage().setRGB(150, 160, 0x00000000);
+		history.commit();
+		BufferedImage second = copy(history.getWorkingImage());
+
+		assertSamePixels(first, history.undo().toImage());
+		assertSamePixels(first, history.getWorkingImage());
+		assertSamePixels(start, history.undo().toImage());
+		assertSamePixels(start, history.getWorkingImage());
+		assertFalse(history.canUndo());
+		assertNull(history.undo());
+		history.redo();
+		assertSamePixels(second, history.redo().toImage());
+		assertSamePixels(second, history.getWorkingImage());
+		assertFalse(history.canRedo());
+	}
+
+	/**
+	 * a step only stores the tiles that changed, the others are shared with the step before
+	 */
+	@Test
+	public void sharesUnchangedTiles() {
+		EditHistory history = new EditHistory(picture(190, 175, 0xFF102030));
+		TiledImage start = history.current();
+		assertEquals(9, start.getTileCount());
+		history.getWorkingImage().setRGB(70, 70, 0xFFFFFFFF);
+		TiledImage changed = history.commit();
+		assertEquals(1, changed.countNewTiles(start));
+		assertEquals(4L * 190 * 175 + 4L * 64 * 64, history.getMemory());
+		assertSame(changed, history.commit());
+		assertEquals(2, history.size());
+	}
+
+	/**
+	 * reverting throws away uncommitted changes, a new step drops the undone steps
+	 */
+	@Test
+	public void revertAndBranch() {
+		EditHistory history = new EditHistory(picture(100, 100, 0xFF102030));
+		BufferedImage start = copy(history.getWorkingImage());
+		history.getWorkingImage().setRGB(1, 1, 0xFFFFFFFF);
+		history.revert();
+		assertSamePixels(start, history.getWorkingImage());
+		history.getWorkingImage().setRGB(1, 1, 0xFFFFFFFF);
+		history.commit();
+		history.undo();
+		history.getWorkingImage().setRGB(2, 2, 0xFFFFFFFF);
+		history.commit();
+		assertFalse(history.canRedo());
+		assertEquals(2, history.size());
+		assertEquals(0xFF102030, history.getWorkingImage().getRGB(1, 1));
+	}
+
+	/**
+	 * the oldest steps are dropped when the limits are reached
+	 */
+	@Test
+	public void keepsLimits() {
+		EditHistory history = new EditHistory(picture(128, 128, 0xFF102030), 10 * 4L * 64 * 64, 50);
+		for (int i = 0; i < 20; i++) {
+			history.getWorkingImage().setRGB(i, i, 0xFF000000 | i);
+			history.commit();
+			assertTrue(history.getMemory() <= 10 * 4L * 64 * 64);
+		}
+		assertEquals(7, history.size());
+		EditHistory few = new EditHistory(picture(10, 10, 0xFF102030), EditHistory.DEFAULT_BUDGET, 3);
+		for (int i = 0; i < 5; i++) {
+			few.getWorkingImage().setRGB(i, i, 0xFF000000 | i);
+			few.commit();
+		}
+		assertEquals(3, few.size());
+		assertEquals(0xFF000004, few.getWorkingImage().getRGB(4, 4));
+	}
+
+	private static BufferedImage picture(int width, int height, int color) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.setRGB(x, y, color + (x ^ y));
+			}
+		}
+		return image;
+	}
+
+	private static BufferedImage copy(BufferedImage image) {
+		BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+		int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+		copy.setRGB(0, 0, image.getWidth(), image.getHeight(), pixels, 0, image.getWidth());
+		return copy;
+	}
+
+	private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				assertEquals(x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+			}
+		}
+	}
+
+}
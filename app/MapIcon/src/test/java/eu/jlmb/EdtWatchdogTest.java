@@ -0,0 +1,97 @@
+package eu.jlmb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.EventQueue;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import eu.jlmb.MapIcon.EdtWatchdog;
+import eu.jlmb.MapIcon.Metrics;
+
+/**
+ *
+ * @author Jean Baumgarten
+ *
+ */
+public class EdtWatchdogTest {
+
+	/**
+	 * a blocked event dispatch thread is reported with the running action and its stack,
+	 * the action shows up in the histograms
+	 * @throws InterruptedException if the test is interrupted
+	 * @throws InvocationTargetException if the action fails
+	 */
+	@Test
+	public void reportsStall() throws InterruptedException, InvocationTargetException {
+		EdtWatchdog watchdog = new EdtWatchdog();
+		PrintStream err = System.err;
+		ByteArrayOutputStream captured = new ByteArrayOutputStream();
+		System.setErr(new PrintStream(captured, true));
+		// the first timer loads the flight recorder event, that should not be the stall that is reported
+		try (Metrics.Timer warmUp = Metrics.start("warm-up")) {
+			warmUp.done(0, 0);
+		}
+		try {
+			watchdog.start(50);
+			EventQueue.invokeAndWait(() -> watchdog.measure("slow", () -> {
+				try {
+					Thread.sleep(400);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}));
+			for (int i = 0; i < 100 && watchdog.getStalls() == 0; i++) {
+				Thread.sleep(10);
+			}
+		} finally {
+			System.setErr(err);
+		}
+		assertTrue(watchdog.getStalls() >= 1);
+		String log = new String(captured.toByteArray(), StandardCharsets.UTF_8);
+		assertTrue(log, log.contains("in action slow"));
+		assertTrue(log, log.contains("Thread.sleep"));
+		String report = watchdog.report();
+		assertTrue(report, report.contains(EdtWatchdog.PREFIX + "slow: 1"));
+		assertTrue(report, report.contains(">250 ms: 1") || report.contains("<=500 ms: 1"));
+	}
+
+	/**
+	 * the watchdog is only turned on by the command line, the threshold may follow the option
+	 */
+	@Test
+	public void readsThreshold() {
+		assertEquals(0, EdtWatchdog.threshold(new String[] {"--startup-profile"}));
+		assertEquals(0, EdtWatchdog.threshold(new String[] {EdtWatchdog.OPTION, "0"}));
+		assertEquals(EdtWatchdog.DEFAULT_THRESHOLD, EdtWatchdog.threshold(new String[] {EdtWatchdog.OPTION}));
+		assertEquals(EdtWatchdog.DEFAULT_THRESHOLD,
+				EdtWatchdog.threshold(new String[] {EdtWatchdog.OPTION, "--startup-profile"}));
+		assertEquals(50, EdtWatchdog.threshold(new String[] {EdtWatchdog.OPTION, "50"}));
+		try {
+			EdtWatchdog.threshold(new String[] {EdtWatchdog.OPTION, "soon"});
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains(EdtWatchdog.OPTION));
+		}
+	}
+
+	/**
+	 * a watchdog that is not started runs the actions without measuring them
+	 */
+	@Test
+	public void measuresOnlyWhenStarted() {
+		EdtWatchdog watchdog = new EdtWatchdog();
+		boolean[] ran = new boolean[1];
+		watchdog.measure("unwatched", () -> ran[0] = true);
+		assertTrue(ran[0]);
+		assertFalse(watchdog.report(), watchdog.report().contains("unwatched"));
+	}
+
+}
@@ -0,0 +1,105 @@
+package eu.jlmb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eu.jlmb.MapIcon.FrameAtlas;
+import eu.jlmb.MapIcon.FrameRegistry;
+import eu.jlmb.MapIcon.PixelRaster;
+
+/**
+ *
+ * @author Jean Baumgarten
+ *
+ */
+public class FrameAtlasTest {
+
+	/**
+	 * folder for a freshly packed atlas
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * every picture cut out of the atlas has to match its source file and share the pixels of the atlas
+	 * @throws IOException if a picture cannot be read
+	 */
+	@Test
+	public void picturesMatchSources() throws IOException {
+		File[] sources = new File("src/main/frames").listFiles((folder, name) -> name.endsWith(".png"));
+		assertEquals(13, sources.length);
+		int[] atlas = PixelRaster.of(FrameRegistry.getDefault().getPicture(FrameRegistry.S5_ICON)).getData();
+		for (File source : sources) {
+			BufferedImage expected = ImageIO.read(source);
+			BufferedImage picture = FrameRegistry.getDefault().getPicture(source.getName());
+			assertEquals(BufferedImage.TYPE_INT_ARGB, picture.getType());
+			assertSame(atlas, PixelRaster.of(picture).getData());
+			int width = expected.getWidth();
+			int height = expected.getHeight();
+			assertEquals(width, picture.getWidth());
+			assertEquals(height, picture.getHeight());
+			assertArrayEquals(source.getName(), expected.getRGB(0, 0, width, height, null, 0, width),
+					picture.getRGB(0, 0, width, height, null, 0, width));
+		}
+		assertSame(FrameRegistry.getDefault().getFrame("GoldenRing"),
+				FrameRegistry.getDefault().getPicture(FrameRegistry.frameResource("GoldenRing")));
+	}
+
+	/**
+	 * the atlas kept in the resources has to hold the current pictures
+	 * @throws IOException if the atlas cannot be packed or read
+	 */
+	@Test
+	public void keptAtlasIsCurrent() throws IOException {
+		Path packed = this.folder.getRoot().toPath();
+		FrameAtlas.main(new String[] {"src/main/frames", packed.toString()});
+		Path kept = Paths.get("src/main/resources/eu/jlmb");
+		String hint = "pack the atlas again into " + kept;
+		try (InputStream expected = Files.newInputStream(packed.resolve(FrameAtlas.INDEX));
+				InputStream actual = Files.newInputStream(kept.resolve(FrameAtlas.INDEX))) {
+			assertEquals(hint, FrameAtlas.readIndex(expected), FrameAtlas.readIndex(actual));
+		}
+		BufferedImage expected = ImageIO.read(packed.resolve(FrameAtlas.IMAGE).toFile());
+		BufferedImage actual = ImageIO.read(kept.resolve(FrameAtlas.IMAGE).toFile());
+		int width = expected.getWidth();
+		int height = expected.getHeight();
+		assertEquals(hint, width, actual.getWidth());
+		assertEquals(hint, height, actual.getHeight());
+		assertArrayEquals(hint, expected.getRGB(0, 0, width, height, null, 0, width),
+				actual.getRGB(0, 0, width, height, null, 0, width));
+	}
+
+	/**
+	 * missing folders are a usage error instead of ending the JVM of the build
+	 * @throws IOException never
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void usageError() throws IOException {
+		FrameAtlas.main(new String[] {"src/main/frames"});
+	}
+
+	/**
+	 * an unknown picture is reported as an IOException
+	 * @throws IOException always
+	 */
+	@Test(expected = IOException.class)
+	public void unknownPicture() throws IOException {
+		FrameRegistry.getDefault().getFrame("NoRing");
+	}
+
+}
@@ -0,0 +1,97 @@
+package eu.jlmb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import eu.jlmb.MapIcon.FrameGallery;
+import eu.jlmb.MapIcon.FrameRegistry;
+import eu.jlmb.MapIcon.IconCreater;
+import eu.jlmb.MapIcon.Operation;
+import eu.jlmb.MapIcon.PixelRaster;
+
+/**
+ *
+ * @author Jean Baumgarten
+ *
+ */
+public class FrameGalleryTest {
+
+	/**
+	 * every frame has to give the same pixels as the operation itself,
+	 * results are found by the content of the picture and the oldest picture is dropped
+	 * @throws IOException if the test image or a frame is missing
+	 */
+	@Test
+	public void composesEveryFrame() throws IOException {
+		BufferedImage picture = PixelRaster.copyArgb(ImageIO.read(
+				FrameGalleryTest.class.getResourceAsStream("/eu/jlmb/dummy.png")));
+		FrameGallery gallery = new FrameGallery(2, 1);
+		Map<String, CompletableFuture<FrameGallery.Preview>> results = gallery.compose(picture, Operation.CUTOUT);
+		assertEquals(FrameRegistry.FRAME_NAMES.size(), results.size());
+		assertSame(results, gallery.compose(PixelRaster.copyArgb(picture), Operation.CUTOUT));
+
+		for (String name : FrameRegistry.FRAME_NAMES) {
+			FrameGallery.Preview preview = results.get(name).join();
+			BufferedImage thumbnail = preview.getThumbnail();
+			assertTrue(Math.max(thumbnail.getWidth(), thumbnail.getHeight()) <= FrameGallery.THUMBNAIL_SIZE);
+			assertSame(preview, gallery.find(picture, Operation.CUTOUT, name));
+
+			IconCreater creater = new IconCreater(PixelRaster.copyArgb(picture));
+			Operation.CUTOUT.apply(creater, FrameRegistry.getDefault().getFrame(name));
+			BufferedImage copied = new BufferedImage(picture.getWidth(), picture.getHeight(),
+					BufferedImage.TYPE_INT_ARGB);
+			preview.copyInto(copied);
+			assertArrayEquals(pixels(creater.getIcon()), pixels(copied));
+		}
+		assertNull(gallery.find(picture, Operation.OVERLAP, FrameRegistry.FRAME_NAMES.get(0)));
+
+		BufferedImage changed = PixelRaster.copyArgb(picture);
+		changed.setRGB(0, 0, ~changed.getRGB(0, 0));
+		assertNull(gallery.find(changed, Operation.CUTOUT, FrameRegistry.FRAME_NAMES.get(0)));
+		gallery.compose(changed, Operation.CUTOUT).get(FrameRegistry.FRAME_NAMES.get(0)).join();
+		assertNotNull(gallery.find(changed, Operation.CUTOUT, FrameRegistry.FRAME_NAMES.get(0)));
+		assertNull(gallery.find(picture, Operation.CUTOUT, FrameRegistry.FRAME_NAMES.get(0)));
+	}
+
+	/**
+	 * a result is only handed out for the pixels it was made from,
+	 * even if the picture is changed after it was composed
+	 * @throws IOException if the test image is missing
+	 */
+	@Test
+	public void verifiesThePixels() throws IOException {
+		BufferedImage picture = PixelRaster.copyArgb(ImageIO.read(
+				FrameGalleryTest.class.getResourceAsStream("/eu/jlmb/dummy.png")));
+		String name = FrameRegistry.FRAME_NAMES.get(0);
+		FrameGallery gallery = new FrameGallery(2, 1);
+		FrameGallery.Preview preview = gallery.compose(picture, Operation.OVERLAP).get(name).join();
+		assertEquals(FrameGallery.contentKey(picture), preview.getContentKey());
+		assertEquals(64, preview.getContentKey().length());
+		assertTrue(preview.isMadeFrom(PixelRaster.copyArgb(picture)));
+		assertFalse(preview.isMadeFrom(picture.getSubimage(0, 0, picture.getWidth() - 1, picture.getHeight())));
+
+		picture.setRGB(picture.getWidth() - 1, picture.getHeight() - 1,
+				~picture.getRGB(picture.getWidth() - 1, picture.getHeight() - 1));
+		assertFalse(preview.isMadeFrom(picture));
+		assertNull(gallery.find(picture, Operation.OVERLAP, name));
+	}
+
+	private static int[] pixels(BufferedImage image) {
+		return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+	}
+
+}
@@ -0,0 +1,116 @@
+package eu.jlmb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eu.jlmb.MapIcon.IconCache;
+import eu.jlmb.MapIcon.IconSettings;
+
+/**
+ *
+ * @author Jean Baumgarten
+ *
+ */
+public class IconCacheTest {
+
+	/**
+	 * folder for the cache and the icons
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * the key has to change with the pixels and with every setting
+	 */
+	@Test
+	public void keyDependsOnPixelsAndSettings() {
+		BufferedImage picture = new BufferedImage(20, 10, BufferedImage.TYPE_INT_ARGB);
+		IconSettings settings = new IconSettings();
+		String key = IconCache.key(picture, settings);
+		assertEquals(key, IconCache.key(picture, new IconSettings()));
+		settings.readOption("--recipe", "frame=GoldenRing,cutout");
+		assertNotEquals(key, IconCache.key(picture, settings));
+		IconSettings compressed = new IconSettings();
+		compressed.readOption("--compression", "9");
+		assertNotEquals(key, IconCache.key(picture, compressed));
+		picture.setRGB(3, 4, 0xFF000001);
+		assertNotEquals(key, IconCache.key(picture, new IconSettings()));
+	}
+
+	/**
+	 * a stored icon is copied back, the least recently used icons are deleted when the cache is full
+	 * @throws IOException if the files cannot be written
+	 */
+	@Test
+	public void evictsLeastRecentlyUsed() throws IOException {
+		Path directory = this.folder.newFolder("cache").toPath();
+		IconCache cache = new IconCache(directory, 250);
+		Path icon = this.folder.newFile("icon.png").toPath();
+		Path copy = this.folder.getRoot().toPath().resolve("copy.png");
+
+		Files.write(icon, new byte[100]);
+		cache.store("a", icon);
+		Files.write(icon, new byte[100]);
+		cache.store("b", icon);
+		Files.write(icon, new byte[] {1, 2, 3});
+		cache.store("c", icon);
+		assertTrue(cache.copyTo("c", copy));
+		assertArrayEquals(new byte[] {1, 2, 3}, Files.readAllBytes(copy));
+		assertTrue(cache.copyTo("a", copy));
+
+		Files.write(icon, new byte[100]);
+		cache.store("d", icon);
+		assertFalse(cache.copyTo("b", copy));
+		assertFalse(Files.exists(directory.resolve("b.png")));
+		assertTrue(cache.copyTo("a", copy));
+		assertEquals(203, cache.getBytes());
+		assertEquals(3, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		IconCache reopened = new IconCache(directory, 250);
+		assertEquals(203, reopened.getBytes());
+		assertTrue(reopened.copyTo("d", copy));
+	}
+
+	/**
+	 * an icon is still written if the cache cannot store it
+	 * @throws IOException if the icon cannot be written
+	 */
+	@Test
+	public void writesIconWithoutWritableCache() throws IOException {
+		Path blocked = this.folder.newFile("cache").toPath();
+		Path target = this.folder.getRoot().toPath().resolve("icon.png");
+		IconSettings settings = new IconSettings();
+		settings.setCache(new IconCache(blocked, 1 << 20));
+		PrintStream err = System.err;
+		ByteArrayOutputStream captured = new ByteArrayOutputStream();
+		System.setErr(new PrintStream(captured, true));
+		try {
+			settings.writeIcon(new BufferedImage(120, 90, BufferedImage.TYPE_INT_ARGB), target);
+		} finally {
+			System.setErr(err);
+		}
+		assertNotNull(ImageIO.read(target.toFile()));
+		String log = new String(captured.toByteArray(), StandardCharsets.UTF_8);
+		assertTrue(log, log.contains("Error while storing the icon in the cache"));
+	}
+
+}
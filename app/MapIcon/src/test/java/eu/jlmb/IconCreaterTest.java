@@ -1,7 +1,24 @@
 package eu.jlmb;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
 import org.junit.Test;
 
+import eu.jlmb.MapIcon.FrameGeometry;
+import eu.jlmb.MapIcon.IconCreater;
+import eu.jlmb.MapIcon.OutputStage;
+import eu.jlmb.MapIcon.PixelRaster;
+import eu.jlmb.MapIcon.RasterCompositor;
+import eu.jlmb.MapIcon.RowBands;
+
 /**
  * 
  * @author Jean Baumgarten
@@ -19,4 +36,283 @@ public class IconCreaterTest {
         assert (true);
 	}
 
+	/**
+	 * overlapping has to give the same pixels as the per pixel implementation
+	 * @throws IOException if the test images are missing
+	 */
+	@Test
+	public void overlappMatchesLegacy() throws IOException {
+		BufferedImage frame = load("dummy_Ring.png");
+		BufferedImage expected = legacyOverlapp(load("dummy.png"), frame);
+		IconCreater creater = new IconCreater(load("dummy.png"));
+		creater.addOverlappImage(frame);
+		assertArrayEquals(pixels(expected), pixels(creater.getIcon()));
+	}
+
+	/**
+	 * cutting out has to give the same pixels as the per pixel implementation
+	 * @throws IOException if the test images are missing
+	 */
+	@Test
+	public void cutOutMatchesLegacy() throws IOException {
+		BufferedImage frame = load("dummy_Ring.png");
+		BufferedImage expected = legacyCutOut(load("dummy.png"), frame);
+		IconCreater creater = new IconCreater(load("dummy.png"));
+		creater.addCutOutImage(frame);
+		assertArrayEquals(pixels(expected), pixels(creater.getIcon()));
+	}
+
+	/**
+	 * the rules have to hold for half transparent pixels as well
+	 */
+	@Test
+	public void randomImagesMatchLegacy() {
+		BufferedImage frame = random(190, 175, 1);
+		IconCreater overlapp = new IconCreater(random(190, 175, 2));
+		overlapp.addOverlappImage(frame);
+		assertArrayEquals(pixels(legacyOverlapp(random(190, 175, 2), frame)), pixels(overlapp.getIcon()));
+		IconCreater cutout = new IconCreater(random(190, 175, 2));
+		cutout.addCutOutImage(frame);
+		assertArrayEquals(pixels(legacyCutOut(random(190, 175, 2), frame)), pixels(cutout.getIcon()));
+		IconCreater landscape = new IconCreater(random(190, 175, 2));
+		landscape.cutOutLandscape();
+		assertArrayEquals(pixels(legacyLandscape(random(190, 175, 2))), pixels(landscape.getIcon()));
+	}
+
+	/**
+	 * masks of another geometry have to cut at the same pixels as the circle equation
+	 */
+	@Test
+	public void otherGeometryMatchesLegacy() {
+		FrameGeometry geometry = new FrameGeometry(40, 150, 33, 70);
+		BufferedImage frame = random(190, 175, 3);
+		IconCreater cutout = new IconCreater(random(190, 175, 4), geometry);
+		cutout.addCutOutImage(frame);
+		assertArrayEquals(pixels(legacyCutOut(random(190, 175, 4), frame, 40, 150, 70)), pixels(cutout.getIcon()));
+		IconCreater landscape = new IconCreater(random(190, 175, 4), geometry);
+		landscape.cutOutLandscape();
+		assertArrayEquals(pixels(legacyLandscape(random(190, 175, 4), 40, 150, 33)), pixels(landscape.getIcon()));
+	}
+
+	/**
+	 * the fused crop has to give the same square as cutting the border and squaring one after another
+	 * @throws IOException if the test images are missing
+	 */
+	@Test
+	public void cropToSquareMatchesLegacy() throws IOException {
+		IconCreater creater = new IconCreater(load("dummy.png"));
+		creater.addCutOutImage(load("dummy_Ring.png"));
+		BufferedImage expected = legacySquare(legacyCutAlphaBorder(creater.getIcon()));
+		assertArrayEquals(pixels(expected), pixels(OutputStage.cropToSquare(creater.getIcon())));
+		IconCreater landscape = new IconCreater(random(190, 175, 5));
+		landscape.cutOutLandscape();
+		expected = legacySquare(legacyCutAlphaBorder(landscape.getIcon()));
+		assertArrayEquals(pixels(expected), pixels(OutputStage.cropToSquare(landscape.getIcon())));
+	}
+
+	/**
+	 * source over has to match the floating point formula after premultiplying, keep opaque and empty pixels exactly
+	 * and let half transparent frame pixels through overlap
+	 */
+	@Test
+	public void sourceOverMatchesFormula() {
+		Random random = new Random(15);
+		for (int i = 0; i < 200000; i++) {
+			int back = random.nextInt();
+			int front = random.nextInt();
+			int result = RasterCompositor.over(back, front);
+			double fa = (front >>> 24) / 255.0;
+			double ba = (back >>> 24) / 255.0;
+			double na = fa + ba * (1 - fa);
+			double ra = (result >>> 24) / 255.0;
+			assertEquals(na, ra, 1 / 255.0);
+			for (int shift = 0; shift < 24; shift += 8) {
+				double expected = ((front >> shift) & 0xFF) * fa + ((back >> shift) & 0xFF) * ba * (1 - fa);
+				assertEquals(expected, ((result >> shift) & 0xFF) * ra, 1.0);
+			}
+		}
+		assertEquals(0xFF102030, RasterCompositor.over(0x80FFFFFF, 0xFF102030));
+		assertEquals(0x80FFFFFF, RasterCompositor.over(0x80FFFFFF, 0x00102030));
+		assertEquals(0x40102030, RasterCompositor.over(0x00FFFFFF, 0x40102030));
+		assertEquals(0xFF808080, RasterCompositor.over(0xFF000000, 0x80FFFFFF));
+
+		IconCreater creater = new IconCreater(new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB),
+				FrameGeometry.DEFAULT, RasterCompositor.Blend.SOURCE_OVER);
+		BufferedImage frame = new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB);
+		frame.setRGB(1, 1, 0x80FF0000);
+		creater.addOverlappImage(frame);
+		assertEquals(0x80FF0000, creater.getIcon().getRGB(1, 1));
+		assertEquals(RasterCompositor.Blend.SOURCE_OVER, RasterCompositor.Blend.parse("Source-Over"));
+	}
+
+	/**
+	 * splitting the rows into parallel bands has to give the same pixels as the serial loops
+	 * @throws IOException if the test images are missing
+	 */
+	@Test
+	public void parallelMatchesSerial() throws IOException {
+		BufferedImage picture = random(760, 700, 6);
+		BufferedImage frame = load("dummy_Ring.png");
+		FrameGeometry geometry = new FrameGeometry(380, 350, 300, 320);
+		try {
+			for (RasterCompositor.Blend blend : RasterCompositor.Blend.values()) {
+				BufferedImage[] results = new BufferedImage[2];
+				for (int i = 0; i < 2; i++) {
+					RowBands.setThreshold(i == 0 ? Long.MAX_VALUE : 1);
+					IconCreater creater = new IconCreater(copy(picture), geometry, blend);
+					creater.addOverlappImage(frame);
+					creater.addCutOutImage(frame);
+					creater.cutOutLandscape();
+					results[i] = creater.getIcon();
+				}
+				assertArrayEquals(pixels(results[0]), pixels(results[1]));
+				int[] parallel = OutputStage.findBounds(PixelRaster.of(results[1]));
+				RowBands.setThreshold(Long.MAX_VALUE);
+				assertArrayEquals(OutputStage.findBounds(PixelRaster.of(results[0])), parallel);
+			}
+		} finally {
+			RowBands.setThreshold(RowBands.DEFAULT_THRESHOLD);
+		}
+	}
+
+	private static BufferedImage copy(BufferedImage image) {
+		BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+		copy.setRGB(0, 0, image.getWidth(), image.getHeight(), pixels(image), 0, image.getWidth());
+		return copy;
+	}
+
+	private static BufferedImage load(String name) throws IOException {
+		BufferedImage image = ImageIO.read(IconCreaterTest.class.getResourceAsStream("/eu/jlmb/" + name));
+		BufferedImage argb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+		for (int x = 0; x < image.getWidth(); x++) {
+			for (int y = 0; y < image.getHeight(); y++) {
+				argb.setRGB(x, y, image.getRGB(x, y));
+			}
+		}
+		return argb;
+	}
+
+	private static BufferedImage random(int width, int height, long seed) {
+		Random random = new Random(seed);
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				int alpha = new int[] {0, 255, random.nextInt(256)}[random.nextInt(3)];
+				image.setRGB(x, y, (alpha << 24) | random.nextInt(1 << 24));
+			}
+		}
+		return image;
+	}
+
+	private static int[] pixels(BufferedImage image) {
+		return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+	}
+
+	private static BufferedImage legacyOverlapp(BufferedImage image, BufferedImage other) {
+		for (int x = 0; x < image.getWidth(); x++) {
+			for (int y = 0; y < image.getHeight(); y++) {
+				Color color = new Color(other.getRGB(x, y), true);
+				Color imagecolor = new Color(image.getRGB(x, y), true);
+				if (color.getAlpha() == 255) {
+					image.setRGB(x, y, legacyCombine(imagecolor, color).getRGB());
+				}
+			}
+		}
+		return image;
+	}
+
+	private static BufferedImage legacyCutOut(BufferedImage image, BufferedImage other) {
+		return legacyCutOut(image, other, 97, 90, 65);
+	}
+
+	private static BufferedImage legacyCutOut(BufferedImage image, BufferedImage other, int cx, int cy, int r) {
+		for (int x = 0; x < image.getWidth(); x++) {
+			for (int y = 0; y < image.getHeight(); y++) {
+				Color color = new Color(other.getRGB(x, y), true);
+				Color imagecolor = new Color(image.getRGB(x, y), true);
+				if (!legacyInside(cx, cy, r, x, y)) {
+					image.setRGB(x, y, 0);
+				}
+				if (color.getAlpha() != 0) {
+					if (legacyInside(cx, cy, r, x, y)) {
+						image.setRGB(x, y, legacyCombine(imagecolor, color).getRGB());
+					} else {
+						image.setRGB(x, y, color.getRGB());
+					}
+				}
+			}
+		}
+		return image;
+	}
+
+	private static BufferedImage legacyLandscape(BufferedImage image) {
+		return legacyLandscape(image, 97, 90, 62);
+	}
+
+	private static BufferedImage legacyLandscape(BufferedImage image, int cx, int cy, int r) {
+		for (int x = 0; x < image.getWidth(); x++) {
+			for (int y = 0; y < image.getHeight(); y++) {
+				if (!legacyInside(cx, cy, r, x, y)) {
+					image.setRGB(x, y, 0);
+				}
+			}
+		}
+		return image;
+	}
+
+	private static boolean legacyInside(int cx, int cy, int radius, int x, int y) {
+		return ((x - cx) * (x - cx) + (y - cy) * (y - cy)) < (radius * radius);
+	}
+
+	private static Color legacyCombine(Color back, Color front) {
+		if (front.getAlpha() == 255) {
+			return front;
+		}
+		return new Color((front.getRed() + back.getRed()) / 2, (front.getGreen() + back.getGreen()) / 2,
+				(front.getBlue() + back.getBlue()) / 2, (front.getAlpha() + back.getAlpha()) / 2);
+	}
+
+	private static BufferedImage legacyCutAlphaBorder(BufferedImage picture) {
+		int width = picture.getWidth();
+		int height = picture.getHeight();
+		int startX = width;
+		int startY = height;
+		int endX = 0;
+		int endY = 0;
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				if (new Color(picture.getRGB(x, y), true).getAlpha() != 0) {
+					startX = Math.min(x, startX);
+					startY = Math.min(y, startY);
+					endX = Math.max(x, endX);
+					endY = Math.max(y, endY);
+				}
+			}
+		}
+		startX = (startX > 2) ? (startX - 2) : startX;
+		startY = (startY > 2) ? (startY - 2) : startY;
+		endX = (endX < (width - 2)) ? (endX + 2) : endX;
+		endY = (endY < (height - 2)) ? (endY + 2) : endY;
+		BufferedImage cutImage = new BufferedImage(endX - startX, endY - startY, BufferedImage.TYPE_INT_ARGB);
+		for (int x = 0; x < endX - startX; x++) {
+			for (int y = 0; y < endY - startY; y++) {
+				cutImage.setRGB(x, y, picture.getRGB(x + startX, y + startY));
+			}
+		}
+		return cutImage;
+	}
+
+	private static BufferedImage legacySquare(BufferedImage picture) {
+		int side = Math.max(picture.getWidth(), picture.getHeight());
+		BufferedImage squaredImage = new BufferedImage(side, side, BufferedImage.TYPE_INT_ARGB);
+		int startX = (side - picture.getWidth()) / 2;
+		int startY = (side - picture.getHeight()) / 2;
+		for (int x = 0; x < picture.getWidth(); x++) {
+			for (int y = 0; y < picture.getHeight(); y++) {
+				squaredImage.setRGB(x + startX, y + startY, picture.getRGB(x, y));
+			}
+		}
+		return squaredImage;
+	}
+
 }
@@ -0,0 +1,129 @@
+package eu.jlmb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import eu.jlmb.MapIcon.IconServer;
+import eu.jlmb.MapIcon.IconSettings;
+
+/**
+ *
+ * @author Jean Baumgarten
+ *
+ */
+public class IconServerTest {
+
+	/**
+	 * an uploaded picture is answered with the icon, wrong requests with an error
+	 * @throws IOException if the server cannot be started
+	 */
+	@Test
+	public void createsIcons() throws IOException {
+		IconSettings settings = new IconSettings();
+		settings.setCache(null);
+		IconServer server = new IconServer(new InetSocketAddress("127.0.0.1", 0), settings, 1, 1, 1 << 20);
+		server.start();
+		try {
+			String base = "http://127.0.0.1:" + server.getPort();
+			byte[] dummy = read(IconServerTest.class.getResourceAsStream("/eu/jlmb/dummy.png"));
+
+			HttpURLConnection icon = post(base + "/icon?frame=GoldenRing&ops=cutout,landscape", dummy);
+			assertEquals(200, icon.getResponseCode());
+			assertEquals("image/png", icon.getContentType());
+			BufferedImage result = ImageIO.read(icon.getInputStream());
+			assertEquals(100, result.getWidth());
+			assertEquals(100, result.getHeight());
+
+			assertEquals(400, post(base + "/icon?frame=GoldenRing", dummy).getResponseCode());
+			assertEquals(400, post(base + "/icon?ops=cutout&cache=/tmp", dummy).getResponseCode());
+			assertEquals(400, post(base + "/icon?ops=cutout", new byte[] {1, 2, 3}).getResponseCode());
+
+			HttpURLConnection health = (HttpURLConnection) new URL(base + "/health").openConnection();
+			assertEquals(200, health.getResponseCode());
+			assertTrue(new String(read(health.getInputStream()), StandardCharsets.UTF_8).contains("\"ok\""));
+		} finally {
+			server.stop();
+		}
+	}
+
+	/**
+	 * requests sent right after the previous answer are never refused by a server with a single worker and no queue,
+	 * refused uploads tell the client whether the connection can be used again
+	 * @throws IOException if the server cannot be started
+	 */
+	@Test
+	public void refusesOnlyWhenBusy() throws IOException {
+		IconSettings settings = new IconSettings();
+		settings.setCache(null);
+		IconServer server = new IconServer(new InetSocketAddress("127.0.0.1", 0), settings, 1, 0, 32 * 1024);
+		server.start();
+		try {
+			String base = "http://127.0.0.1:" + server.getPort();
+			byte[] dummy = read(IconServerTest.class.getResourceAsStream("/eu/jlmb/dummy.png"));
+			for (int i = 0; i < 20; i++) {
+				HttpURLConnection icon = post(base + "/icon?frame=GoldenRing&ops=cutout", dummy);
+				assertEquals(200, icon.getResponseCode());
+				read(icon.getInputStream());
+			}
+			// quick answers are sent right after the slot is given back, the next request follows at once
+			byte[] big = Arrays.copyOf(dummy, 48 * 1024);
+			for (int i = 0; i < 200; i++) {
+				HttpURLConnection unknown = post(base + "/icon?size=2", dummy);
+				assertEquals(400, unknown.getResponseCode());
+				assertNull(unknown.getHeaderField("Connection"));
+
+				HttpURLConnection unreadable = post(base + "/icon?ops=cutout", new byte[] {1, 2, 3});
+				assertEquals(400, unreadable.getResponseCode());
+
+				HttpURLConnection tooBig = post(base + "/icon?ops=cutout", big);
+				assertEquals(413, tooBig.getResponseCode());
+				assertEquals("close", tooBig.getHeaderField("Connection"));
+			}
+
+			HttpURLConnection get = (HttpURLConnection) new URL(base + "/icon").openConnection();
+			assertEquals(405, get.getResponseCode());
+		} finally {
+			server.stop();
+		}
+	}
+
+	private static HttpURLConnection post(String url, byte[] body) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.setFixedLengthStreamingMode(body.length);
+		try (OutputStream out = connection.getOutputStream()) {
+			out.write(body);
+		}
+		return connection;
+	}
+
+	private static byte[] read(InputStream stream) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		try (InputStream in = stream) {
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				bytes.write(buffer, 0, read);
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+}
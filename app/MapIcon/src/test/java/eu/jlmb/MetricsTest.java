@@ -0,0 +1,119 @@
+package eu.jlmb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eu.jlmb.MapIcon.FrameRegistry;
+import eu.jlmb.MapIcon.IconSettings;
+import eu.jlmb.MapIcon.Metrics;
+import eu.jlmb.MapIcon.PngEncoder;
+import eu.jlmb.MapIcon.Recipe;
+
+/**
+ *
+ * @author Jean Baumgarten
+ *
+ */
+public class MetricsTest {
+
+	/**
+	 * folder for the written icons
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * timers are counted per operation, a timer closed without done counts as failure
+	 * @throws IOException if the icon cannot be written
+	 */
+	@Test
+	public void countsOperations() throws IOException {
+		Metrics metrics = Metrics.getDefault();
+		metrics.reset();
+		Path icon = this.folder.getRoot().toPath().resolve("icon.png");
+		PngEncoder.DEFAULT.write(new BufferedImage(30, 20, BufferedImage.TYPE_INT_ARGB), icon);
+		Metrics.start("test").close();
+		metrics.cacheHit();
+		metrics.cacheMiss();
+		metrics.cacheMiss();
+		metrics.cacheMiss();
+
+		assertEquals(2, metrics.getOperations().size());
+		Metrics.OperationSummary encode = metrics.getOperations().get(0);
+		assertEquals("encode", encode.getName());
+		assertEquals(1, encode.getCount());
+		assertEquals(0, encode.getFailures());
+		assertEquals(600, encode.getPixels());
+		assertEquals(Files.size(icon), encode.getBytes());
+		assertEquals(1, metrics.getFailures());
+		assertEquals(metrics.getHistogramBounds().length + 1, encode.getHistogram().length);
+		assertEquals(0.25, metrics.getCacheHitRate(), 1e-9);
+	}
+
+	/**
+	 * an operation around others only counts the pixels and bytes that the inner ones do not report
+	 */
+	@Test
+	public void countsInnerOperationsOnce() {
+		Metrics metrics = Metrics.getDefault();
+		metrics.reset();
+		try (Metrics.Timer request = Metrics.start("request")) {
+			try (Metrics.Timer icon = Metrics.start("icon")) {
+				try (Metrics.Timer cutout = Metrics.start("cutout")) {
+					cutout.done(40, 0);
+				}
+				icon.done(100, 0);
+			}
+			request.done(100, 7);
+		}
+		try (Metrics.Timer encode = Metrics.start("encode")) {
+			encode.done(30, 5);
+		}
+		assertEquals(70, metrics.getPixelsProcessed());
+		assertEquals(12, metrics.getBytesWritten());
+		assertEquals(100, metrics.getOperations().get(2).getPixels());
+	}
+
+	/**
+	 * a single icon counts its pixels once per step and its file once
+	 * @throws IOException if the icon cannot be written
+	 */
+	@Test
+	public void countsSingleIconExactly() throws IOException {
+		BufferedImage picture = ImageIO.read(MetricsTest.class.getResource("/eu/jlmb/dummy.png"));
+		FrameRegistry.getDefault().getFrame("GoldenRing");
+		IconSettings settings = new IconSettings();
+		settings.setRecipe(Recipe.parse("frame=GoldenRing,cutout,landscape"));
+		settings.setCache(null);
+		Path icon = this.folder.getRoot().toPath().resolve("icon.png");
+		Metrics metrics = Metrics.getDefault();
+		metrics.reset();
+		settings.writeIcon(picture, icon);
+
+		List<String> names = new ArrayList<String>();
+		for (Metrics.OperationSummary summary : metrics.getOperations()) {
+			names.add(summary.getName());
+		}
+		assertEquals(Arrays.asList("encode", "icon", "recipe", "scale"), names);
+		BufferedImage written = ImageIO.read(icon.toFile());
+		long size = (long) picture.getWidth() * picture.getHeight();
+		long iconSize = (long) written.getWidth() * written.getHeight();
+		// the steps and the scaling work on the picture, the encoder on the icon, the icon around them adds nothing
+		assertEquals(2 * size + iconSize, metrics.getPixelsProcessed());
+		assertEquals(Files.size(icon), metrics.getBytesWritten());
+	}
+
+}
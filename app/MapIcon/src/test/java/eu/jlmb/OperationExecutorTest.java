@@ -0,0 +1,170 @@
+package eu.jlmb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.EventQueue;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+import eu.jlmb.MapIcon.OperationExecutor;
+
+/**
+ *
+ * @author Jean Baumgarten
+ *
+ */
+public class OperationExecutorTest {
+
+	private final OperationExecutor executor = new OperationExecutor("Test-Worker");
+	private final List<String> ran = new CopyOnWriteArrayList<String>();
+
+	/**
+	 * stops the worker thread
+	 */
+	@After
+	public void stop() {
+		this.executor.shutdown();
+	}
+
+	/**
+	 * a task with the key of a waiting task is dropped, other keys and later submissions still run
+	 * @throws InterruptedException if the test is interrupted
+	 */
+	@Test
+	public void coalescesWaitingTasks() throws InterruptedException {
+		CountDownLatch release = this.blockWorker();
+		this.record("frame", true);
+		this.record("frame", true);
+		this.record("save", false);
+		release.countDown();
+		this.awaitIdle();
+		this.record("frame", true);
+		this.awaitIdle();
+		assertEquals(Arrays.asList("block", "frame", "save", "idle", "frame", "idle"), this.ran);
+	}
+
+	/**
+	 * cancelling skips the waiting cancellable tasks, tasks that are not cancellable and newer ones still run
+	 * @throws InterruptedException if the test is interrupted
+	 */
+	@Test
+	public void cancelsWaitingTasks() throws InterruptedException {
+		CountDownLatch release = this.blockWorker();
+		this.record("cutout", true);
+		this.record("save", false);
+		this.executor.cancelPending();
+		this.record("cutout", true);
+		release.countDown();
+		this.awaitIdle();
+		assertEquals(Arrays.asList("block", "save", "cutout", "idle"), this.ran);
+	}
+
+	/**
+	 * a running task sees that it became obsolete and its result is not published
+	 * @throws InterruptedException if the test is interrupted
+	 */
+	@Test
+	public void tellsRunningTaskItIsCancelled() throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicBoolean seen = new AtomicBoolean();
+		AtomicBoolean published = new AtomicBoolean();
+		this.executor.submit("landscape", true, cancelled -> {
+			started.countDown();
+			release.await();
+			seen.set(cancelled.getAsBoolean());
+			return seen.get() ? null : "done";
+		}, result -> published.set(true), e -> { });
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		this.executor.cancelPending();
+		release.countDown();
+		this.awaitIdle();
+		assertTrue(seen.get());
+		assertFalse(published.get());
+	}
+
+	/**
+	 * results and failures are handed to the event dispatch thread
+	 * @throws InterruptedException if the test is interrupted
+	 */
+	@Test
+	public void publishesOnTheEventDispatchThread() throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(2);
+		AtomicReference<String> result = new AtomicReference<String>();
+		AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		AtomicBoolean onEdt = new AtomicBoolean(true);
+		IOException broken = new IOException("broken");
+		this.executor.submit("ok", false, cancelled -> "icon", value -> {
+			onEdt.compareAndSet(true, EventQueue.isDispatchThread());
+			result.set(value);
+			done.countDown();
+		}, e -> done.countDown());
+		this.executor.submit("fails", false, cancelled -> {
+			throw broken;
+		}, value -> done.countDown(), e -> {
+			onEdt.compareAndSet(true, EventQueue.isDispatchThread());
+			failure.set(e);
+			done.countDown();
+		});
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertTrue(onEdt.get());
+		assertEquals("icon", result.get());
+		assertSame(broken, failure.get());
+	}
+
+	/**
+	 * occupies the worker thread until the returned latch is released
+	 * @return latch that lets the worker go on
+	 * @throws InterruptedException if the test is interrupted
+	 */
+	private CountDownLatch blockWorker() throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		this.executor.submit("block", false, cancelled -> {
+			this.ran.add("block");
+			started.countDown();
+			release.await();
+			return null;
+		}, result -> { }, e -> { });
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		return release;
+	}
+
+	/**
+	 * queues a task that notes its key when it runs
+	 * @param key of the task
+	 * @param cancellable true if cancelling skips the task
+	 */
+	private void record(String key, boolean cancellable) {
+		this.executor.submit(key, cancellable, cancelled -> {
+			this.ran.add(key);
+			return null;
+		}, result -> { }, e -> { });
+	}
+
+	/**
+	 * waits until every task submitted so far has run and published
+	 * @throws InterruptedException if the test is interrupted
+	 */
+	private void awaitIdle() throws InterruptedException {
+		CountDownLatch idle = new CountDownLatch(1);
+		this.executor.submit("idle", false, cancelled -> {
+			this.ran.add("idle");
+			return Boolean.TRUE;
+		}, result -> idle.countDown(), e -> idle.countDown());
+		assertTrue(idle.await(5, TimeUnit.SECONDS));
+	}
+
+}
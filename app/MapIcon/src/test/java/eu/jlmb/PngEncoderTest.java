@@ -0,0 +1,137 @@
+package eu.jlmb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import eu.jlmb.MapIcon.PngEncoder;
+
+/**
+ *
+ * @author Jean Baumgarten
+ *
+ */
+public class PngEncoderTest {
+
+	/**
+	 * every filter and compression level has to give back the same pixels when the file is read again
+	 * @throws IOException if encoding fails
+	 */
+	@Test
+	public void roundTrip() throws IOException {
+		BufferedImage transparent = randomImage(123, 77, false);
+		BufferedImage opaque = randomImage(64, 130, true);
+		for (PngEncoder.RowFilter filter : PngEncoder.RowFilter.values()) {
+			for (int level : new int[] {0, 1, 9}) {
+				PngEncoder encoder = new PngEncoder(level, filter);
+				assertSamePixels(filter + " " + level, transparent, decode(encoder, transparent));
+				assertSamePixels(filter + " " + level, opaque, decode(encoder, opaque));
+			}
+		}
+	}
+
+	/**
+	 * images that are not TYPE_INT_ARGB and subimages are written as they are shown
+	 * @throws IOException if encoding fails
+	 */
+	@Test
+	public void otherImageTypes() throws IOException {
+		BufferedImage rgb = new BufferedImage(40, 30, BufferedImage.TYPE_3BYTE_BGR);
+		rgb.getGraphics().drawImage(randomImage(40, 30, true), 0, 0, null);
+		assertSamePixels("bgr", rgb, decode(PngEncoder.DEFAULT, rgb));
+		BufferedImage sub = randomImage(90, 90, false).getSubimage(13, 21, 50, 40);
+		assertSamePixels("subimage", sub, decode(PngEncoder.DEFAULT, sub));
+	}
+
+	/**
+	 * an image with few colors is written with a palette without losing any pixel,
+	 * an image with too many colors falls back to truecolor
+	 * @throws IOException if encoding fails
+	 */
+	@Test
+	public void paletteWithFallback() throws IOException {
+		Random random = new Random(21);
+		int[] colors = new int[200];
+		for (int i = 0; i < colors.length; i++) {
+			colors[i] = i == 0 ? 0 : random.nextInt();
+		}
+		BufferedImage few = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < few.getHeight(); y++) {
+			for (int x = 0; x < few.getWidth(); x++) {
+				int color = colors[random.nextInt(colors.length)];
+				few.setRGB(x, y, (color >>> 24) == 0 ? 0 : color);
+			}
+		}
+		PngEncoder encoder = new PngEncoder(9, PngEncoder.RowFilter.ADAPTIVE, PngEncoder.PALETTE_ERROR);
+		BufferedImage indexed = decode(encoder, few);
+		assertEquals(BufferedImage.TYPE_BYTE_INDEXED, indexed.getType());
+		assertSamePixels("palette", few, indexed);
+		assertTrue(encoded(encoder, few) < encoded(PngEncoder.DEFAULT, few));
+
+		BufferedImage many = randomImage(100, 100, false);
+		BufferedImage truecolor = decode(encoder, many);
+		assertNotEquals(BufferedImage.TYPE_BYTE_INDEXED, truecolor.getType());
+		assertSamePixels("fallback", many, truecolor);
+	}
+
+	/**
+	 * size of an encoded image
+	 * @param encoder used for writing
+	 * @param image to write
+	 * @return number of bytes
+	 * @throws IOException if encoding fails
+	 */
+	private static int encoded(PngEncoder encoder, BufferedImage image) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		encoder.write(image, Channels.newChannel(bytes));
+		return bytes.size();
+	}
+
+	/**
+	 * writes an image into memory and reads it with ImageIO
+	 * @param encoder used for writing
+	 * @param image to write
+	 * @return the image read back
+	 * @throws IOException if encoding fails
+	 */
+	private static BufferedImage decode(PngEncoder encoder, BufferedImage image) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		encoder.write(image, Channels.newChannel(bytes));
+		return ImageIO.read(new ByteArrayInputStream(bytes.toByteArray()));
+	}
+
+	private static void assertSamePixels(String message, BufferedImage expected, BufferedImage actual) {
+		assertEquals(message, expected.getWidth(), actual.getWidth());
+		assertEquals(message, expected.getHeight(), actual.getHeight());
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				assertEquals(message + " at " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+			}
+		}
+	}
+
+	private static BufferedImage randomImage(int width, int height, boolean opaque) {
+		Random random = new Random(width * 31 + height);
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int rgb = (x * 3 + y * 5 + random.nextInt(16)) * 0x010203 & 0xFFFFFF;
+				int alpha = opaque ? 0xFF : random.nextInt(256);
+				image.setRGB(x, y, alpha << 24 | rgb);
+			}
+		}
+		return image;
+	}
+
+}
@@ -0,0 +1,97 @@
+package eu.jlmb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eu.jlmb.MapIcon.PrefManager;
+import eu.jlmb.MapIcon.Recipe;
+
+/**
+ *
+ * @author Jean Baumgarten
+ *
+ */
+public class PrefManagerTest {
+
+	/**
+	 * folder for the preferences files
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * changes are saved together in the background and read again by a new manager
+	 * @throws IOException if the file cannot be read
+	 */
+	@Test
+	public void savesChangesInTheBackground() throws IOException {
+		Path file = this.folder.getRoot().toPath().resolve("prefs").resolve("prefs.txt");
+		PrefManager manager = new PrefManager(file);
+		assertFalse(manager.loadData());
+		assertFalse(Files.exists(file));
+		String s6 = manager.getVersion();
+		manager.setVersion("S5");
+		manager.setS5Path("/maps/Dummy.png");
+		manager.setRecipe(Recipe.parse("frame=GoldenRing,cutout,landscape"));
+		manager.flush();
+
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		assertEquals("format=" + PrefManager.FORMAT, lines.get(0));
+		assertTrue(lines.contains("s5Path=/maps/Dummy.png"));
+		assertFalse(Files.exists(file.resolveSibling("prefs.txt.tmp")));
+
+		PrefManager loaded = new PrefManager(file);
+		assertTrue(loaded.loadData());
+		assertNotEquals(s6, loaded.getVersion());
+		assertEquals("/maps/Dummy.png", loaded.getS5Path());
+		assertEquals(manager.getS6Path(), loaded.getS6Path());
+		assertEquals(manager.getRecipe(), loaded.getRecipe());
+	}
+
+	/**
+	 * the file without format version is still read, keys of newer versions survive a save
+	 * and the new content replaces a longer old one completely
+	 * @throws IOException if the file cannot be written or read
+	 */
+	@Test
+	public void readsOlderAndNewerFormats() throws IOException {
+		Path file = this.folder.getRoot().toPath().resolve("prefs.txt");
+		Files.write(file, "S6;orig;/maps/Dummy.png\ncutout\n".getBytes(StandardCharsets.UTF_8));
+		PrefManager manager = new PrefManager(file);
+		assertTrue(manager.loadData());
+		assertEquals("/maps/Dummy.png", manager.getS5Path());
+		assertEquals(Recipe.parse("cutout"), manager.getRecipe());
+
+		StringBuilder newer = new StringBuilder("format=3\nversion=S6\nzoom=2\n");
+		for (int i = 0; i < 100; i++) {
+			newer.append("# comment that makes the file long\n");
+		}
+		Files.write(file, newer.toString().getBytes(StandardCharsets.UTF_8));
+		manager = new PrefManager(file);
+		assertTrue(manager.loadData());
+		manager.setS6Path("/other/Dummy.png");
+		manager.flush();
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		assertEquals("format=" + PrefManager.FORMAT, lines.get(0));
+		assertTrue(lines.contains("zoom=2"));
+		assertTrue(lines.contains("s6Path=/other/Dummy.png"));
+		assertEquals(6, lines.size());
+
+		Files.write(file, "broken".getBytes(StandardCharsets.UTF_8));
+		assertFalse(new PrefManager(file).loadData());
+		assertEquals("broken", new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+	}
+
+}
@@ -0,0 +1,68 @@
+package eu.jlmb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+import eu.jlmb.MapIcon.PreviewPanel;
+import eu.jlmb.MapIcon.TiledImage;
+
+/**
+ *
+ * @author Jean Baumgarten
+ *
+ */
+public class PreviewPanelTest {
+
+	/**
+	 * the preview shows the changed pixels of its image and enlarges them when zoomed,
+	 * the changed area covers exactly the tiles an operation touched
+	 */
+	@Test
+	public void showsChangedRegionAndZoom() {
+		BufferedImage image = new BufferedImage(150, 100, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				image.setRGB(x, y, 0xFF000000 | x << 16 | y << 8);
+			}
+		}
+		TiledImage before = TiledImage.of(image);
+		PreviewPanel preview = new PreviewPanel();
+		preview.setImage(image);
+		preview.setSize(preview.getPreferredSize());
+		assertEquals(image.getWidth(), preview.getWidth());
+		assertEquals(image.getRGB(120, 90), paint(preview).getRGB(120, 90));
+
+		image.setRGB(130, 70, 0xFF00FF00);
+		TiledImage after = before.derive(image);
+		Rectangle changed = after.changedArea(before);
+		assertEquals(new Rectangle(128, 64, 22, 36), changed);
+		assertNull(after.changedArea(after));
+		preview.changed(changed);
+		assertEquals(0xFF00FF00, paint(preview).getRGB(130, 70));
+
+		preview.setZoom(2, 0, 0);
+		BufferedImage zoomed = paint(preview);
+		assertEquals(image.getRGB(10, 20), zoomed.getRGB(21, 41));
+		preview.setZoom(2, 300, 200);
+		assertEquals(2, preview.getZoom());
+		assertEquals(image.getRGB(0, 0), paint(preview).getRGB(0, 0));
+		preview.setZoom(PreviewPanel.MAX_ZOOM + 1, 150, 100);
+		assertEquals(PreviewPanel.MAX_ZOOM, preview.getZoom());
+		assertEquals(image.getRGB(74, 49), paint(preview).getRGB(149, 99));
+	}
+
+	private static BufferedImage paint(PreviewPanel preview) {
+		BufferedImage target = new BufferedImage(preview.getWidth(), preview.getHeight(), BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = target.createGraphics();
+		preview.paint(g);
+		g.dispose();
+		return target;
+	}
+
+}
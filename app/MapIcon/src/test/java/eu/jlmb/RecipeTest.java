@@ -0,0 +1,94 @@
+package eu.jlmb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import eu.jlmb.MapIcon.FrameGeometry;
+import eu.jlmb.MapIcon.FrameRegistry;
+import eu.jlmb.MapIcon.IconCreater;
+import eu.jlmb.MapIcon.Operation;
+import eu.jlmb.MapIcon.RasterCompositor;
+import eu.jlmb.MapIcon.Recipe;
+
+/**
+ *
+ * @author Jean Baumgarten
+ *
+ */
+public class RecipeTest {
+
+	/**
+	 * a recipe written as text has to be read back the same way
+	 */
+	@Test
+	public void parseAndFormat() {
+		Recipe recipe = Recipe.parse("frame=GoldenRing, cutout ,landscape,frame=StarRing,overlapp");
+		assertEquals("frame=GoldenRing,cutout,landscape,frame=StarRing,overlap", recipe.toString());
+		assertEquals(recipe, Recipe.parse(recipe.toString()));
+		assertEquals(Arrays.asList("GoldenRing", "StarRing"), Arrays.asList(recipe.getFrameNames().toArray()));
+		assertEquals("frame=Standard,overlap,cutout",
+				Recipe.of("Standard", Arrays.asList(Operation.OVERLAP, Operation.CUTOUT)).toString());
+		assertEquals("landscape", Recipe.EMPTY.then(Operation.LANDSCAPE, "BlueRing").toString());
+	}
+
+	/**
+	 * applying a recipe in a single pass has to give the same pixels as applying its steps one by one
+	 * @throws IOException if a frame cannot be read
+	 */
+	@Test
+	public void fusedMatchesSteps() throws IOException {
+		Random random = new Random(12);
+		Operation[] operations = Operation.values();
+		int[][] sizes = {{190, 175}, {150, 120}, {240, 200}};
+		for (int run = 0; run < 40; run++) {
+			Recipe recipe = Recipe.EMPTY;
+			int length = 1 + random.nextInt(4);
+			for (int i = 0; i < length; i++) {
+				String frame = FrameRegistry.FRAME_NAMES.get(random.nextInt(FrameRegistry.FRAME_NAMES.size()));
+				recipe = recipe.then(operations[random.nextInt(operations.length)], frame);
+			}
+			int[] size = sizes[run % sizes.length];
+			BufferedImage picture = randomImage(random, size[0], size[1]);
+			RasterCompositor.Blend blend = RasterCompositor.Blend.values()[run % 2];
+
+			IconCreater stepwise = new IconCreater(copy(picture), FrameGeometry.DEFAULT, blend);
+			for (Recipe.Step step : recipe.getSteps()) {
+				step.getOperation().apply(stepwise, FrameRegistry.getDefault().getFrame(step.getFrameName()));
+			}
+			IconCreater fused = new IconCreater(copy(picture), FrameGeometry.DEFAULT, blend);
+			fused.apply(recipe);
+
+			for (int y = 0; y < size[1]; y++) {
+				for (int x = 0; x < size[0]; x++) {
+					assertEquals(recipe + " " + blend + " at " + x + "," + y,
+							stepwise.getIcon().getRGB(x, y), fused.getIcon().getRGB(x, y));
+				}
+			}
+		}
+	}
+
+	private static BufferedImage randomImage(Random random, int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int alpha = random.nextInt(4) == 0 ? random.nextInt(256) : 255;
+				image.setRGB(x, y, alpha << 24 | random.nextInt(0x1000000));
+			}
+		}
+		return image;
+	}
+
+	private static BufferedImage copy(BufferedImage image) {
+		BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+		int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+		copy.setRGB(0, 0, image.getWidth(), image.getHeight(), pixels, 0, image.getWidth());
+		return copy;
+	}
+
+}
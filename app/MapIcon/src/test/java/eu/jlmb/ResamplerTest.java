@@ -0,0 +1,53 @@
+package eu.jlmb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+import eu.jlmb.MapIcon.Resampler;
+
+/**
+ * 
+ * @author Jean Baumgarten
+ *
+ */
+public class ResamplerTest {
+
+	/**
+	 * a picture of one color has to keep its color with every filter
+	 */
+	@Test
+	public void keepsPlainColor() {
+		BufferedImage picture = new BufferedImage(179, 179, BufferedImage.TYPE_INT_ARGB);
+		for (int x = 0; x < 179; x++) {
+			for (int y = 0; y < 179; y++) {
+				picture.setRGB(x, y, 0xFF336699);
+			}
+		}
+		for (Resampler.Filter filter : Resampler.Filter.values()) {
+			BufferedImage icon = Resampler.resize(picture, 100, 100, filter);
+			for (int x = 0; x < 100; x++) {
+				for (int y = 0; y < 100; y++) {
+					assertEquals(filter.name(), 0xFF336699, icon.getRGB(x, y));
+				}
+			}
+		}
+	}
+
+	/**
+	 * halving with the box filter averages four pixels, transparent pixels do not darken the color
+	 */
+	@Test
+	public void boxAveragesPremultiplied() {
+		BufferedImage picture = new BufferedImage(2, 2, BufferedImage.TYPE_INT_ARGB);
+		picture.setRGB(0, 0, 0xFFFF0000);
+		picture.setRGB(1, 0, 0xFFFF0000);
+		picture.setRGB(0, 1, 0x00000000);
+		picture.setRGB(1, 1, 0x00000000);
+		BufferedImage icon = Resampler.resize(picture, 1, 1, Resampler.Filter.BOX);
+		assertEquals(0x80FF0000, icon.getRGB(0, 0));
+	}
+
+}
@@ -0,0 +1,42 @@
+package eu.jlmb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import eu.jlmb.MapIcon.StartupProfile;
+
+/**
+ *
+ * @author Jean Baumgarten
+ *
+ */
+public class StartupProfileTest {
+
+	/**
+	 * phases are only recorded when the profile is enabled and are reported in the order they were reached
+	 * @throws InterruptedException if the test is interrupted
+	 */
+	@Test
+	public void recordsPhasesInOrder() throws InterruptedException {
+		StartupProfile profile = new StartupProfile();
+		profile.mark("ignored");
+		assertFalse(profile.isEnabled());
+		profile.enable();
+		profile.mark("main");
+		Thread worker = new Thread(() -> profile.mark("decoded"), "Decoder");
+		worker.start();
+		worker.join();
+		profile.mark(StartupProfile.WINDOW_SHOWN);
+
+		String[] lines = profile.format().split("\n");
+		assertEquals(4, lines.length);
+		assertTrue(lines[1].contains("main"));
+		assertTrue(lines[2].contains("decoded") && lines[2].endsWith("Decoder"));
+		assertTrue(lines[3].contains(StartupProfile.WINDOW_SHOWN));
+		assertFalse(profile.format().contains("ignored"));
+	}
+
+}
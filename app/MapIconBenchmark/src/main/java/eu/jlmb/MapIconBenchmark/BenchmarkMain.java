@@ -0,0 +1,36 @@
+package eu.jlmb.MapIconBenchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Starts the benchmarks with the gc profiler, so that the allocation rate is reported with the throughput.
+ * Build MapIcon with "mvn install" first, then "mvn package" here and run
+ * "java -jar target/benchmarks.jar [JMH options]".
+ * @author Jean Baumgarten
+ */
+public final class BenchmarkMain {
+
+	private BenchmarkMain() {
+	}
+
+	/**
+	 * main method of the benchmarks
+	 * @param args are the usual JMH arguments, like a filter for the benchmark names
+	 * @throws RunnerException if a benchmark fails
+	 * @throws CommandLineOptionException if the arguments are invalid
+	 */
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+
+}
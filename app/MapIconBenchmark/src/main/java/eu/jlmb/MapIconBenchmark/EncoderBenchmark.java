@@ -0,0 +1,85 @@
+package eu.jlmb.MapIconBenchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.jlmb.MapIcon.IconCreater;
+import eu.jlmb.MapIcon.PngEncoder;
+
+/**
+ * Compares the PngEncoder settings with ImageIO on a finished icon
+ * @author Jean Baumgarten
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncoderBenchmark {
+
+	@Param({"1", "6", "9"})
+	private int level;
+
+	@Param({"NONE", "PAETH", "ADAPTIVE"})
+	private String filter;
+
+	private BufferedImage icon;
+	private PngEncoder encoder;
+	private ByteArrayOutputStream bytes;
+
+	/**
+	 * creates the icon that is written in every invocation
+	 */
+	@Setup
+	public void setup() {
+		IconCreater creater = new IconCreater(Images.map(190, 175, 3));
+		creater.addCutOutImage(Images.frame(190, 175, 2));
+		creater.cutOutLandscape();
+		this.icon = IconCreater.makeOutputImage(creater.getIcon());
+		this.encoder = new PngEncoder(this.level, PngEncoder.RowFilter.parse(this.filter));
+		this.bytes = new ByteArrayOutputStream(1 << 16);
+	}
+
+	/**
+	 * writes the icon with the PngEncoder
+	 * @return size of the file
+	 * @throws IOException if writing fails
+	 */
+	@Benchmark
+	public int encoder() throws IOException {
+		this.bytes.reset();
+		this.encoder.write(this.icon, Channels.newChannel(this.bytes));
+		return this.bytes.size();
+	}
+
+	/**
+	 * writes the icon with ImageIO, which does not depend on the parameters
+	 * @return size of the file
+	 * @throws IOException if writing fails
+	 */
+	@Benchmark
+	public int imageIO() throws IOException {
+		this.bytes.reset();
+		ImageIO.write(this.icon, "png", this.bytes);
+		return this.bytes.size();
+	}
+
+}
@@ -0,0 +1,132 @@
+package eu.jlmb.MapIconBenchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.jlmb.MapIcon.FrameGeometry;
+import eu.jlmb.MapIcon.FrameRegistry;
+import eu.jlmb.MapIcon.IconCreater;
+import eu.jlmb.MapIcon.RasterCompositor;
+import eu.jlmb.MapIcon.Recipe;
+
+/**
+ * Runs every operation of the IconCreater with the frames bundled in MapIcon
+ * @author Jean Baumgarten
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameBenchmark {
+
+	@Param({
+		"Standard", "CelticRing1", "CelticRing2",
+		"DecoRing", "StarRing", "GoldenRing",
+		"BlueRing", "FlowerRing", "OtherRing", "Original", "Ring"
+	})
+	private String frameName;
+
+	@Param({"AVERAGE", "SOURCE_OVER"})
+	private RasterCompositor.Blend blend;
+
+	private BufferedImage frame;
+	private BufferedImage image;
+	private BufferedImage result;
+	private Recipe recipe;
+
+	/**
+	 * reads the frame and creates a map picture of the same size
+	 * @throws IOException if the frame cannot be read
+	 */
+	@Setup
+	public void setup() throws IOException {
+		this.frame = FrameRegistry.getDefault().getFrame(this.frameName);
+		this.recipe = Recipe.parse("frame=" + this.frameName + ",cutout,landscape");
+		this.image = Images.map(this.frame.getWidth(), this.frame.getHeight(), 1);
+		IconCreater creater = new IconCreater(Images.copy(this.image));
+		creater.addCutOutImage(this.frame);
+		this.result = creater.getIcon();
+	}
+
+	/**
+	 * puts the frame onto the image, the same image is used in every invocation
+	 * @return the image
+	 */
+	@Benchmark
+	public BufferedImage overlapp() {
+		IconCreater creater = new IconCreater(this.image, FrameGeometry.DEFAULT, this.blend);
+		creater.addOverlappImage(this.frame);
+		return creater.getIcon();
+	}
+
+	/**
+	 * fills the frame with the image, the same image is used in every invocation
+	 * @return the image
+	 */
+	@Benchmark
+	public BufferedImage cutout() {
+		IconCreater creater = new IconCreater(this.image, FrameGeometry.DEFAULT, this.blend);
+		creater.addCutOutImage(this.frame);
+		return creater.getIcon();
+	}
+
+	/**
+	 * cuts out the landscape, the same image is used in every invocation
+	 * @return the image
+	 */
+	@Benchmark
+	public BufferedImage landscape() {
+		IconCreater creater = new IconCreater(this.image);
+		creater.cutOutLandscape();
+		return creater.getIcon();
+	}
+
+	/**
+	 * fills the frame and cuts out the landscape with one pass per operation
+	 * @return the image
+	 */
+	@Benchmark
+	public BufferedImage steps() {
+		IconCreater creater = new IconCreater(Images.copy(this.image), FrameGeometry.DEFAULT, this.blend);
+		creater.addCutOutImage(this.frame);
+		creater.cutOutLandscape();
+		return creater.getIcon();
+	}
+
+	/**
+	 * fills the frame and cuts out the landscape in a single fused pass
+	 * @return the image
+	 * @throws IOException if the frame cannot be read
+	 */
+	@Benchmark
+	public BufferedImage recipe() throws IOException {
+		IconCreater creater = new IconCreater(Images.copy(this.image), FrameGeometry.DEFAULT, this.blend);
+		creater.apply(this.recipe);
+		return creater.getIcon();
+	}
+
+	/**
+	 * creates the 100x100 icon out of a finished picture
+	 * @return the icon
+	 */
+	@Benchmark
+	public BufferedImage output() {
+		return IconCreater.makeOutputImage(this.result);
+	}
+
+}
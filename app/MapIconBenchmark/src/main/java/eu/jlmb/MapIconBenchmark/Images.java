@@ -0,0 +1,75 @@
+package eu.jlmb.MapIconBenchmark;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Generates pictures for the benchmarks
+ * @author Jean Baumgarten
+ */
+final class Images {
+
+	private Images() {
+	}
+
+	/**
+	 * creates an opaque picture with random colors, like a screenshot of a map
+	 * @param width of the picture
+	 * @param height of the picture
+	 * @param seed of the random colors
+	 * @return the picture
+	 */
+	static BufferedImage map(int width, int height, long seed) {
+		Random random = new Random(seed);
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.setRGB(x, y, 0xFF000000 | random.nextInt(1 << 24));
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * creates a ring shaped frame with a soft edge around the center of the picture
+	 * @param width of the frame
+	 * @param height of the frame
+	 * @param seed of the random colors
+	 * @return the frame
+	 */
+	static BufferedImage frame(int width, int height, long seed) {
+		Random random = new Random(seed);
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		double inner = Math.min(width, height) * 0.35;
+		double outer = Math.min(width, height) * 0.45;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				double distance = Math.hypot(x - width / 2.0, y - height / 2.0);
+				int alpha;
+				if (distance < inner - 2 || distance > outer + 2) {
+					alpha = 0;
+				} else if (distance < inner || distance > outer) {
+					alpha = 128;
+				} else {
+					alpha = 255;
+				}
+				image.setRGB(x, y, (alpha << 24) | random.nextInt(1 << 24));
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * creates a copy of a picture
+	 * @param image to copy
+	 * @return copy of type TYPE_INT_ARGB
+	 */
+	static BufferedImage copy(BufferedImage image) {
+		BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+		copy.setRGB(0, 0, image.getWidth(), image.getHeight(),
+				image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth()),
+				0, image.getWidth());
+		return copy;
+	}
+
+}
@@ -0,0 +1,95 @@
+package eu.jlmb.MapIconBenchmark;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.jlmb.MapIcon.IconCreater;
+
+/**
+ * Runs every operation of the IconCreater on generated pictures of several sizes
+ * @author Jean Baumgarten
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SyntheticBenchmark {
+
+	@Param({"1", "2", "4", "8"})
+	private int scale;
+
+	private BufferedImage frame;
+	private BufferedImage image;
+	private BufferedImage result;
+
+	/**
+	 * creates a frame and a map picture that are scale times as big as the bundled frames
+	 */
+	@Setup
+	public void setup() {
+		int width = 190 * this.scale;
+		int height = 175 * this.scale;
+		this.frame = Images.frame(width, height, 2);
+		this.image = Images.map(width, height, 3);
+		IconCreater creater = new IconCreater(Images.copy(this.image));
+		creater.addCutOutImage(this.frame);
+		this.result = creater.getIcon();
+	}
+
+	/**
+	 * puts the frame onto the image, the same image is used in every invocation
+	 * @return the image
+	 */
+	@Benchmark
+	public BufferedImage overlapp() {
+		IconCreater creater = new IconCreater(this.image);
+		creater.addOverlappImage(this.frame);
+		return creater.getIcon();
+	}
+
+	/**
+	 * fills the frame with the image, the same image is used in every invocation
+	 * @return the image
+	 */
+	@Benchmark
+	public BufferedImage cutout() {
+		IconCreater creater = new IconCreater(this.image);
+		creater.addCutOutImage(this.frame);
+		return creater.getIcon();
+	}
+
+	/**
+	 * cuts out the landscape, the same image is used in every invocation
+	 * @return the image
+	 */
+	@Benchmark
+	public BufferedImage landscape() {
+		IconCreater creater = new IconCreater(this.image);
+		creater.cutOutLandscape();
+		return creater.getIcon();
+	}
+
+	/**
+	 * creates the 100x100 icon out of a finished picture
+	 * @return the icon
+	 */
+	@Benchmark
+	public BufferedImage output() {
+		return IconCreater.makeOutputImage(this.result);
+	}
+
+}